@@ -32,6 +32,8 @@ public class Database {
                     created_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP
                 );
                 """);
+            // written in batches by LastSeenTracker
+            ensureColumnExists(conn, "users", "last_seen_at", "TIMESTAMP");
 
             // GROUPS
             st.execute("""
@@ -59,6 +61,11 @@ public class Database {
                     FOREIGN KEY (group_id) REFERENCES groups(group_id) ON DELETE CASCADE
                 );
                 """);
+            // maintained by deltas (UnreadCounters); only a reader's reset recounts, from the read marker on
+            ensureColumnExists(conn, "memberships", "unread_count", "INTEGER NOT NULL DEFAULT 0");
+            // newest message a reset counted: deltas only move the count for messages after it
+            ensureColumnExists(conn, "memberships", "unread_reset_id", "INTEGER NOT NULL DEFAULT 0");
+            ensureColumnExists(conn, "memberships", "last_seen_at", "TIMESTAMP");
 
             // TASKS
             st.execute("""
@@ -148,12 +155,105 @@ public class Database {
             ensureColumnExists(conn, "messages", "resource_id", "INTEGER");
             ensureColumnExists(conn, "messages", "resource_title", "TEXT");
             ensureColumnExists(conn, "messages", "task_id", "INTEGER");
+            // client-generated id of a socket send; a resend after reconnect is not stored twice
+            ensureColumnExists(conn, "messages", "client_msg_id", "TEXT");
+
+            // MESSAGE_CLIENT_IDS (claimed by the insert of a message that has a clientMsgId; a unique
+            // index on messages cannot span its monthly partitions). Purged by MessagePartitions.
+            if (!tableExists(conn, "message_client_ids")) {
+                st.execute("""
+                    CREATE TABLE message_client_ids (
+                        user_id       INTEGER   NOT NULL,
+                        client_msg_id TEXT      NOT NULL,
+                        created_at    TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                        PRIMARY KEY (user_id, client_msg_id)
+                    );
+                    """);
+                st.execute("""
+                    INSERT INTO message_client_ids(user_id, client_msg_id, created_at)
+                    SELECT user_id, client_msg_id, COALESCE(timestamp, CURRENT_TIMESTAMP)
+                    FROM messages
+                    WHERE user_id IS NOT NULL AND client_msg_id IS NOT NULL
+                    ON CONFLICT DO NOTHING
+                    """);
+            }
+            st.execute("DROP INDEX IF EXISTS idx_messages_client_msg");
+            // idx_messages_group_time (history pages) is built in the background, CONCURRENTLY, by SearchBackfill.
+            // search: written by the chat insert; older rows and the GIN index are filled in the
+            // background by SearchBackfill too. A plain nullable column is added without rewriting the
+            // table; a GENERATED one from before loses its expression and keeps its values.
+            ensureColumnExists(conn, "messages", "search_tsv", "tsvector");
+            if (isGenerated(conn, "messages", "search_tsv")) {
+                st.execute("ALTER TABLE messages ALTER COLUMN search_tsv DROP EXPRESSION");
+            }
+
+            // READ_MARKERS (last read message per user and group, written in batches by ReadMarkerStore);
+            // no foreign keys: a marker of a deleted group is harmless, a failed batch is not
+            st.execute("""
+                CREATE TABLE IF NOT EXISTS read_markers (
+                    user_id    INTEGER   NOT NULL,
+                    group_id   INTEGER   NOT NULL,
+                    message_id INTEGER   NOT NULL,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    PRIMARY KEY (user_id, group_id)
+                );
+                """);
+            st.execute("CREATE INDEX IF NOT EXISTS idx_read_markers_group ON read_markers(group_id)");
+
+            // CLUSTER_SPILL (cluster bus frames too large for a NOTIFY payload)
+            st.execute("""
+                CREATE TABLE IF NOT EXISTS cluster_spill (
+                    spill_id   BIGSERIAL PRIMARY KEY,
+                    payload    TEXT      NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                );
+                """);
+
+            // PRESENCE_NODES (one heartbeat row per backend instance)
+            st.execute("""
+                CREATE TABLE IF NOT EXISTS presence_nodes (
+                    node_id      TEXT      PRIMARY KEY,
+                    version      BIGINT    NOT NULL,
+                    summary      TEXT      NOT NULL,
+                    heartbeat_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                );
+                """);
+
+            // EVENT_OUTBOX (domain events written in the same transaction as the change, see OutboxRelay)
+            st.execute("""
+                CREATE TABLE IF NOT EXISTS event_outbox (
+                    event_id     BIGSERIAL PRIMARY KEY,
+                    group_id     INTEGER   NOT NULL,
+                    actor_id     INTEGER,
+                    event_type   TEXT      NOT NULL,
+                    payload      TEXT      NOT NULL,
+                    created_at   TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    published_at TIMESTAMP
+                );
+                """);
+            st.execute("CREATE INDEX IF NOT EXISTS idx_event_outbox_pending ON event_outbox(event_id) WHERE published_at IS NULL");
+
+            // activity rows written by the outbox consumer are deduplicated by event id
+            ensureColumnExists(conn, "activity_log", "event_id", "BIGINT");
+            st.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_activity_log_event ON activity_log(event_id)");
 
         } catch (SQLException e) {
             throw new RuntimeException("Failed to init database", e);
         }
     }
 
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    private static boolean isGenerated(Connection conn, String table, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(null, null, table, column)) {
+            return rs.next() && "YES".equals(rs.getString("IS_GENERATEDCOLUMN"));
+        }
+    }
+
     private static void ensureColumnExists(Connection conn, String table, String column, String type)
             throws SQLException {
 
@@ -172,4 +272,27 @@ public class Database {
     public static Connection get() throws SQLException {
         return DriverManager.getConnection(URL, USER, PASSWORD);
     }
+
+    /** Work that runs on the connection of one transaction. */
+    @FunctionalInterface
+    public interface TxWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Runs the work in a single transaction: commit if it returns, rollback if it throws.
+     */
+    public static <T> T inTransaction(TxWork<T> work) throws SQLException {
+        try (Connection conn = get()) {
+            conn.setAutoCommit(false);
+            try {
+                T result = work.run(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
 }
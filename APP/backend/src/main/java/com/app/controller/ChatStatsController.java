@@ -0,0 +1,79 @@
+package com.app.controller;
+
+import com.app.events.OutboxRelay;
+import com.app.history.MessagePartitions;
+import com.app.history.SearchBackfill;
+import com.app.security.RoleGuard;
+import com.app.websocket.ChatWebSocketHandler;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-instance JVM and chat socket numbers; polled by the load test (APP/loadtest).
+ * Admins only (users.role = 'ADMIN'): it names the sockets and users the flood
+ * guard drops the most frames from.
+ */
+@RestController
+public class ChatStatsController {
+
+    private final ChatWebSocketHandler chatSocket;
+    private final OutboxRelay outboxRelay;
+    private final MessagePartitions messagePartitions;
+    private final SearchBackfill searchBackfill;
+
+    public ChatStatsController(ChatWebSocketHandler chatSocket, OutboxRelay outboxRelay,
+                               MessagePartitions messagePartitions, SearchBackfill searchBackfill) {
+        this.chatSocket = chatSocket;
+        this.outboxRelay = outboxRelay;
+        this.messagePartitions = messagePartitions;
+        this.searchBackfill = searchBackfill;
+    }
+
+    @GetMapping("/api/chat/stats")
+    public ResponseEntity<?> stats(@RequestAttribute("userId") Integer userId) {
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
+        }
+        if (!RoleGuard.isSiteAdmin(userId)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Admins only"));
+        }
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+
+        Map<String, Object> jvm = new LinkedHashMap<>();
+        jvm.put("heapUsed", heap.getUsed());
+        jvm.put("heapCommitted", heap.getCommitted());
+        jvm.put("heapMax", heap.getMax());
+        jvm.put("gcCount", gcCount);
+        jvm.put("gcTimeMs", gcTime);
+        jvm.put("threads", ManagementFactory.getThreadMXBean().getThreadCount());
+
+        Map<String, Object> chat = chatSocket.stats();
+        int sessions = (Integer) chat.get("sessions");
+        // upper bound: everything on the heap divided by the open sockets; compare runs at different N
+        chat.put("heapUsedPerSession", sessions == 0 ? 0 : heap.getUsed() / sessions);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jvm", jvm);
+        result.put("chat", chat);
+        result.put("outbox", outboxRelay.stats());
+        result.put("history", messagePartitions.stats());
+        result.put("search", searchBackfill.stats());
+        return ResponseEntity.ok(result);
+    }
+}
@@ -1,10 +1,10 @@
 package com.app.controller;
 
 import com.app.model.Group;
-import com.app.service.ActivityService;
 import com.app.service.GroupService;
 import com.app.service.MembershipService;
-import com.app.websocket.ChatWebSocketHandler;
+import com.app.websocket.MembershipIndex;
+import com.app.websocket.UnreadCounters;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -18,11 +18,12 @@ public class GroupController {
 
     private final GroupService groupService = new GroupService();
     private final MembershipService membershipService = new MembershipService();
-    private final ActivityService activityService = new ActivityService();
-    private final ChatWebSocketHandler chatSocket;
+    private final MembershipIndex membershipIndex;
+    private final UnreadCounters unreadCounters;
 
-    public GroupController(ChatWebSocketHandler chatSocket) {
-        this.chatSocket = chatSocket;
+    public GroupController(MembershipIndex membershipIndex, UnreadCounters unreadCounters) {
+        this.membershipIndex = membershipIndex;
+        this.unreadCounters = unreadCounters;
     }
 
     @GetMapping
@@ -33,6 +34,8 @@ public class GroupController {
 
         try {
             List<Group> groups = groupService.getGroupsForUser(userId);
+            // stored counts plus what this instance has not flushed yet
+            unreadCounters.overlay(userId, groups);
             return ResponseEntity.ok(groups);
         } catch (SQLException e) {
             return ResponseEntity.internalServerError()
@@ -76,16 +79,7 @@ public class GroupController {
             String description = (String) body.get("description");
 
             Group created = groupService.createGroup(userId, name, description);
-
-            activityService.log(userId, "GROUP_CREATED",
-                    Map.of("groupId", created.getGroupId(), "name", created.getName()));
-
-            chatSocket.broadcastEvent(created.getGroupId(), Map.of(
-                    "type", "EVENT",
-                    "event", "GROUP_CREATED",
-                    "groupId", created.getGroupId(),
-                    "name", created.getName()
-            ));
+            membershipIndex.invalidate(userId);
 
             return ResponseEntity.status(201).body(created);
         } catch (IllegalArgumentException e) {
@@ -115,17 +109,7 @@ public class GroupController {
             String name = (String) body.get("name");
             String description = (String) body.get("description");
 
-            groupService.updateGroup(groupId, name, description);
-
-            activityService.log(userId, "GROUP_UPDATED",
-                    Map.of("groupId", groupId, "name", name));
-
-            chatSocket.broadcastEvent(groupId, Map.of(
-                    "type", "EVENT",
-                    "event", "GROUP_UPDATED",
-                    "groupId", groupId,
-                    "name", name
-            ));
+            groupService.updateGroup(groupId, userId, name, description);
 
             return ResponseEntity.ok(Map.of("message", "Group updated"));
         } catch (IllegalArgumentException e) {
@@ -149,15 +133,8 @@ public class GroupController {
                         .body(Map.of("error", "Only group OWNER can delete group"));
             }
 
-            groupService.deleteGroup(groupId);
-
-            activityService.log(userId, "GROUP_DELETED", Map.of("groupId", groupId));
-
-            chatSocket.broadcastEvent(groupId, Map.of(
-                    "type", "EVENT",
-                    "event", "GROUP_DELETED",
-                    "groupId", groupId
-            ));
+            groupService.deleteGroup(groupId, userId);
+            membershipIndex.invalidateGroup(groupId);
 
             return ResponseEntity.noContent().build();
         } catch (SQLException e) {
@@ -5,6 +5,8 @@ import com.app.model.User;
 import com.app.security.RoleGuard;
 import com.app.service.MembershipService;
 import com.app.repository.UserRepository;
+import com.app.websocket.LastSeenTracker;
+import com.app.websocket.MembershipIndex;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -17,12 +19,21 @@ public class MembershipController {
 
     private final MembershipService membershipService = new MembershipService();
     private final UserRepository userRepository = new UserRepository();
+    private final MembershipIndex membershipIndex;
+    private final LastSeenTracker lastSeen;
+
+    public MembershipController(MembershipIndex membershipIndex, LastSeenTracker lastSeen) {
+        this.membershipIndex = membershipIndex;
+        this.lastSeen = lastSeen;
+    }
 
     @GetMapping
     public ResponseEntity<?> listMembers(@PathVariable int groupId,
                                          @RequestAttribute("userId") Integer userId) throws Exception {
         RoleGuard.requireMember(userId, groupId);
         List<Membership> members = membershipService.getMembersOfGroup(groupId);
+        // stored last-seen times plus what this instance has not flushed yet
+        lastSeen.overlay(members);
         return ResponseEntity.ok(members);
     }
 
@@ -48,6 +59,7 @@ public class MembershipController {
         }
 
         Membership created = membershipService.addMember(groupId, targetUserId, role);
+        membershipIndex.invalidate(targetUserId);
         return ResponseEntity.status(201).body(created);
     }
 
@@ -86,6 +98,7 @@ public class MembershipController {
         }
 
         membershipService.removeMember(membershipId);
+        membershipIndex.invalidate(target.getUserId());
         return ResponseEntity.noContent().build();
     }
 }
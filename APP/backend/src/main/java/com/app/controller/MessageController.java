@@ -1,29 +1,164 @@
 package com.app.controller;
 
+import com.app.history.MessageExport;
 import com.app.model.Message;
+import com.app.model.MessageHit;
+import com.app.repository.MembershipRepository;
 import com.app.repository.MessageRepository;
 import com.app.security.RoleGuard;
+import com.app.websocket.MessageCache;
+import com.app.websocket.ReadMarkerStore;
+import com.app.websocket.UnreadCounters;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/messages")
 public class MessageController {
 
-    private final MessageRepository repo = new MessageRepository();
+    private static final int MAX_PAGE = 500;
+    private static final int MAX_QUERY = 200;
+    private static final int MAX_SEARCH_PAGE = 100;
+    // only the newest matches are ranked; see MessageRepository.search
+    private static final int SEARCH_CANDIDATES = 1000;
 
+    private final MessageRepository repo;
+    private final MessageExport export;
+    private final MembershipRepository memberships = new MembershipRepository();
+    private final ReadMarkerStore readMarkers;
+    private final UnreadCounters unread;
+    private final MessageCache history;
+
+    public MessageController(MessageRepository repo, MessageExport export, ReadMarkerStore readMarkers,
+                             UnreadCounters unread, MessageCache history) {
+        this.repo = repo;
+        this.export = export;
+        this.readMarkers = readMarkers;
+        this.unread = unread;
+        this.history = history;
+    }
+
+    /**
+     * History, oldest first: the newest limit messages, or the page just before
+     * (?before=messageId, scrolling back) or after (?after=messageId) a message
+     * the client already has. A page shorter than limit is the last one.
+     */
     @GetMapping
     public ResponseEntity<?> listByGroup(@RequestParam Integer groupId,
                                          @RequestAttribute("userId") Integer userId,
-                                         @RequestParam(name = "limit", required = false, defaultValue = "200") Integer limit) throws Exception {
+                                         @RequestParam(name = "limit", required = false, defaultValue = "200") Integer limit,
+                                         @RequestParam(name = "before", required = false, defaultValue = "0") Integer before,
+                                         @RequestParam(name = "after", required = false, defaultValue = "0") Integer after) throws Exception {
         RoleGuard.requireMember(userId, groupId);
-        List<Message> list = repo.findRecentByGroup(groupId, limit);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE));
+        // the newest page (opening a chat) is usually served from memory
+        List<Message> list = before <= 0 && after <= 0
+                ? history.latest(groupId, pageSize)
+                : repo.findPage(groupId, pageSize, before, after);
         return ResponseEntity.ok(list);
     }
+
+    /**
+     * Full-text search in the group:
+     * {"hits":[{messageId, userName, content, timestamp, headline, rank}], "next":"0.0607927:345"}.
+     * headline marks the matches with <mark>; pass next back as ?cursor= for the following page (null = last page).
+     * q takes websearch syntax: words, "a phrase", -excluded, or.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam Integer groupId,
+                                    @RequestParam String q,
+                                    @RequestAttribute("userId") Integer userId,
+                                    @RequestParam(name = "limit", required = false, defaultValue = "20") Integer limit,
+                                    @RequestParam(name = "cursor", required = false) String cursor) throws Exception {
+        RoleGuard.requireMember(userId, groupId);
+        String query = q.trim();
+        if (query.isEmpty() || query.length() > MAX_QUERY) {
+            return ResponseEntity.badRequest().body(Map.of("error", "q must be 1-" + MAX_QUERY + " characters"));
+        }
+
+        Float afterRank = null;
+        int afterId = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            int sep = cursor.lastIndexOf(':');
+            try {
+                afterRank = Float.parseFloat(cursor.substring(0, sep));
+                afterId = Integer.parseInt(cursor.substring(sep + 1));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Invalid cursor"));
+            }
+        }
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_SEARCH_PAGE));
+        List<MessageHit> hits = repo.search(groupId, query, pageSize, SEARCH_CANDIDATES, afterRank, afterId);
+        MessageHit last = hits.size() == pageSize ? hits.get(hits.size() - 1) : null;
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("hits", hits);
+        out.put("next", last == null ? null : last.getRank() + ":" + last.getMessageId());
+        return ResponseEntity.ok(out);
+    }
+
+    /**
+     * The whole chat of the group as a gzip download, oldest first: NDJSON
+     * (one message object per line) or CSV with a header row. Streamed while
+     * it is read, see MessageExport; an error midway leaves a truncated
+     * gzip, which the client sees as a broken download.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<?> export(@RequestParam Integer groupId,
+                                    @RequestAttribute("userId") Integer userId,
+                                    @RequestParam(name = "format", required = false, defaultValue = "ndjson") String format) throws Exception {
+        RoleGuard.requireMember(userId, groupId);
+        MessageExport.Format f;
+        try {
+            f = MessageExport.Format.valueOf(format.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "format must be ndjson or csv"));
+        }
+
+        String fileName = "group-" + groupId + "-messages." + f.name().toLowerCase() + ".gz";
+        StreamingResponseBody body = out -> {
+            GZIPOutputStream gz = new GZIPOutputStream(out, 64 * 1024);
+            try {
+                export.write(groupId, f, gz);
+            } catch (SQLException e) {
+                throw new IOException("Export of group " + groupId + " failed", e);
+            }
+            gz.finish();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/gzip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    /**
+     * Read state of the group: {"lastRead":345,"unread":3,"markers":{"2":345,"5":340}}
+     * (the caller's marker, its unread count as the group list shows it, everyone's markers).
+     */
+    @GetMapping("/read")
+    public ResponseEntity<?> readState(@RequestParam Integer groupId,
+                                       @RequestAttribute("userId") Integer userId) throws Exception {
+        RoleGuard.requireMember(userId, groupId);
+        int lastRead = readMarkers.lastRead(userId, groupId);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("lastRead", lastRead);
+        out.put("unread", unread.unread(userId, groupId, memberships.findUnreadCount(userId, groupId)));
+        out.put("markers", readMarkers.groupMarkers(groupId));
+        return ResponseEntity.ok(out);
+    }
 }
@@ -2,11 +2,9 @@ package com.app.controller;
 
 import com.app.model.Resource;
 import com.app.security.RoleGuard;
-import com.app.service.ActivityService;
 import com.app.service.GcsStorageService;
 import com.app.service.MembershipService;
 import com.app.service.ResourceService;
-import com.app.websocket.ChatWebSocketHandler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
@@ -27,14 +25,10 @@ public class ResourceController {
 
     private final ResourceService resourceService = new ResourceService();
     private final MembershipService membershipService = new MembershipService();
-    private final ActivityService activityService = new ActivityService();
-    private final ChatWebSocketHandler chatSocket;
 
     private final GcsStorageService gcs;
 
-    public ResourceController(ChatWebSocketHandler chatSocket,
-                              @Value("${storage.bucket:}") String bucket) {
-        this.chatSocket = chatSocket;
+    public ResourceController(@Value("${storage.bucket:}") String bucket) {
         this.gcs = (bucket == null || bucket.isBlank()) ? null : new GcsStorageService(bucket);
     }
 
@@ -97,16 +91,6 @@ public class ResourceController {
                     description
             );
 
-            activityService.log(userId, "RESOURCE_UPLOADED",
-                    Map.of("groupId", groupId, "resourceId", saved.getResourceId(), "title", saved.getTitle()));
-
-            chatSocket.broadcastEvent(groupId, Map.of(
-                    "type", "EVENT",
-                    "event", "RESOURCE_UPLOADED",
-                    "resourceId", saved.getResourceId(),
-                    "title", saved.getTitle()
-            ));
-
             return ResponseEntity.status(201).body(saved);
 
         } catch (SecurityException e) {
@@ -179,20 +163,11 @@ public class ResourceController {
                 return ResponseEntity.status(403).body(Map.of("error", "No permission to delete resource"));
             }
 
-            resourceService.deleteResource(resourceId);
+            resourceService.deleteResource(resource, userId);
             if ("FILE".equalsIgnoreCase(resource.getType()) && gcs != null) {
                 gcs.delete(resource.getPathOrUrl());
             }
 
-            activityService.log(userId, "RESOURCE_DELETED",
-                    Map.of("groupId", resource.getGroupId(), "resourceId", resourceId));
-
-            chatSocket.broadcastEvent(resource.getGroupId(), Map.of(
-                    "type", "EVENT",
-                    "event", "RESOURCE_DELETED",
-                    "resourceId", resourceId
-            ));
-
             return ResponseEntity.noContent().build();
 
         } catch (SecurityException e) {
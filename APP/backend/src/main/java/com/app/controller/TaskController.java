@@ -2,9 +2,7 @@ package com.app.controller;
 
 import com.app.model.Task;
 import com.app.security.RoleGuard;
-import com.app.service.ActivityService;
 import com.app.service.TaskService;
-import com.app.websocket.ChatWebSocketHandler;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,13 +13,8 @@ import java.util.Map;
 @RequestMapping("/api/tasks")
 public class TaskController {
 
+    // activity log and socket events follow from the outbox (TaskService -> OutboxRelay)
     private final TaskService taskService = new TaskService();
-    private final ActivityService activityService = new ActivityService();
-    private final ChatWebSocketHandler chat;
-
-    public TaskController(ChatWebSocketHandler chat) {
-        this.chat = chat;
-    }
 
     @GetMapping
     public ResponseEntity<?> getTasks(@RequestParam Integer groupId,
@@ -63,16 +56,6 @@ public class TaskController {
                 (String) body.get("priority")
         );
 
-        activityService.log(userId, "TASK_CREATED",
-                Map.of("taskId", created.getTaskId(), "groupId", groupId));
-
-        chat.broadcastEvent(groupId, Map.of(
-                "type", "EVENT",
-                "event", "TASK_CREATED",
-                "taskId", created.getTaskId(),
-                "title", created.getTitle()
-        ));
-
         return ResponseEntity.status(201).body(created);
     }
 
@@ -87,17 +70,7 @@ public class TaskController {
         RoleGuard.requireMember(userId, t.getGroupId());
 
         String newStatus = (String) body.get("status");
-        taskService.updateStatus(taskId, newStatus);
-
-        activityService.log(userId, "TASK_STATUS_CHANGED",
-                Map.of("taskId", taskId, "status", newStatus));
-
-        chat.broadcastEvent(t.getGroupId(), Map.of(
-                "type", "EVENT",
-                "event", "TASK_STATUS_CHANGED",
-                "taskId", taskId,
-                "status", newStatus
-        ));
+        taskService.updateStatus(taskId, userId, newStatus);
 
         return ResponseEntity.ok(Map.of("message", "Status updated"));
     }
@@ -132,13 +105,6 @@ public class TaskController {
 
         taskService.attachResource(taskId, resourceId, userId);
 
-        chat.broadcastEvent(t.getGroupId(), Map.of(
-                "type", "EVENT",
-                "event", "TASK_RESOURCE_ATTACHED",
-                "taskId", taskId,
-                "resourceId", resourceId
-        ));
-
         return ResponseEntity.ok(Map.of("message", "Resource attached"));
     }
 
@@ -153,13 +119,6 @@ public class TaskController {
         RoleGuard.requireMember(userId, t.getGroupId());
         taskService.detachResource(taskId, resourceId, userId);
 
-        chat.broadcastEvent(t.getGroupId(), Map.of(
-                "type", "EVENT",
-                "event", "TASK_RESOURCE_DETACHED",
-                "taskId", taskId,
-                "resourceId", resourceId
-        ));
-
         return ResponseEntity.ok(Map.of("message", "Resource detached"));
     }
 
@@ -183,6 +142,7 @@ public class TaskController {
 
         taskService.updateTask(
                 taskId,
+                userId,
                 (Integer) body.get("assignedTo"),
                 (String) body.get("title"),
                 (String) body.get("description"),
@@ -190,15 +150,6 @@ public class TaskController {
                 (String) body.get("priority")
         );
 
-        activityService.log(userId, "TASK_UPDATED",
-                Map.of("taskId", taskId));
-
-        chat.broadcastEvent(groupId, Map.of(
-                "type", "EVENT",
-                "event", "TASK_UPDATED",
-                "taskId", taskId
-        ));
-
         return ResponseEntity.ok(Map.of("message", "Task updated"));
     }
 
@@ -219,16 +170,7 @@ public class TaskController {
             return ResponseEntity.status(403).body(Map.of("error", "No permission"));
         }
 
-        taskService.deleteTask(taskId);
-
-        activityService.log(userId, "TASK_DELETED",
-                Map.of("taskId", taskId));
-
-        chat.broadcastEvent(groupId, Map.of(
-                "type", "EVENT",
-                "event", "TASK_DELETED",
-                "taskId", taskId
-        ));
+        taskService.deleteTask(taskId, userId);
 
         return ResponseEntity.noContent().build();
     }
@@ -0,0 +1,39 @@
+package com.app.events;
+
+import com.app.repository.ActivityRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes every event to ACTIVITY_LOG (action = event type). Rows carry the
+ * event id, so a redelivered batch does not log twice. The entity snapshot is
+ * left out of details; the patch (what changed) is kept.
+ */
+public class ActivityEventConsumer implements EventConsumer {
+
+    private final ActivityRepository repo = new ActivityRepository();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public String name() {
+        return "activity";
+    }
+
+    @Override
+    public void accept(List<DomainEvent> events) throws Exception {
+        List<DomainEvent> trimmed = new ArrayList<>(events.size());
+        for (DomainEvent e : events) {
+            ObjectNode payload = (ObjectNode) mapper.readTree(e.getPayload());
+            if (payload.remove("entity") == null) {
+                trimmed.add(e);
+                continue;
+            }
+            trimmed.add(new DomainEvent(e.getEventId(), e.getGroupId(), e.getActorId(),
+                    e.getType(), payload.toString(), e.getCreatedAt()));
+        }
+        repo.insertEvents(trimmed);
+    }
+}
@@ -0,0 +1,36 @@
+package com.app.events;
+
+import com.app.websocket.MembershipIndex;
+
+import java.util.List;
+
+/**
+ * Drops cached state that an event made stale on the relaying instance.
+ * Other instances still expire it by TTL (chat.membership.ttl-ms).
+ */
+public class CacheEventConsumer implements EventConsumer {
+
+    private final MembershipIndex membershipIndex;
+
+    public CacheEventConsumer(MembershipIndex membershipIndex) {
+        this.membershipIndex = membershipIndex;
+    }
+
+    @Override
+    public String name() {
+        return "cache";
+    }
+
+    @Override
+    public void accept(List<DomainEvent> events) {
+        for (DomainEvent e : events) {
+            switch (e.getType()) {
+                case "GROUP_CREATED" -> {
+                    if (e.getActorId() != null) membershipIndex.invalidate(e.getActorId());
+                }
+                case "GROUP_DELETED" -> membershipIndex.invalidateGroup(e.getGroupId());
+                default -> { }
+            }
+        }
+    }
+}
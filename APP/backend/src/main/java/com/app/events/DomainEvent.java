@@ -0,0 +1,50 @@
+package com.app.events;
+
+/**
+ * One row of EVENT_OUTBOX: something that changed in a group, e.g. TASK_CREATED.
+ *
+ * payload is the JSON object the event was written with ({"taskId":5,"title":"..."});
+ * consumers decide what to do with it.
+ */
+public class DomainEvent {
+
+    private final long eventId;
+    private final int groupId;
+    private final Integer actorId;
+    private final String type;
+    private final String payload;
+    private final long createdAt;
+
+    public DomainEvent(long eventId, int groupId, Integer actorId, String type, String payload, long createdAt) {
+        this.eventId = eventId;
+        this.groupId = groupId;
+        this.actorId = actorId;
+        this.type = type;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public Integer getActorId() {
+        return actorId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
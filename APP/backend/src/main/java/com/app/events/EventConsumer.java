@@ -0,0 +1,16 @@
+package com.app.events;
+
+import java.util.List;
+
+/**
+ * Receives published outbox events in event_id order (so in commit order per group).
+ *
+ * Delivery is at-least-once: if any consumer throws, the whole batch is
+ * offered again to every consumer, so accept() must tolerate repeats.
+ */
+public interface EventConsumer {
+
+    String name();
+
+    void accept(List<DomainEvent> events) throws Exception;
+}
@@ -0,0 +1,136 @@
+package com.app.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access to EVENT_OUTBOX.
+ *
+ * append() must be called on the connection of the transaction that makes the
+ * change, so the event exists exactly when the change does. It takes a
+ * per-group transaction lock first: writers of one group then commit in
+ * event_id order, and the relay can never see event N+1 of a group before N.
+ *
+ * Payload conventions: "entity" is the row as the REST API returns it, read
+ * on the writing transaction; "patch" holds only the fields that changed.
+ * Consumers pick what they need (SocketEventConsumer, ActivityEventConsumer).
+ */
+public class EventOutbox {
+
+    // first half of the two-int advisory lock key; the second half is the group id
+    private static final int GROUP_LOCK_SPACE = 0x6f62; // "ob"
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public long append(Connection conn, int groupId, int actorId, String type, Map<String, Object> payload)
+            throws SQLException {
+
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_advisory_xact_lock(?, ?)")) {
+            ps.setInt(1, GROUP_LOCK_SPACE);
+            ps.setInt(2, groupId);
+            ps.execute();
+        }
+
+        String json;
+        try {
+            json = mapper.writeValueAsString(payload);
+        } catch (Exception e) {
+            throw new SQLException("Event payload is not serializable: " + type, e);
+        }
+
+        long eventId;
+        String sql = """
+            INSERT INTO EVENT_OUTBOX(group_id, actor_id, event_type, payload)
+            VALUES (?,?,?,?)
+            RETURNING event_id
+            """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, groupId);
+            ps.setInt(2, actorId);
+            ps.setString(3, type);
+            ps.setString(4, json);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                eventId = rs.getLong(1);
+            }
+        }
+
+        // delivered on commit, wakes the relay instead of waiting for its next poll
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_notify(?, '')")) {
+            ps.setString(1, OutboxRelay.CHANNEL);
+            ps.execute();
+        }
+        return eventId;
+    }
+
+    /** Fields of after whose value differs from before, e.g. {"status":"DONE","updatedAt":"..."}. */
+    public ObjectNode patch(Object before, Object after) {
+        JsonNode old = mapper.valueToTree(before);
+        ObjectNode patch = mapper.createObjectNode();
+        for (Map.Entry<String, JsonNode> e : mapper.<JsonNode>valueToTree(after).properties()) {
+            if (!e.getValue().equals(old.get(e.getKey()))) {
+                patch.set(e.getKey(), e.getValue());
+            }
+        }
+        return patch;
+    }
+
+    /** Oldest unpublished events. */
+    List<DomainEvent> pending(Connection conn, int limit) throws SQLException {
+        String sql = """
+            SELECT event_id, group_id, actor_id, event_type, payload, created_at
+            FROM EVENT_OUTBOX
+            WHERE published_at IS NULL
+            ORDER BY event_id
+            LIMIT ?
+            """;
+
+        List<DomainEvent> result = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new DomainEvent(
+                            rs.getLong("event_id"),
+                            rs.getInt("group_id"),
+                            (Integer) rs.getObject("actor_id"),
+                            rs.getString("event_type"),
+                            rs.getString("payload"),
+                            rs.getTimestamp("created_at").getTime()
+                    ));
+                }
+            }
+        }
+        return result;
+    }
+
+    void markPublished(Connection conn, List<DomainEvent> events) throws SQLException {
+        Long[] ids = new Long[events.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = events.get(i).getEventId();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE EVENT_OUTBOX SET published_at = CURRENT_TIMESTAMP WHERE event_id = ANY(?)")) {
+            ps.setArray(1, conn.createArrayOf("bigint", ids));
+            ps.executeUpdate();
+        }
+    }
+
+    /** Drops published events older than the retention window. */
+    int purge(Connection conn, long retentionMillis) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "DELETE FROM EVENT_OUTBOX WHERE published_at < CURRENT_TIMESTAMP - (? * INTERVAL '1 millisecond')")) {
+            ps.setLong(1, retentionMillis);
+            return ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.app.events;
+
+import com.app.websocket.ChatWebSocketHandler;
+import com.app.websocket.MembershipIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class EventsConfig {
+
+    @Value("${app.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.outbox.poll-ms:1000}")
+    private long pollMillis;
+
+    @Value("${app.outbox.leader-retry-ms:5000}")
+    private long leaderRetryMillis;
+
+    @Value("${app.outbox.retention-ms:3600000}")
+    private long retentionMillis;
+
+    @Value("${app.events.payload:snapshot}")
+    private String payloadMode;
+
+    @Bean
+    public OutboxRelay outboxRelay(ChatWebSocketHandler chatSocket, MembershipIndex membershipIndex) {
+        return new OutboxRelay(
+                List.of(
+                        new SocketEventConsumer(chatSocket, payloadMode),
+                        new ActivityEventConsumer(),
+                        new CacheEventConsumer(membershipIndex)
+                ),
+                batchSize,
+                pollMillis,
+                leaderRetryMillis,
+                retentionMillis
+        );
+    }
+}
@@ -0,0 +1,194 @@
+package com.app.events;
+
+import com.app.config.Database;
+import org.postgresql.PGConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes EVENT_OUTBOX rows to the consumers, asynchronously and in batches.
+ *
+ * Exactly one instance relays at a time: the one holding a session-level
+ * advisory lock on its relay connection (released by Postgres if the instance
+ * dies, then a standby takes over). The leader LISTENs on {@link #CHANNEL},
+ * which EventOutbox notifies on commit, and polls as a fallback.
+ *
+ * Each batch is read in event_id order, handed to every consumer, then marked
+ * published in the same transaction. A failing consumer leaves the batch
+ * unpublished and it is offered again (at-least-once, order kept).
+ */
+public class OutboxRelay {
+
+    static final String CHANNEL = "event_outbox";
+    private static final long LEADER_LOCK = 0x6f7574626f78L; // "outbox"
+    private static final long PURGE_EVERY_MS = 60_000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final EventOutbox outbox = new EventOutbox();
+    private final List<EventConsumer> consumers;
+    private final int batchSize;
+    private final long pollMillis;
+    private final long leaderRetryMillis;
+    private final long retentionMillis;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastLagMillis;
+    private volatile String lastFailure;
+    private volatile boolean leader;
+    private volatile boolean running = true;
+    private final Thread thread;
+
+    public OutboxRelay(List<EventConsumer> consumers, int batchSize, long pollMillis,
+                       long leaderRetryMillis, long retentionMillis) {
+        this.consumers = List.copyOf(consumers);
+        this.batchSize = batchSize;
+        this.pollMillis = pollMillis;
+        this.leaderRetryMillis = leaderRetryMillis;
+        this.retentionMillis = retentionMillis;
+
+        this.thread = new Thread(this::run, "outbox-relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /** Relay counters of this instance, for /api/chat/stats. */
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("leader", leader);
+        out.put("published", published.get());
+        out.put("batches", batches.get());
+        out.put("failures", failures.get());
+        out.put("lastLagMs", lastLagMillis);
+        out.put("lastFailure", lastFailure);
+        return out;
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection conn = Database.get()) {
+                if (!tryLead(conn)) {
+                    sleepQuietly(leaderRetryMillis);
+                    continue;
+                }
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                leader = true;
+                relay(conn);
+            } catch (Exception e) {
+                // connection lost: the lock went with it, compete again
+                lastFailure = e.toString();
+                sleepQuietly(1000);
+            } finally {
+                leader = false;
+            }
+        }
+    }
+
+    private boolean tryLead(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            ps.setLong(1, LEADER_LOCK);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void relay(Connection conn) throws SQLException, InterruptedException {
+        PGConnection pg = conn.unwrap(PGConnection.class);
+        long lastPurge = 0;
+        long backoff = 0;
+
+        while (running) {
+            int delivered;
+            try {
+                delivered = relayBatch(conn);
+                backoff = 0;
+            } catch (ConsumerException e) {
+                failures.incrementAndGet();
+                lastFailure = e.getMessage();
+                backoff = Math.min(MAX_BACKOFF_MS, backoff == 0 ? pollMillis : backoff * 2);
+                Thread.sleep(backoff);
+                continue;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastPurge > PURGE_EVERY_MS) {
+                outbox.purge(conn, retentionMillis);
+                lastPurge = now;
+            }
+
+            if (delivered < batchSize) {
+                // caught up: sleep until a commit notifies us (or the poll interval passes)
+                pg.getNotifications((int) pollMillis);
+            }
+        }
+    }
+
+    private int relayBatch(Connection conn) throws SQLException, ConsumerException {
+        conn.setAutoCommit(false);
+        try {
+            List<DomainEvent> batch = outbox.pending(conn, batchSize);
+            if (batch.isEmpty()) {
+                conn.commit();
+                return 0;
+            }
+
+            for (EventConsumer consumer : consumers) {
+                try {
+                    consumer.accept(batch);
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw new ConsumerException(consumer.name() + ": " + e);
+                }
+            }
+
+            outbox.markPublished(conn, batch);
+            conn.commit();
+
+            published.addAndGet(batch.size());
+            batches.incrementAndGet();
+            lastLagMillis = System.currentTimeMillis() - batch.get(batch.size() - 1).getCreatedAt();
+            return batch.size();
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static final class ConsumerException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        ConsumerException(String message) {
+            super(message);
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.app.events;
+
+import com.app.websocket.ChatWebSocketHandler;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fans events out to the group's sockets as
+ * {"type":"EVENT","event":"TASK_CREATED","eventId":42,"groupId":7,...payload}.
+ * A redelivered event keeps its eventId, so clients can drop repeats.
+ *
+ * How much of the changed row goes on the wire (app.events.payload):
+ *   snapshot - "entity", the row as the REST API returns it (default)
+ *   patch    - "patch" with the changed fields where there is one, else "entity"
+ *   ids      - neither; clients refetch the list as before
+ * With an entity or patch every client in the group applies the change
+ * locally instead of sending its own GET /api/tasks or /api/resources.
+ */
+public class SocketEventConsumer implements EventConsumer {
+
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP = new TypeReference<>() { };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ChatWebSocketHandler chatSocket;
+    private final String payloadMode;
+
+    public SocketEventConsumer(ChatWebSocketHandler chatSocket, String payloadMode) {
+        this.chatSocket = chatSocket;
+        this.payloadMode = payloadMode.toLowerCase();
+    }
+
+    @Override
+    public String name() {
+        return "socket";
+    }
+
+    @Override
+    public void accept(List<DomainEvent> events) throws Exception {
+        for (DomainEvent e : events) {
+            Map<String, Object> frame = new LinkedHashMap<>();
+            frame.put("type", "EVENT");
+            frame.put("event", e.getType());
+            frame.put("eventId", e.getEventId());
+            frame.put("groupId", e.getGroupId());
+            Map<String, Object> payload = mapper.readValue(e.getPayload(), MAP);
+            Object entity = payload.remove("entity");
+            Object patch = payload.remove("patch");
+            frame.putAll(payload);
+
+            switch (payloadMode) {
+                case "ids" -> { }
+                case "patch" -> {
+                    if (patch != null) frame.put("patch", patch);
+                    else if (entity != null) frame.put("entity", entity);
+                }
+                default -> {
+                    if (entity != null) frame.put("entity", entity);
+                }
+            }
+            chatSocket.broadcastEvent(e.getGroupId(), frame);
+        }
+    }
+}
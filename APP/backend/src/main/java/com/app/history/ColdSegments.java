@@ -0,0 +1,411 @@
+package com.app.history;
+
+import com.app.model.Message;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Messages of exported (cold) partitions, in local files.
+ *
+ * One segment per partition (per month of messages_legacy): NAME.seg holds
+ * the rows as NDJSON, sorted by (group_id, timestamp, message_id), in one
+ * block per group made of gzip members of ROWS_PER_MEMBER rows; NAME.idx has
+ * a line per group "groupId offset length count minId maxId" followed by its
+ * members "offset:length:minId,...". A group's rows are streamed from its
+ * block, a history page from just the members it needs; nothing else is
+ * decompressed. The .idx is written last: a segment without one is an
+ * unfinished export and is ignored (the partition is still in the database).
+ *
+ * Segment names sort by age (they end with the partition's upper bound), so
+ * deep history walks them newest first.
+ */
+public final class ColdSegments {
+
+    record Block(long offset, int length, int count, int minId, int maxId, List<Member> members) {
+    }
+
+    /** A gzip member of a block: up to ROWS_PER_MEMBER rows, decoded on their own. */
+    record Member(long offset, int length, int minId) {
+    }
+
+    // a history page (50 rows) decodes one or two members, not the group's whole block
+    private static final int ROWS_PER_MEMBER = 256;
+
+    private final Path dir;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // segment name -> groupId -> block
+    private final ConcurrentSkipListMap<String, Map<Integer, Block>> segments = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong blockReads = new AtomicLong();
+    private final AtomicLong rowsRead = new AtomicLong();
+
+    private ColdSegments(Path dir) {
+        this.dir = dir;
+    }
+
+    /** No segments: nothing was exported and nothing will be. */
+    static ColdSegments none() {
+        return new ColdSegments(null);
+    }
+
+    /** Loads the indexes found in dir. */
+    static ColdSegments open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        ColdSegments cold = new ColdSegments(dir);
+        try (DirectoryStream<Path> idx = Files.newDirectoryStream(dir, "*.idx")) {
+            for (Path p : idx) {
+                String name = p.getFileName().toString();
+                cold.segments.put(name.substring(0, name.length() - 4), readIndex(p));
+            }
+        }
+        return cold;
+    }
+
+    private static Map<Integer, Block> readIndex(Path idx) throws IOException {
+        Map<Integer, Block> blocks = new HashMap<>();
+        for (String line : Files.readAllLines(idx, StandardCharsets.UTF_8)) {
+            String[] f = line.trim().split(" ");
+            if (f.length < 6) continue;
+            long offset = Long.parseLong(f[1]);
+            int length = Integer.parseInt(f[2]);
+            int minId = Integer.parseInt(f[4]);
+            List<Member> members = new ArrayList<>();
+            if (f.length > 6) {
+                for (String m : f[6].split(",")) {
+                    String[] p = m.split(":");
+                    members.add(new Member(Long.parseLong(p[0]), Integer.parseInt(p[1]), Integer.parseInt(p[2])));
+                }
+            } else {
+                // exported before blocks were split: the whole block is one member
+                members.add(new Member(offset, length, minId));
+            }
+            blocks.put(Integer.parseInt(f[0]), new Block(offset, length, Integer.parseInt(f[3]), minId,
+                    Integer.parseInt(f[5]), members));
+        }
+        return blocks;
+    }
+
+    boolean has(String name) {
+        return segments.containsKey(name);
+    }
+
+    /**
+     * Up to limit of the group's newest cold messages with message_id below
+     * beforeId (0 = no bound), oldest first. Members are read newest first
+     * and only as far as the page needs.
+     */
+    public List<Message> before(int groupId, int beforeId, int limit) throws IOException {
+        ArrayDeque<Message> out = new ArrayDeque<>(limit);
+        List<Message> rows = new ArrayList<>(ROWS_PER_MEMBER);
+        for (Map.Entry<String, Map<Integer, Block>> seg : segments.descendingMap().entrySet()) {
+            Block b = seg.getValue().get(groupId);
+            if (b == null || (beforeId > 0 && b.minId() >= beforeId)) continue;
+
+            List<Member> members = b.members();
+            for (int k = members.size() - 1; k >= 0 && out.size() < limit; k--) {
+                Member member = members.get(k);
+                if (beforeId > 0 && member.minId() >= beforeId) continue;
+                rows.clear();
+                read(seg.getKey(), member.offset(), member.length(), rows::add);
+                for (int i = rows.size() - 1; i >= 0 && out.size() < limit; i--) {
+                    Message m = rows.get(i);
+                    if (beforeId <= 0 || m.getMessageId() < beforeId) out.addFirst(m);
+                }
+            }
+            if (out.size() >= limit) break;
+        }
+        return new ArrayList<>(out);
+    }
+
+    /** Receives the rows of {@link #scan}. */
+    public interface RowSink {
+        void accept(Message m) throws IOException;
+    }
+
+    /**
+     * Every cold message of the group, oldest first. Blocks are streamed from
+     * the file; rows are decoded as they are handed on.
+     */
+    public void scan(int groupId, RowSink sink) throws IOException {
+        for (Map.Entry<String, Map<Integer, Block>> seg : segments.entrySet()) {
+            Block b = seg.getValue().get(groupId);
+            if (b != null) read(seg.getKey(), b.offset(), b.length(), sink);
+        }
+    }
+
+    /** Decodes the gzip members in [offset, offset + length) of the segment, in order. */
+    private void read(String segment, long offset, int length, RowSink sink) throws IOException {
+        long n = 0;
+        try (FileChannel ch = FileChannel.open(dir.resolve(segment + ".seg"), StandardOpenOption.READ);
+             BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                     new Bounded(Channels.newInputStream(ch.position(offset)), length), 8192), StandardCharsets.UTF_8))) {
+            blockReads.incrementAndGet();
+            for (String line; (line = in.readLine()) != null; ) {
+                if (line.isEmpty()) continue;
+                sink.accept(toMessage(mapper.readTree(line)));
+                n++;
+            }
+        } finally {
+            rowsRead.addAndGet(n);
+        }
+    }
+
+    private static Message toMessage(JsonNode n) {
+        return new Message(
+                n.path("messageId").asInt(),
+                n.path("groupId").asInt(),
+                n.path("userId").asInt(),
+                n.path("userName").asText("Unknown"),
+                n.path("content").asText(""),
+                n.hasNonNull("resourceId") ? n.path("resourceId").asInt() : null,
+                n.hasNonNull("resourceTitle") ? n.path("resourceTitle").asText() : null,
+                n.hasNonNull("taskId") ? n.path("taskId").asInt() : null,
+                n.path("timestamp").asText(null),
+                n.hasNonNull("clientMsgId") ? n.path("clientMsgId").asText() : null
+        );
+    }
+
+    /**
+     * Writes the rows of the partition into segment name, reading them with a
+     * server-side cursor (the connection must not be in autocommit mode).
+     * With from and to set, only the rows with a timestamp in [from, to).
+     *
+     * @return rows written
+     */
+    long export(Connection conn, String partition, LocalDate from, LocalDate to, String name)
+            throws SQLException, IOException {
+        String sql = """
+            SELECT p.message_id, p.group_id, p.user_id, COALESCE(u.name, 'Unknown') AS user_name,
+                   p.content, p.resource_id, p.resource_title, p.task_id, p.timestamp, p.client_msg_id
+            FROM %s p
+            LEFT JOIN users u ON u.user_id = p.user_id
+            %s
+            ORDER BY p.group_id, p.timestamp, p.message_id
+            """.formatted(partition, from != null ? "WHERE p.timestamp >= ? AND p.timestamp < ?" : "");
+
+        Path seg = dir.resolve(name + ".seg");
+        Path segTmp = dir.resolve(name + ".seg.tmp");
+        Path idxTmp = dir.resolve(name + ".idx.tmp");
+        Map<Integer, Block> index = new LinkedHashMap<>();
+        long rows = 0;
+
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+             CountingStream file = new CountingStream(new BufferedOutputStream(Files.newOutputStream(segTmp)))) {
+            ps.setFetchSize(1000);
+            if (from != null) {
+                ps.setObject(1, from.atStartOfDay());
+                ps.setObject(2, to.atStartOfDay());
+            }
+            ResultSet rs = ps.executeQuery();
+
+            int group = 0;
+            GZIPOutputStream gz = null;
+            List<Member> members = null;
+            long start = 0, memberStart = 0;
+            int count = 0, minId = 0, maxId = 0, memberRows = 0, memberMinId = 0;
+            while (rs.next()) {
+                int g = rs.getInt("group_id");
+                boolean newGroup = gz == null || g != group;
+                if (gz != null && (newGroup || memberRows == ROWS_PER_MEMBER)) {
+                    gz.finish();
+                    members.add(new Member(memberStart, (int) (file.count - memberStart), memberMinId));
+                    gz = null;
+                    if (newGroup) {
+                        index.put(group, new Block(start, (int) (file.count - start), count, minId, maxId, members));
+                    }
+                }
+                if (newGroup) {
+                    group = g;
+                    start = file.count;
+                    count = 0;
+                    minId = Integer.MAX_VALUE;
+                    maxId = 0;
+                    members = new ArrayList<>();
+                }
+                if (gz == null) {
+                    memberStart = file.count;
+                    memberRows = 0;
+                    memberMinId = Integer.MAX_VALUE;
+                    gz = new GZIPOutputStream(file.unclosable(), 8192);
+                }
+                int id = rs.getInt("message_id");
+                ObjectNode row = mapper.createObjectNode();
+                row.put("messageId", id);
+                row.put("groupId", g);
+                row.put("userId", rs.getInt("user_id"));
+                row.put("userName", rs.getString("user_name"));
+                row.put("content", rs.getString("content"));
+                putInt(row, "resourceId", rs.getObject("resource_id"));
+                row.put("resourceTitle", rs.getString("resource_title"));
+                putInt(row, "taskId", rs.getObject("task_id"));
+                row.put("timestamp", rs.getString("timestamp"));
+                row.put("clientMsgId", rs.getString("client_msg_id"));
+                gz.write(mapper.writeValueAsBytes(row));
+                gz.write('\n');
+                count++;
+                minId = Math.min(minId, id);
+                maxId = Math.max(maxId, id);
+                memberRows++;
+                memberMinId = Math.min(memberMinId, id);
+                rows++;
+            }
+            if (gz != null) {
+                gz.finish();
+                members.add(new Member(memberStart, (int) (file.count - memberStart), memberMinId));
+                index.put(group, new Block(start, (int) (file.count - start), count, minId, maxId, members));
+            }
+        }
+
+        // the partition is dropped after this returns: the rows must be on disk, not in the page cache
+        try (FileChannel ch = FileChannel.open(segTmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(segTmp, seg, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (BufferedWriter w = Files.newBufferedWriter(idxTmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Integer, Block> e : index.entrySet()) {
+                Block b = e.getValue();
+                w.write(e.getKey() + " " + b.offset() + " " + b.length() + " " + b.count() + " " + b.minId() + " " + b.maxId());
+                for (int i = 0; i < b.members().size(); i++) {
+                    Member m = b.members().get(i);
+                    w.write((i == 0 ? " " : ",") + m.offset() + ":" + m.length() + ":" + m.minId());
+                }
+                w.newLine();
+            }
+        }
+        Files.move(idxTmp, dir.resolve(name + ".idx"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segments.put(name, index);
+        return rows;
+    }
+
+    private static void putInt(ObjectNode row, String field, Object value) {
+        if (value == null) {
+            row.putNull(field);
+        } else {
+            row.put(field, ((Number) value).intValue());
+        }
+    }
+
+    /**
+     * At most limit bytes of in: a block ends where the next group's starts.
+     * available() is bounded too, GZIPInputStream asks it whether another
+     * member follows.
+     */
+    private static final class Bounded extends FilterInputStream {
+        private long remaining;
+
+        Bounded(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /** Counts the bytes written; members are finished, never closed, so the file stays open. */
+    private static final class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        OutputStream unclosable() {
+            return new FilterOutputStream(this) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("segments", segments.size());
+        out.put("blockReads", blockReads.get());
+        out.put("rowsRead", rowsRead.get());
+        return out;
+    }
+}
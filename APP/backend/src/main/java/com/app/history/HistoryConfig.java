@@ -0,0 +1,69 @@
+package com.app.history;
+
+import com.app.repository.MessageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Configuration
+public class HistoryConfig {
+
+    @Value("${app.messages.partitioning:off}")
+    private String partitioning;
+
+    @Value("${app.messages.partitions-ahead:2}")
+    private int partitionsAhead;
+
+    @Value("${app.messages.cold-after-months:0}")
+    private int coldAfterMonths;
+
+    @Value("${app.messages.cold-dir:./data/cold-messages}")
+    private String coldDir;
+
+    @Value("${app.messages.maintenance-ms:3600000}")
+    private long maintenanceMillis;
+
+    @Value("${app.messages.client-id-retention-days:30}")
+    private int clientIdRetentionDays;
+
+    @Value("${app.messages.search-backfill-batch:5000}")
+    private int searchBackfillBatch;
+
+    @Bean
+    public ColdSegments coldSegments() throws IOException {
+        Path dir = Path.of(coldDir);
+        // segments exported earlier stay readable after export is switched off
+        return coldAfterMonths > 0 || Files.isDirectory(dir) ? ColdSegments.open(dir) : ColdSegments.none();
+    }
+
+    @Bean
+    public MessageRepository messageRepository() throws IOException {
+        return new MessageRepository(coldSegments());
+    }
+
+    @Bean
+    public MessageExport messageExport() throws IOException {
+        return new MessageExport(coldSegments());
+    }
+
+    @Bean(initMethod = "start")
+    public MessagePartitions messagePartitions() throws IOException {
+        return new MessagePartitions(
+                "monthly".equalsIgnoreCase(partitioning),
+                partitionsAhead,
+                coldAfterMonths,
+                coldSegments(),
+                clientIdRetentionDays,
+                maintenanceMillis
+        );
+    }
+
+    @Bean(initMethod = "start")
+    public SearchBackfill searchBackfill() {
+        return new SearchBackfill(searchBackfillBatch, maintenanceMillis);
+    }
+}
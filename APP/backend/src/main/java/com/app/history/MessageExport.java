@@ -0,0 +1,146 @@
+package com.app.history;
+
+import com.app.config.Database;
+import com.app.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A group's whole chat as NDJSON or CSV, oldest first, written while it is
+ * read: cold segments first, then the database through a server-side cursor
+ * (fetchSize rows at a time), so the heap used does not grow with the
+ * history. The connection is closed as soon as the last row is written.
+ */
+public class MessageExport {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final int FETCH_SIZE = 1000;
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final String CSV_HEADER =
+            "message_id,timestamp,user_id,user_name,content,resource_id,resource_title,task_id\r\n";
+
+    private final ColdSegments cold;
+
+    public MessageExport(ColdSegments cold) {
+        this.cold = cold;
+    }
+
+    /** @return messages written */
+    public long write(int groupId, Format format, OutputStream out) throws IOException, SQLException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator json = format == Format.NDJSON ? JSON.createGenerator(w) : null;
+        if (json != null) {
+            json.setRootValueSeparator(null); // one object per line, the newline is written per row
+        } else {
+            w.write(CSV_HEADER);
+        }
+
+        long[] rows = {0};
+        ColdSegments.RowSink sink = m -> {
+            if (json != null) writeJson(json, m); else writeCsv(w, m);
+            rows[0]++;
+        };
+
+        cold.scan(groupId, sink);
+        scanDatabase(groupId, sink);
+
+        if (json != null) json.flush();
+        w.flush();
+        return rows[0];
+    }
+
+    private static void scanDatabase(int groupId, ColdSegments.RowSink sink) throws SQLException, IOException {
+        String sql = """
+            SELECT m.message_id, m.group_id, m.user_id, COALESCE(u.name, 'Unknown') AS user_name,
+                   m.content, m.resource_id, m.resource_title, m.task_id, m.timestamp
+            FROM messages m
+            LEFT JOIN users u ON u.user_id = m.user_id
+            WHERE m.group_id = ?
+            ORDER BY m.timestamp, m.message_id
+            """;
+        try (Connection conn = Database.get()) {
+            // Postgres only streams with a cursor inside a transaction
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setFetchSize(FETCH_SIZE);
+                ps.setInt(1, groupId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        sink.accept(new Message(
+                                rs.getInt("message_id"),
+                                rs.getInt("group_id"),
+                                rs.getInt("user_id"),
+                                rs.getString("user_name"),
+                                rs.getString("content"),
+                                (Integer) rs.getObject("resource_id"),
+                                rs.getString("resource_title"),
+                                (Integer) rs.getObject("task_id"),
+                                rs.getString("timestamp"),
+                                null
+                        ));
+                    }
+                }
+            }
+            conn.commit();
+        }
+    }
+
+    private static void writeJson(JsonGenerator json, Message m) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("messageId", m.getMessageId());
+        json.writeStringField("timestamp", m.getTimestamp());
+        json.writeNumberField("userId", m.getUserId());
+        json.writeStringField("userName", m.getUserName());
+        json.writeStringField("content", m.getContent());
+        if (m.getResourceId() != null) {
+            json.writeNumberField("resourceId", m.getResourceId());
+            json.writeStringField("resourceTitle", m.getResourceTitle());
+        }
+        if (m.getTaskId() != null) json.writeNumberField("taskId", m.getTaskId());
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    private static void writeCsv(Writer w, Message m) throws IOException {
+        w.write(Integer.toString(m.getMessageId()));
+        w.write(',');
+        w.write(csv(m.getTimestamp()));
+        w.write(',');
+        w.write(Integer.toString(m.getUserId()));
+        w.write(',');
+        w.write(csv(m.getUserName()));
+        w.write(',');
+        w.write(csv(m.getContent()));
+        w.write(',');
+        w.write(m.getResourceId() == null ? "" : m.getResourceId().toString());
+        w.write(',');
+        w.write(csv(m.getResourceTitle()));
+        w.write(',');
+        w.write(m.getTaskId() == null ? "" : m.getTaskId().toString());
+        w.write("\r\n");
+    }
+
+    /** RFC 4180: quoted if it contains a separator, quote or line break; quotes doubled. */
+    private static String csv(String value) {
+        if (value == null) return "";
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+}
@@ -0,0 +1,141 @@
+package com.app.history;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Indexes of messages that are built in the background, with CREATE INDEX
+ * CONCURRENTLY, instead of at startup under a lock that stops chat inserts.
+ *
+ * CONCURRENTLY cannot run in a transaction or on a partitioned table: a
+ * partitioned messages gets the index ON ONLY the parent, and one built
+ * concurrently on every partition and attached to it (partitions created
+ * later get theirs from the parent).
+ */
+final class MessageIndexes {
+
+    /** @param suffix appended to a partition's name for its own index */
+    record Index(String name, String suffix, String definition) {
+    }
+
+    // history pages: keyset on (timestamp, message_id) within a group
+    static final Index GROUP_TIME = new Index("idx_messages_group_time", "_group_time",
+            " (group_id, timestamp, message_id)");
+    // search: one GIN over both columns (btree_gin), so a query only reads its own group's entries
+    static final Index SEARCH = new Index("idx_messages_group_search", "_group_search",
+            " USING GIN (group_id, search_tsv) WITH (fastupdate = on)");
+    // what SEARCH replaces: GIN on search_tsv alone, then filtered by group
+    static final String OLD_SEARCH = "idx_messages_search";
+
+    private MessageIndexes() {
+    }
+
+    /** Builds what is missing of the index; returns how many indexes were built. */
+    static int ensure(Connection conn, Index index) throws SQLException {
+        if (!isPartitioned(conn)) {
+            return indexConcurrently(conn, index.name(), "messages", index.definition()) ? 1 : 0;
+        }
+        int built = 0;
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE INDEX IF NOT EXISTS " + index.name() + " ON ONLY messages" + index.definition());
+            Set<String> covered = partitionsWithIndex(conn, index.name());
+            for (String partition : listPartitions(conn)) {
+                if (covered.contains(partition)) continue;
+                String name = partition + index.suffix();
+                if (indexConcurrently(conn, name, partition, index.definition())) built++;
+                st.execute("ALTER INDEX " + index.name() + " ATTACH PARTITION " + name);
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Builds the index unless a valid one exists; an invalid one (an interrupted build) is rebuilt.
+     *
+     * @return false if a valid one was there
+     */
+    static boolean indexConcurrently(Connection conn, String name, String table, String definition) throws SQLException {
+        return buildConcurrently(conn, "INDEX", name, table, definition);
+    }
+
+    /** Like {@link #indexConcurrently}, for a UNIQUE index. */
+    static boolean uniqueIndexConcurrently(Connection conn, String name, String table, String definition)
+            throws SQLException {
+        return buildConcurrently(conn, "UNIQUE INDEX", name, table, definition);
+    }
+
+    private static boolean buildConcurrently(Connection conn, String kind, String name, String table, String definition)
+            throws SQLException {
+        Boolean valid = null;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) valid = rs.getBoolean(1);
+            }
+        }
+        if (Boolean.TRUE.equals(valid)) return false;
+        try (Statement st = conn.createStatement()) {
+            if (valid != null) st.execute("DROP INDEX CONCURRENTLY " + name);
+            st.execute("CREATE " + kind + " CONCURRENTLY " + name + " ON " + table + definition);
+        }
+        return true;
+    }
+
+    /** Drops an index if it exists; a partitioned one (no CONCURRENTLY for those) with its partitions' indexes. */
+    static void drop(Connection conn, String name) throws SQLException {
+        boolean partitioned;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT relkind FROM pg_class WHERE oid = to_regclass(?)")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+                partitioned = "I".equals(rs.getString(1));
+            }
+        }
+        try (Statement st = conn.createStatement()) {
+            st.execute((partitioned ? "DROP INDEX IF EXISTS " : "DROP INDEX CONCURRENTLY IF EXISTS ") + name);
+        }
+    }
+
+    static boolean isPartitioned(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT relkind FROM pg_class WHERE oid = to_regclass('messages')")) {
+            return rs.next() && "p".equals(rs.getString(1));
+        }
+    }
+
+    private static List<String> listPartitions(Connection conn) throws SQLException {
+        List<String> out = new ArrayList<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = 'messages'::regclass")) {
+            while (rs.next()) out.add(rs.getString(1));
+        }
+        return out;
+    }
+
+    /** Partitions whose index is attached to the parent's already. */
+    private static Set<String> partitionsWithIndex(Connection conn, String index) throws SQLException {
+        String sql = """
+            SELECT x.indrelid::regclass::text
+            FROM pg_inherits i
+            JOIN pg_index x ON x.indexrelid = i.inhrelid
+            WHERE i.inhparent = to_regclass(?)
+            """;
+        Set<String> out = new HashSet<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, index);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+        }
+        return out;
+    }
+}
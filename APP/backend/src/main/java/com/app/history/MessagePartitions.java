@@ -0,0 +1,397 @@
+package com.app.history;
+
+import com.app.config.Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps messages range-partitioned by month on timestamp.
+ *
+ * With partitioning on, the first run turns a plain messages table into a
+ * partitioned one: the existing table becomes its first partition
+ * (messages_legacy, everything up to the end of the current month) and keeps
+ * its sequence and its indexes, which the parent's take over (see
+ * {@link #migrate}; missing ones are built by {@link SearchBackfill}). Every
+ * run then creates the monthly partitions up to partitionsAhead months
+ * ahead, so inserts never find their month missing,
+ * and, if coldAfterMonths is set, exports the partitions that ended that many
+ * months ago to {@link ColdSegments} and drops them. messages_legacy, which
+ * can hold years, is exported one month per transaction instead (see
+ * {@link #exportLegacy}). Old client message ids are purged here too.
+ *
+ * Runs on one instance at a time (advisory lock); the first run happens in
+ * {@link #start}, called when the bean is initialized, before the server
+ * takes requests.
+ */
+public class MessagePartitions {
+
+    private static final long MAINTENANCE_LOCK = 0x6d7367706172L; // "msgpar"
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'messages_y'yyyy'm'MM");
+    private static final String LEGACY = "messages_legacy";
+    private static final String LEGACY_BOUND = "messages_legacy_bound";
+    private static final String LEGACY_KEY = "messages_legacy_key";
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('(\\d{4}-\\d{2}-\\d{2})");
+
+    private final boolean partitioned;
+    private final int partitionsAhead;
+    private final int coldAfterMonths;
+    private final ColdSegments cold;
+    private final int clientIdRetentionDays;
+    private final long maintenanceMillis;
+    private final ScheduledExecutorService maintainer;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong partitionsCreated = new AtomicLong();
+    private final AtomicLong partitionsExported = new AtomicLong();
+    private final AtomicLong rowsExported = new AtomicLong();
+    private volatile int partitions;
+    private volatile String lastError;
+
+    /**
+     * @param partitioned migrate messages to monthly partitions (an already partitioned table is maintained either way)
+     * @param cold where exported partitions go; only written to if coldAfterMonths > 0
+     */
+    public MessagePartitions(boolean partitioned, int partitionsAhead, int coldAfterMonths, ColdSegments cold,
+                             int clientIdRetentionDays, long maintenanceMillis) {
+        this.partitioned = partitioned;
+        this.partitionsAhead = Math.max(1, partitionsAhead);
+        this.coldAfterMonths = coldAfterMonths;
+        this.cold = cold;
+        this.clientIdRetentionDays = clientIdRetentionDays;
+        this.maintenanceMillis = maintenanceMillis;
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-partitions");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Runs maintenance once, so the current month's partition exists, then every maintenanceMillis. */
+    public void start() {
+        maintainQuietly();
+        maintainer.scheduleWithFixedDelay(this::maintainQuietly, maintenanceMillis, maintenanceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** One maintenance run; does nothing if another instance is running one. */
+    public void maintain() throws Exception {
+        try (Connection conn = Database.get()) {
+            if (!tryLock(conn)) return;
+            try {
+                runs.incrementAndGet();
+                LocalDate month = currentMonth(conn);
+                if (partitioned && !isPartitioned(conn)) {
+                    migrate(conn, month.plusMonths(1));
+                }
+                if (isPartitioned(conn)) {
+                    TreeMap<LocalDate, String> byUpper = listPartitions(conn);
+                    createAhead(conn, byUpper, month);
+                    if (coldAfterMonths > 0) {
+                        exportCold(conn, byUpper, month.minusMonths(coldAfterMonths));
+                    }
+                    partitions = byUpper.size();
+                }
+                purgeClientIds(conn);
+                lastError = null;
+            } finally {
+                unlock(conn);
+            }
+        }
+    }
+
+    private void maintainQuietly() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            // retried next round; a failed run must not cancel the scheduled task
+            lastError = e.toString();
+        }
+    }
+
+    private boolean tryLock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            ps.setLong(1, MAINTENANCE_LOCK);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void unlock(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) conn.rollback();
+        conn.setAutoCommit(true);
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            ps.setLong(1, MAINTENANCE_LOCK);
+            ps.execute();
+        }
+    }
+
+    /** First day of the current month, by the database clock (timestamps are written with it). */
+    private static LocalDate currentMonth(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT CAST(date_trunc('month', LOCALTIMESTAMP) AS date)")) {
+            rs.next();
+            return rs.getDate(1).toLocalDate();
+        }
+    }
+
+    private static boolean isPartitioned(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT relkind FROM pg_class WHERE oid = to_regclass('messages')")) {
+            return rs.next() && "p".equals(rs.getString(1));
+        }
+    }
+
+    /**
+     * Plain table -> partitioned one. The old table is attached as is (no rows
+     * are copied); the primary key becomes (message_id, timestamp) because a
+     * partitioned key must include the partition column.
+     *
+     * Everything that reads the whole table happens first, while chat inserts
+     * go on: the partition bound is added as a NOT VALID CHECK and validated,
+     * and the indexes the parent needs are built CONCURRENTLY on the table.
+     * The transaction under ACCESS EXCLUSIVE then only changes the catalog:
+     * SET NOT NULL and ATTACH PARTITION trust the validated CHECK, the parent's
+     * indexes and foreign keys take over the table's own.
+     */
+    private void migrate(Connection conn, LocalDate legacyUpper) throws SQLException {
+        prepareLegacy(conn, legacyUpper);
+
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement()) {
+            st.execute("LOCK TABLE messages IN ACCESS EXCLUSIVE MODE");
+            st.execute("ALTER TABLE messages ALTER COLUMN timestamp SET NOT NULL");
+
+            st.execute("ALTER TABLE messages RENAME TO " + LEGACY);
+            st.execute("ALTER INDEX IF EXISTS messages_pkey RENAME TO messages_legacy_pkey");
+            st.execute("ALTER INDEX IF EXISTS " + MessageIndexes.GROUP_TIME.name() + " RENAME TO "
+                    + LEGACY + MessageIndexes.GROUP_TIME.suffix());
+            st.execute("ALTER INDEX IF EXISTS " + MessageIndexes.SEARCH.name() + " RENAME TO "
+                    + LEGACY + MessageIndexes.SEARCH.suffix());
+            // dropped by SearchBackfill once the group-scoped one is in place
+            st.execute("ALTER INDEX IF EXISTS " + MessageIndexes.OLD_SEARCH + " RENAME TO messages_legacy_search");
+            st.execute("DROP INDEX IF EXISTS idx_messages_client_msg");
+
+            st.execute("""
+                CREATE TABLE messages (
+                    LIKE messages_legacy INCLUDING DEFAULTS,
+                    PRIMARY KEY (message_id, timestamp)
+                ) PARTITION BY RANGE (timestamp)
+                """);
+            // the sequence must survive the legacy partition being exported and dropped
+            st.execute("ALTER SEQUENCE " + serialSequence(conn) + " OWNED BY messages.message_id");
+            // the primary key takes over messages_legacy_key, the bound is proven by the CHECK
+            st.execute("ALTER TABLE messages ATTACH PARTITION messages_legacy FOR VALUES FROM (MINVALUE) TO ('"
+                    + legacyUpper + "')");
+            st.execute("ALTER TABLE messages_legacy DROP CONSTRAINT " + LEGACY_BOUND);
+
+            // ON ONLY plus attach: the parent's index takes over the legacy one without a build
+            for (MessageIndexes.Index index : new MessageIndexes.Index[]{MessageIndexes.GROUP_TIME, MessageIndexes.SEARCH}) {
+                String legacyIndex = LEGACY + index.suffix();
+                if (!exists(conn, legacyIndex)) continue;
+                st.execute("CREATE INDEX IF NOT EXISTS " + index.name() + " ON ONLY messages" + index.definition());
+                st.execute("ALTER INDEX " + index.name() + " ATTACH PARTITION " + legacyIndex);
+            }
+            // same columns and actions as messages_legacy's own, which are attached instead of validated again
+            st.execute("ALTER TABLE messages ADD FOREIGN KEY (group_id) REFERENCES groups(group_id) ON DELETE CASCADE");
+            st.execute("ALTER TABLE messages ADD FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE SET NULL");
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * The scans of the migration, without the exclusive lock. Until the
+     * attach, a row at or after legacyUpper is rejected by the CHECK: only a
+     * migration running across the end of the month would see that.
+     */
+    private void prepareLegacy(Connection conn, LocalDate legacyUpper) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE messages SET timestamp = CURRENT_TIMESTAMP WHERE timestamp IS NULL");
+            // an attempt from an earlier month left an older bound
+            st.execute("ALTER TABLE messages DROP CONSTRAINT IF EXISTS " + LEGACY_BOUND);
+            st.execute("ALTER TABLE messages ADD CONSTRAINT " + LEGACY_BOUND
+                    + " CHECK (timestamp IS NOT NULL AND timestamp < '" + legacyUpper + "') NOT VALID");
+            // scans with SHARE UPDATE EXCLUSIVE: inserts go on
+            st.execute("ALTER TABLE messages VALIDATE CONSTRAINT " + LEGACY_BOUND);
+        }
+        // the partitioned primary key needs a unique (message_id, timestamp) constraint to take over
+        MessageIndexes.uniqueIndexConcurrently(conn, LEGACY_KEY, "messages", " (message_id, timestamp)");
+        if (!hasConstraint(conn, LEGACY_KEY)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("ALTER TABLE messages ADD CONSTRAINT " + LEGACY_KEY + " UNIQUE USING INDEX " + LEGACY_KEY);
+            }
+        }
+        MessageIndexes.ensure(conn, MessageIndexes.GROUP_TIME);
+    }
+
+    private static boolean exists(Connection conn, String relation) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            ps.setString(1, relation);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static boolean hasConstraint(Connection conn, String name) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT 1 FROM pg_constraint WHERE conrelid = 'messages'::regclass AND conname = ?")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static String serialSequence(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT pg_get_serial_sequence('messages_legacy', 'message_id')")) {
+            if (!rs.next() || rs.getString(1) == null) throw new SQLException("messages.message_id has no sequence");
+            return rs.getString(1);
+        }
+    }
+
+    /** upper bound -> partition name */
+    private static TreeMap<LocalDate, String> listPartitions(Connection conn) throws SQLException {
+        String sql = """
+            SELECT c.relname, pg_get_expr(c.relpartbound, c.oid)
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'messages'::regclass
+            """;
+        TreeMap<LocalDate, String> out = new TreeMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                Matcher m = UPPER_BOUND.matcher(rs.getString(2));
+                if (m.find()) out.put(LocalDate.parse(m.group(1)), rs.getString(1));
+            }
+        }
+        return out;
+    }
+
+    private void createAhead(Connection conn, TreeMap<LocalDate, String> byUpper, LocalDate month) throws SQLException {
+        LocalDate from = byUpper.isEmpty() ? month : byUpper.lastKey();
+        LocalDate until = month.plusMonths(partitionsAhead + 1L);
+        try (Statement st = conn.createStatement()) {
+            for (; from.isBefore(until); from = from.plusMonths(1)) {
+                String name = PARTITION_NAME.format(from);
+                st.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF messages FOR VALUES FROM ('"
+                        + from + "') TO ('" + from.plusMonths(1) + "')");
+                byUpper.put(from.plusMonths(1), name);
+                partitionsCreated.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Partitions ending on or before coldBefore: written to a segment, then
+     * dropped in the transaction that read them, so a failed export leaves the
+     * partition in place for the next run.
+     */
+    private void exportCold(Connection conn, TreeMap<LocalDate, String> byUpper, LocalDate coldBefore) throws Exception {
+        for (Map.Entry<LocalDate, String> e : new TreeMap<>(byUpper.headMap(coldBefore, true)).entrySet()) {
+            String partition = e.getValue();
+            if (LEGACY.equals(partition)) {
+                exportLegacy(conn, e.getKey());
+            }
+            conn.setAutoCommit(false);
+            try (Statement st = conn.createStatement()) {
+                rowsExported.addAndGet(cold.export(conn, partition, null, null, "messages-" + e.getKey()));
+                st.execute("ALTER TABLE messages DETACH PARTITION " + partition);
+                st.execute("DROP TABLE " + partition);
+                conn.commit();
+                byUpper.remove(e.getKey());
+                partitionsExported.incrementAndGet();
+            } catch (Exception ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * The legacy partition reaches back to MINVALUE, so exporting it whole
+     * would read and drop all history from before partitioning in one
+     * transaction. Its months before the last one are exported one per
+     * transaction instead, into segments named like the monthly partitions,
+     * and deleted from it; the last month is left for the regular export,
+     * which drops the partition. An interrupted run resumes at the oldest
+     * month still in the table.
+     */
+    private void exportLegacy(Connection conn, LocalDate upper) throws Exception {
+        LocalDate lastMonth = upper.minusMonths(1);
+        for (LocalDate m = oldestMonth(conn); m != null && m.isBefore(lastMonth); m = m.plusMonths(1)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE FROM " + LEGACY + " WHERE timestamp >= ? AND timestamp < ?")) {
+                long rows = cold.export(conn, LEGACY, m, m.plusMonths(1), "messages-" + m.plusMonths(1));
+                ps.setObject(1, m.atStartOfDay());
+                ps.setObject(2, m.plusMonths(1).atStartOfDay());
+                ps.executeUpdate();
+                conn.commit();
+                rowsExported.addAndGet(rows);
+                partitionsExported.incrementAndGet();
+            } catch (Exception ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** First day of the month of the oldest legacy row; null if it is empty. */
+    private static LocalDate oldestMonth(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT CAST(date_trunc('month', MIN(timestamp)) AS date) FROM " + LEGACY)) {
+            return rs.next() && rs.getDate(1) != null ? rs.getDate(1).toLocalDate() : null;
+        }
+    }
+
+    private void purgeClientIds(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "DELETE FROM message_client_ids WHERE created_at < CURRENT_TIMESTAMP - make_interval(days => ?)")) {
+            ps.setInt(1, clientIdRetentionDays);
+            ps.executeUpdate();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("partitions", partitions);
+        out.put("runs", runs.get());
+        out.put("partitionsCreated", partitionsCreated.get());
+        out.put("partitionsExported", partitionsExported.get());
+        out.put("rowsExported", rowsExported.get());
+        out.put("lastError", lastError);
+        out.put("cold", cold.stats());
+        return out;
+    }
+
+    public void shutdown() {
+        maintainer.shutdownNow();
+    }
+}
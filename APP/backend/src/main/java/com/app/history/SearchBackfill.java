@@ -0,0 +1,152 @@
+package com.app.history;
+
+import com.app.config.Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the indexes of messages that Database.init leaves out (see
+ * {@link MessageIndexes}), and fills messages.search_tsv for rows stored
+ * before the insert wrote it, without blocking chat inserts.
+ *
+ * idx_messages_group_time comes first, so history pages get it early. The
+ * column is a plain one (Database.init adds it, which rewrites nothing);
+ * rows are updated in message_id ranges of batchSize, one short transaction
+ * each, and idx_messages_group_search is built once they are filled: a GIN
+ * over (group_id, search_tsv), which needs the btree_gin extension, so a
+ * search only reads the entries of its group. The older idx_messages_search
+ * (search_tsv alone) is dropped once it is in place.
+ *
+ * Runs on one instance at a time (advisory lock), starting when the bean is
+ * initialized and retried every maintenanceMillis until all steps are done.
+ * Until then history pages and search are slower, and search misses the
+ * rows not filled yet.
+ */
+public class SearchBackfill {
+
+    private static final long BACKFILL_LOCK = 0x6d7367747376L; // "msgtsv"
+
+    private final int batchSize;
+    private final long maintenanceMillis;
+    private final ScheduledExecutorService worker;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong rowsFilled = new AtomicLong();
+    private final AtomicLong indexesBuilt = new AtomicLong();
+    private volatile boolean done;
+    private volatile String lastError;
+
+    public SearchBackfill(int batchSize, long maintenanceMillis) {
+        this.batchSize = Math.max(1, batchSize);
+        this.maintenanceMillis = maintenanceMillis;
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "search-backfill");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Schedules the first run right away; startup does not wait for it. */
+    public void start() {
+        worker.scheduleWithFixedDelay(this::runQuietly, 0, maintenanceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** One run; does nothing once done, or if another instance is running one. */
+    public void run() throws SQLException {
+        if (done) return;
+        try (Connection conn = Database.get()) {
+            if (!tryLock(conn)) return;
+            try {
+                runs.incrementAndGet();
+                indexesBuilt.addAndGet(MessageIndexes.ensure(conn, MessageIndexes.GROUP_TIME));
+                fill(conn);
+                try (Statement st = conn.createStatement()) {
+                    st.execute("CREATE EXTENSION IF NOT EXISTS btree_gin");
+                }
+                indexesBuilt.addAndGet(MessageIndexes.ensure(conn, MessageIndexes.SEARCH));
+                MessageIndexes.drop(conn, MessageIndexes.OLD_SEARCH);
+                // left unattached when the table was partitioned before the parent had a search index
+                MessageIndexes.drop(conn, "messages_legacy_search");
+                done = true;
+                lastError = null;
+            } finally {
+                unlock(conn);
+            }
+        }
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (Exception e) {
+            // retried next round; a failed run must not cancel the scheduled task
+            lastError = e.toString();
+        }
+    }
+
+    private void fill(Connection conn) throws SQLException {
+        long from;
+        long to;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("""
+                 SELECT MIN(message_id), MAX(message_id) FROM messages
+                 WHERE EXISTS (SELECT 1 FROM messages WHERE search_tsv IS NULL)
+                 """)) {
+            if (!rs.next() || rs.getObject(1) == null) return;
+            from = rs.getLong(1);
+            to = rs.getLong(2);
+        }
+        // ranges walk the primary key; rows inserted after MAX already carry search_tsv
+        String sql = """
+            UPDATE messages SET search_tsv = to_tsvector('simple', coalesce(content, ''))
+            WHERE message_id >= ? AND message_id < ? AND search_tsv IS NULL
+            """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (long lo = from; lo <= to; lo += batchSize) {
+                ps.setLong(1, lo);
+                ps.setLong(2, lo + batchSize);
+                rowsFilled.addAndGet(ps.executeUpdate());
+            }
+        }
+    }
+
+    private boolean tryLock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            ps.setLong(1, BACKFILL_LOCK);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void unlock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            ps.setLong(1, BACKFILL_LOCK);
+            ps.execute();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("done", done);
+        out.put("runs", runs.get());
+        out.put("rowsFilled", rowsFilled.get());
+        out.put("indexesBuilt", indexesBuilt.get());
+        out.put("lastError", lastError);
+        return out;
+    }
+
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+}
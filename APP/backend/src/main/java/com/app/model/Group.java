@@ -12,6 +12,7 @@ public class Group {
     private String createdAt;
     private int memberCount;
     private int openTasksCount;
+    private int unreadCount;
 
     public Group(int groupId,
                  String name,
@@ -56,4 +57,13 @@ public class Group {
     public int getOpenTasksCount() {
         return openTasksCount;
     }
+
+    /** Only filled for the current user's group list. */
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
 }
@@ -16,6 +16,10 @@ public class Membership {
     private String userName;
     private String userEmail;
 
+    // последняя активность в чате: в этой группе и вообще (ISO-8601, null = не было)
+    private String lastSeenAt;
+    private String userLastSeenAt;
+
     public Membership(int membershipId,
                       int userId,
                       int groupId,
@@ -68,4 +72,20 @@ public class Membership {
     public String getUserEmail() {
         return userEmail;
     }
+
+    public String getLastSeenAt() {
+        return lastSeenAt;
+    }
+
+    public void setLastSeenAt(String lastSeenAt) {
+        this.lastSeenAt = lastSeenAt;
+    }
+
+    public String getUserLastSeenAt() {
+        return userLastSeenAt;
+    }
+
+    public void setUserLastSeenAt(String userLastSeenAt) {
+        this.userLastSeenAt = userLastSeenAt;
+    }
 }
@@ -10,9 +10,11 @@ public class Message {
     private final String resourceTitle;
     private final Integer taskId;
     private final String timestamp;
+    private final String clientMsgId;
 
     public Message(int messageId, int groupId, int userId, String userName, String content,
-                   Integer resourceId, String resourceTitle, Integer taskId, String timestamp) {
+                   Integer resourceId, String resourceTitle, Integer taskId, String timestamp,
+                   String clientMsgId) {
         this.messageId = messageId;
         this.groupId = groupId;
         this.userId = userId;
@@ -22,6 +24,7 @@ public class Message {
         this.resourceTitle = resourceTitle;
         this.taskId = taskId;
         this.timestamp = timestamp;
+        this.clientMsgId = clientMsgId;
     }
 
     public int getMessageId() {
@@ -59,4 +62,8 @@ public class Message {
     public String getTimestamp() {
         return timestamp;
     }
+
+    public String getClientMsgId() {
+        return clientMsgId;
+    }
 }
@@ -0,0 +1,61 @@
+package com.app.model;
+
+/**
+ * Сообщение, найденное полнотекстовым поиском.
+ * headline — фрагмент текста с совпадениями в <mark>...</mark>.
+ */
+public class MessageHit {
+
+    private final int messageId;
+    private final int groupId;
+    private final int userId;
+    private final String userName;
+    private final String content;
+    private final String timestamp;
+    private final String headline;
+    private final float rank;
+
+    public MessageHit(int messageId, int groupId, int userId, String userName, String content,
+                      String timestamp, String headline, float rank) {
+        this.messageId = messageId;
+        this.groupId = groupId;
+        this.userId = userId;
+        this.userName = userName;
+        this.content = content;
+        this.timestamp = timestamp;
+        this.headline = headline;
+        this.rank = rank;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getHeadline() {
+        return headline;
+    }
+
+    public float getRank() {
+        return rank;
+    }
+}
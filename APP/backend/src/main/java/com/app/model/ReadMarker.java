@@ -0,0 +1,29 @@
+package com.app.model;
+
+/**
+ * Последнее прочитанное пользователем сообщение в группе.
+ */
+public class ReadMarker {
+
+    private final int userId;
+    private final int groupId;
+    private final int messageId;
+
+    public ReadMarker(int userId, int groupId, int messageId) {
+        this.userId = userId;
+        this.groupId = groupId;
+        this.messageId = messageId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+}
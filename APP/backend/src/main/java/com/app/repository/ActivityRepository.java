@@ -1,6 +1,7 @@
 package com.app.repository;
 
 import com.app.config.Database;
+import com.app.events.DomainEvent;
 import com.app.model.Activity;
 
 import java.sql.*;
@@ -33,6 +34,40 @@ public class ActivityRepository {
         }
     }
 
+    /**
+     * Записать события из outbox одним батчем; повторно доставленные события пропускаются.
+     * details = payload события с groupId в начале (для findRecentForGroup).
+     */
+    public void insertEvents(List<DomainEvent> events) throws SQLException {
+        String sql = """
+            INSERT INTO ACTIVITY_LOG (user_id, action, details, event_id, timestamp)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (event_id) DO NOTHING
+            """;
+
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            for (DomainEvent e : events) {
+                String payload = e.getPayload();
+                String details = "{\"groupId\":" + e.getGroupId()
+                        + (payload.length() > 2 ? "," + payload.substring(1) : "}");
+
+                if (e.getActorId() == null) {
+                    ps.setNull(1, Types.INTEGER);
+                } else {
+                    ps.setInt(1, e.getActorId());
+                }
+                ps.setString(2, e.getType());
+                ps.setString(3, details);
+                ps.setLong(4, e.getEventId());
+                ps.setTimestamp(5, new Timestamp(e.getCreatedAt()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
     /**
      * Последние N записей по конкретному пользователю.
      */
@@ -11,7 +11,8 @@ public class GroupRepository {
 
     /**
      * Список групп, в которых состоит пользователь.
-     * Возвращаем также memberCount и openTasksCount через подзапросы.
+     * Возвращаем также memberCount и openTasksCount через подзапросы,
+     * и unreadCount из строки членства (без подсчёта сообщений).
      */
     public List<Group> findByUserId(int userId) throws SQLException {
         String sql = """
@@ -22,11 +23,12 @@ public class GroupRepository {
                 g.created_by,
                 g.created_at,
                 (SELECT COUNT(*) FROM MEMBERSHIPS m WHERE m.group_id = g.group_id) AS member_count,
-                (SELECT COUNT(*) FROM TASKS t WHERE t.group_id = g.group_id AND t.status != 'DONE') AS open_tasks
+                (SELECT COUNT(*) FROM TASKS t WHERE t.group_id = g.group_id AND t.status != 'DONE') AS open_tasks,
+                m2.unread_count
             FROM GROUPS g
             JOIN MEMBERSHIPS m2 ON m2.group_id = g.group_id
             WHERE m2.user_id = ?
-            GROUP BY g.group_id, g.name, g.description, g.created_by, g.created_at
+            GROUP BY g.group_id, g.name, g.description, g.created_by, g.created_at, m2.unread_count
             ORDER BY g.created_at DESC;
         """;
 
@@ -48,6 +50,7 @@ public class GroupRepository {
                         rs.getInt("member_count"),
                         rs.getInt("open_tasks")
                 );
+                g.setUnreadCount(rs.getInt("unread_count"));
                 result.add(g);
             }
         }
@@ -59,6 +62,12 @@ public class GroupRepository {
      * Найти одну группу по ID (с теми же агрегатами, что и выше).
      */
     public Group findById(int groupId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            return findById(conn, groupId);
+        }
+    }
+
+    public Group findById(Connection conn, int groupId) throws SQLException {
         String sql = """
             SELECT
                 g.group_id,
@@ -72,8 +81,7 @@ public class GroupRepository {
             WHERE g.group_id = ?;
         """;
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, groupId);
             ResultSet rs = ps.executeQuery();
@@ -98,6 +106,11 @@ public class GroupRepository {
      * Возвращаем созданную группу с заполненными полями.
      */
     public Group createGroup(int ownerId, String name, String description) throws SQLException {
+        return Database.inTransaction(conn -> createGroup(conn, ownerId, name, description));
+    }
+
+    /** То же внутри транзакции вызывающего. */
+    public Group createGroup(Connection conn, int ownerId, String name, String description) throws SQLException {
         String insertGroupSql = """
             INSERT INTO GROUPS(name, description, created_by)
             VALUES(?,?,?);
@@ -108,60 +121,51 @@ public class GroupRepository {
             VALUES(?,?, 'OWNER');
         """;
 
-        Connection conn = Database.get();
-        try {
-            conn.setAutoCommit(false);
-
-            int groupId;
-
-            // 1. Создаём группу
-            try (PreparedStatement ps = conn.prepareStatement(
-                    insertGroupSql,
-                    Statement.RETURN_GENERATED_KEYS
-            )) {
-                ps.setString(1, name.trim());
-                ps.setString(2, description == null ? "" : description.trim());
-                ps.setInt(3, ownerId);
-
-                ps.executeUpdate();
-
-                ResultSet keys = ps.getGeneratedKeys();
-                if (keys.next()) {
-                    groupId = keys.getInt(1);
-                } else {
-                    throw new SQLException("Failed to get group_id");
-                }
-            }
+        int groupId;
 
-            // 2. Добавляем создателя в MEMBERSHIPS как OWNER
-            try (PreparedStatement ps = conn.prepareStatement(insertMembershipSql)) {
-                ps.setInt(1, ownerId);
-                ps.setInt(2, groupId);
-                ps.executeUpdate();
-            }
+        // 1. Создаём группу
+        try (PreparedStatement ps = conn.prepareStatement(
+                insertGroupSql,
+                Statement.RETURN_GENERATED_KEYS
+        )) {
+            ps.setString(1, name.trim());
+            ps.setString(2, description == null ? "" : description.trim());
+            ps.setInt(3, ownerId);
 
-            conn.commit();
+            ps.executeUpdate();
 
-            // 3. Возвращаем группу (уже из БД, с created_at и агрегатами)
-            return findById(groupId);
+            ResultSet keys = ps.getGeneratedKeys();
+            if (keys.next()) {
+                groupId = keys.getInt(1);
+            } else {
+                throw new SQLException("Failed to get group_id");
+            }
+        }
 
-        } catch (SQLException e) {
-            conn.rollback();
-            throw e;
-        } finally {
-            conn.setAutoCommit(true);
-            conn.close();
+        // 2. Добавляем создателя в MEMBERSHIPS как OWNER
+        try (PreparedStatement ps = conn.prepareStatement(insertMembershipSql)) {
+            ps.setInt(1, ownerId);
+            ps.setInt(2, groupId);
+            ps.executeUpdate();
         }
+
+        // 3. Возвращаем группу (уже из БД, с created_at и агрегатами)
+        return findById(conn, groupId);
     }
 
     /**
      * Обновить название и описание группы.
      */
     public void updateGroup(int groupId, String name, String description) throws SQLException {
+        try (Connection conn = Database.get()) {
+            updateGroup(conn, groupId, name, description);
+        }
+    }
+
+    public void updateGroup(Connection conn, int groupId, String name, String description) throws SQLException {
         String sql = "UPDATE GROUPS SET name = ?, description = ? WHERE group_id = ?";
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, name.trim());
             ps.setString(2, description == null ? "" : description.trim());
@@ -175,10 +179,15 @@ public class GroupRepository {
      * или удалить вручную в сервисе).
      */
     public void deleteGroup(int groupId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            deleteGroup(conn, groupId);
+        }
+    }
+
+    public void deleteGroup(Connection conn, int groupId) throws SQLException {
         String sql = "DELETE FROM GROUPS WHERE group_id = ?";
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, groupId);
             ps.executeUpdate();
@@ -21,7 +21,9 @@ public class MembershipRepository {
                 m.role,
                 m.joined_at,
                 u.name AS user_name,
-                u.email AS user_email
+                u.email AS user_email,
+                m.last_seen_at,
+                u.last_seen_at AS user_last_seen_at
             FROM MEMBERSHIPS m
             JOIN USERS u ON u.user_id = m.user_id
             WHERE m.group_id = ?
@@ -46,6 +48,8 @@ public class MembershipRepository {
                         rs.getString("user_name"),
                         rs.getString("user_email")
                 );
+                m.setLastSeenAt(isoOrNull(rs.getTimestamp("last_seen_at")));
+                m.setUserLastSeenAt(isoOrNull(rs.getTimestamp("user_last_seen_at")));
                 result.add(m);
             }
         }
@@ -172,6 +176,22 @@ public class MembershipRepository {
         }
     }
 
+    /**
+     * Сохранённый счётчик непрочитанных (без ещё не сброшенных дельт, см. UnreadCounters); 0, если не участник.
+     */
+    public int findUnreadCount(int userId, int groupId) throws SQLException {
+        String sql = "SELECT unread_count FROM MEMBERSHIPS WHERE user_id = ? AND group_id = ?";
+
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setInt(1, userId);
+            ps.setInt(2, groupId);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
     /**
      * Удалить участника из группы.
      */
@@ -185,4 +205,8 @@ public class MembershipRepository {
             ps.executeUpdate();
         }
     }
+
+    private static String isoOrNull(Timestamp ts) {
+        return ts == null ? null : ts.toInstant().toString();
+    }
 }
@@ -1,18 +1,49 @@
 package com.app.repository;
 
 import com.app.config.Database;
+import com.app.history.ColdSegments;
 import com.app.model.Message;
+import com.app.model.MessageHit;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class MessageRepository {
 
+    private final ColdSegments cold;
+
+    public MessageRepository(ColdSegments cold) {
+        this.cold = cold;
+    }
+
+    /** The newest messages of the group, oldest first. */
     public List<Message> findRecentByGroup(int groupId, int limit) throws SQLException {
+        return findPage(groupId, limit, 0, 0);
+    }
+
+    /**
+     * One page of the group's history on the (group_id, timestamp, message_id)
+     * index, oldest first: the newest limit messages before beforeId, or the
+     * oldest limit after afterId, or the newest limit if neither is set (0).
+     * The cursor row is found by its id, so a page costs the same at any depth.
+     * Paging back past what is in the database continues in the exported
+     * {@link ColdSegments}.
+     */
+    public List<Message> findPage(int groupId, int limit, int beforeId, int afterId) throws SQLException {
+        boolean forward = afterId > 0 && beforeId <= 0;
+        String op = forward ? ">" : "<";
+        // the plain timestamp bound is implied by the row comparison; it lets Postgres skip whole monthly partitions
+        String cursor = forward || beforeId > 0 ? """
+            AND m.timestamp %s= (SELECT timestamp FROM messages WHERE message_id = ?)
+            AND (m.timestamp, m.message_id) %s (SELECT timestamp, message_id FROM messages WHERE message_id = ?)
+            """.formatted(op, op) : "";
+        String order = forward ? "ASC" : "DESC";
         String sql = """
             SELECT m.message_id,
                    m.group_id,
@@ -22,18 +53,25 @@ public class MessageRepository {
                    m.resource_title,
                    m.task_id,
                    m.timestamp,
+                   m.client_msg_id,
                    COALESCE(u.name, 'Unknown') AS user_name
             FROM messages m
             LEFT JOIN users u ON u.user_id = m.user_id
             WHERE m.group_id = ?
-            ORDER BY m.timestamp ASC
+            %s
+            ORDER BY m.timestamp %s, m.message_id %s
             LIMIT ?
-            """;
+            """.formatted(cursor, order, order);
 
         try (Connection conn = Database.get();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, groupId);
-            ps.setInt(2, limit);
+            int i = 1;
+            ps.setInt(i++, groupId);
+            if (!cursor.isEmpty()) {
+                ps.setInt(i++, forward ? afterId : beforeId);
+                ps.setInt(i++, forward ? afterId : beforeId);
+            }
+            ps.setInt(i, limit);
 
             ResultSet rs = ps.executeQuery();
             List<Message> list = new ArrayList<>();
@@ -47,7 +85,92 @@ public class MessageRepository {
                         (Integer) rs.getObject("resource_id"),
                         rs.getString("resource_title"),
                         (Integer) rs.getObject("task_id"),
-                        rs.getString("timestamp")
+                        rs.getString("timestamp"),
+                        rs.getString("client_msg_id")
+                ));
+            }
+            if (!forward) {
+                Collections.reverse(list);
+                if (list.size() < limit) {
+                    return withCold(groupId, list, limit, beforeId);
+                }
+            }
+            return list;
+        }
+    }
+
+    private List<Message> withCold(int groupId, List<Message> page, int limit, int beforeId)
+            throws SQLException {
+        int below = page.isEmpty() ? beforeId : page.get(0).getMessageId();
+        try {
+            List<Message> older = cold.before(groupId, below, limit - page.size());
+            older.addAll(page);
+            return older;
+        } catch (IOException e) {
+            throw new SQLException("Failed to read cold messages of group " + groupId, e);
+        }
+    }
+
+    /**
+     * Full-text search in one group, best match first; afterRank/afterId (the
+     * last hit of the previous page) continue below it, or null for the first page.
+     * Matches come from the (group_id, search_tsv) GIN index, so other groups'
+     * messages are never read; only the newest maxCandidates of them are
+     * ranked, so a common word costs the same in a group with millions of messages.
+     */
+    public List<MessageHit> search(int groupId, String query, int limit, int maxCandidates,
+                                   Float afterRank, int afterId) throws SQLException {
+        boolean next = afterRank != null;
+        String sql = """
+            WITH q AS (SELECT websearch_to_tsquery('simple', ?) AS query),
+            hits AS (
+                SELECT m.message_id, m.group_id, m.user_id, m.content, m.timestamp,
+                       ts_rank(m.search_tsv, q.query) AS rank
+                FROM messages m, q
+                WHERE m.group_id = ? AND m.search_tsv @@ q.query
+                ORDER BY m.timestamp DESC, m.message_id DESC
+                LIMIT ?
+            ),
+            page AS (
+                SELECT * FROM hits
+                %s
+                ORDER BY rank DESC, message_id DESC
+                LIMIT ?
+            )
+            SELECT p.*,
+                   COALESCE(u.name, 'Unknown') AS user_name,
+                   ts_headline('simple', p.content, q.query,
+                               'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=20, MinWords=5') AS headline
+            FROM page p
+            CROSS JOIN q
+            LEFT JOIN users u ON u.user_id = p.user_id
+            ORDER BY p.rank DESC, p.message_id DESC
+            """.formatted(next ? "WHERE (rank, message_id) < (?, ?)" : "");
+
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setString(i++, query);
+            ps.setInt(i++, groupId);
+            ps.setInt(i++, maxCandidates);
+            if (next) {
+                ps.setFloat(i++, afterRank);
+                ps.setInt(i++, afterId);
+            }
+            ps.setInt(i, limit);
+
+            ResultSet rs = ps.executeQuery();
+            List<MessageHit> list = new ArrayList<>();
+            while (rs.next()) {
+                list.add(new MessageHit(
+                        rs.getInt("message_id"),
+                        rs.getInt("group_id"),
+                        rs.getInt("user_id"),
+                        rs.getString("user_name"),
+                        rs.getString("content"),
+                        rs.getString("timestamp"),
+                        rs.getString("headline"),
+                        rs.getFloat("rank")
                 ));
             }
             return list;
@@ -0,0 +1,99 @@
+package com.app.repository;
+
+import com.app.config.Database;
+import com.app.model.ReadMarker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReadMarkerRepository {
+
+    /**
+     * Пакетная запись маркеров одним запросом на строку в одной транзакции.
+     * Маркер только растёт: более старое значение не перезаписывает новое.
+     */
+    public void upsertAll(List<ReadMarker> markers) throws SQLException {
+        if (markers.isEmpty()) return;
+        String sql = """
+            INSERT INTO read_markers(user_id, group_id, message_id, updated_at)
+            VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (user_id, group_id) DO UPDATE
+            SET message_id = GREATEST(read_markers.message_id, EXCLUDED.message_id),
+                updated_at = EXCLUDED.updated_at
+            """;
+
+        Database.inTransaction(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (ReadMarker m : markers) {
+                    ps.setInt(1, m.getUserId());
+                    ps.setInt(2, m.getGroupId());
+                    ps.setInt(3, m.getMessageId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    /** 0, если пользователь в группе ещё ничего не читал. */
+    public int find(int userId, int groupId) throws SQLException {
+        String sql = "SELECT message_id FROM read_markers WHERE user_id = ? AND group_id = ?";
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            ps.setInt(2, groupId);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Наибольший message_id группы; 0, если сообщений нет. Берутся последние
+     * строки по индексу (group_id, timestamp, message_id): параллельные вставки
+     * могут получить id не в порядке timestamp, но только среди самых новых.
+     */
+    public int newestMessageId(int groupId) throws SQLException {
+        String sql = """
+            SELECT COALESCE(MAX(message_id), 0) FROM (
+                SELECT message_id FROM messages WHERE group_id = ?
+                ORDER BY timestamp DESC, message_id DESC LIMIT 32
+            ) newest
+            """;
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, groupId);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /** Сообщение существует и принадлежит группе. */
+    public boolean isInGroup(int messageId, int groupId) throws SQLException {
+        String sql = "SELECT 1 FROM messages WHERE message_id = ? AND group_id = ?";
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, messageId);
+            ps.setInt(2, groupId);
+            return ps.executeQuery().next();
+        }
+    }
+
+    public List<ReadMarker> findByGroup(int groupId) throws SQLException {
+        String sql = "SELECT user_id, group_id, message_id FROM read_markers WHERE group_id = ?";
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, groupId);
+            ResultSet rs = ps.executeQuery();
+            List<ReadMarker> list = new ArrayList<>();
+            while (rs.next()) {
+                list.add(new ReadMarker(rs.getInt("user_id"), rs.getInt("group_id"), rs.getInt("message_id")));
+            }
+            return list;
+        }
+    }
+}
@@ -48,6 +48,12 @@ public class ResourceRepository {
     }
 
     public Resource findById(int resourceId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            return findById(conn, resourceId);
+        }
+    }
+
+    public Resource findById(Connection conn, int resourceId) throws SQLException {
         String sql = """
             SELECT
                 r.resource_id,
@@ -67,8 +73,7 @@ public class ResourceRepository {
             WHERE r.resource_id = ?
             """;
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, resourceId);
             ResultSet rs = ps.executeQuery();
@@ -88,6 +93,20 @@ public class ResourceRepository {
                                    String originalName,
                                    Long fileSize,
                                    String description) throws SQLException {
+        try (Connection conn = Database.get()) {
+            return createResource(conn, groupId, uploadedBy, title, type, pathOrUrl, originalName, fileSize, description);
+        }
+    }
+
+    public Resource createResource(Connection conn,
+                                   int groupId,
+                                   int uploadedBy,
+                                   String title,
+                                   String type,
+                                   String pathOrUrl,
+                                   String originalName,
+                                   Long fileSize,
+                                   String description) throws SQLException {
 
         String sql = """
             INSERT INTO RESOURCES(
@@ -102,8 +121,7 @@ public class ResourceRepository {
             ) VALUES (?,?,?,?,?,?,?,?)
             """;
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             ps.setInt(1, groupId);
             ps.setInt(2, uploadedBy);
@@ -131,7 +149,7 @@ public class ResourceRepository {
             ResultSet keys = ps.getGeneratedKeys();
             if (keys.next()) {
                 int resourceId = keys.getInt(1);
-                return findById(resourceId);
+                return findById(conn, resourceId);
             }
 
             throw new SQLException("Failed to insert resource");
@@ -139,10 +157,15 @@ public class ResourceRepository {
     }
 
     public void deleteResource(int resourceId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            deleteResource(conn, resourceId);
+        }
+    }
+
+    public void deleteResource(Connection conn, int resourceId) throws SQLException {
         String sql = "DELETE FROM RESOURCES WHERE resource_id = ?";
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, resourceId);
             ps.executeUpdate();
@@ -71,6 +71,13 @@ public class TaskRepository {
      * Найти одну задачу по её ID.
      */
     public Task findById(int taskId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            return findById(conn, taskId);
+        }
+    }
+
+    /** То же на соединении вызывающего (видит его незакоммиченные изменения). */
+    public Task findById(Connection conn, int taskId) throws SQLException {
         String sql = """
             SELECT
                 task_id,
@@ -88,8 +95,7 @@ public class TaskRepository {
             WHERE task_id = ?
             """;
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, taskId);
             ResultSet rs = ps.executeQuery();
@@ -124,6 +130,20 @@ public class TaskRepository {
                            String status,
                            String deadline,
                            String priority) throws SQLException {
+        try (Connection conn = Database.get()) {
+            return createTask(conn, groupId, createdBy, assignedTo, title, description, status, deadline, priority);
+        }
+    }
+
+    public Task createTask(Connection conn,
+                           int groupId,
+                           int createdBy,
+                           Integer assignedTo,
+                           String title,
+                           String description,
+                           String status,
+                           String deadline,
+                           String priority) throws SQLException {
 
         Timestamp deadlineTs = parseDeadline(deadline);
 
@@ -140,8 +160,7 @@ public class TaskRepository {
             ) VALUES (?,?,?,?,?,?,?,?)
             """;
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             ps.setInt(1, groupId);
             ps.setInt(2, createdBy);
@@ -169,7 +188,7 @@ public class TaskRepository {
             ResultSet keys = ps.getGeneratedKeys();
             if (keys.next()) {
                 int taskId = keys.getInt(1);
-                return findById(taskId);
+                return findById(conn, taskId);
             }
 
             throw new SQLException("Failed to insert task");
@@ -185,6 +204,18 @@ public class TaskRepository {
                            String description,
                            String deadline,
                            String priority) throws SQLException {
+        try (Connection conn = Database.get()) {
+            updateTask(conn, taskId, assignedTo, title, description, deadline, priority);
+        }
+    }
+
+    public void updateTask(Connection conn,
+                           int taskId,
+                           Integer assignedTo,
+                           String title,
+                           String description,
+                           String deadline,
+                           String priority) throws SQLException {
 
         Timestamp deadlineTs = parseDeadline(deadline);
 
@@ -200,8 +231,7 @@ public class TaskRepository {
             WHERE task_id = ?
             """;
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             if (assignedTo == null) {
                 ps.setNull(1, Types.INTEGER);
@@ -229,14 +259,19 @@ public class TaskRepository {
      * Обновить только статус задачи.
      */
     public void updateStatus(int taskId, String status) throws SQLException {
+        try (Connection conn = Database.get()) {
+            updateStatus(conn, taskId, status);
+        }
+    }
+
+    public void updateStatus(Connection conn, int taskId, String status) throws SQLException {
         String sql = """
             UPDATE TASKS
             SET status = ?, updated_at = CURRENT_TIMESTAMP
             WHERE task_id = ?
             """;
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, status);
             ps.setInt(2, taskId);
@@ -248,10 +283,15 @@ public class TaskRepository {
      * Удалить задачу.
      */
     public void deleteTask(int taskId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            deleteTask(conn, taskId);
+        }
+    }
+
+    public void deleteTask(Connection conn, int taskId) throws SQLException {
         String sql = "DELETE FROM TASKS WHERE task_id = ?";
 
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, taskId);
             ps.executeUpdate();
@@ -12,9 +12,14 @@ import java.util.List;
 public class TaskResourceRepository {
 
     public void attach(int taskId, int resourceId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            attach(conn, taskId, resourceId);
+        }
+    }
+
+    public void attach(Connection conn, int taskId, int resourceId) throws SQLException {
         String sql = "INSERT INTO TASK_RESOURCES(task_id, resource_id) VALUES(?,?) ON CONFLICT DO NOTHING";
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, taskId);
             ps.setInt(2, resourceId);
             ps.executeUpdate();
@@ -22,9 +27,14 @@ public class TaskResourceRepository {
     }
 
     public void detach(int taskId, int resourceId) throws SQLException {
+        try (Connection conn = Database.get()) {
+            detach(conn, taskId, resourceId);
+        }
+    }
+
+    public void detach(Connection conn, int taskId, int resourceId) throws SQLException {
         String sql = "DELETE FROM TASK_RESOURCES WHERE task_id = ? AND resource_id = ?";
-        try (Connection conn = Database.get();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, taskId);
             ps.setInt(2, resourceId);
             ps.executeUpdate();
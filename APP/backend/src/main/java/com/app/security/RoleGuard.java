@@ -1,11 +1,14 @@
 package com.app.security;
 
 import com.app.model.Membership;
+import com.app.model.User;
+import com.app.repository.UserRepository;
 import com.app.service.MembershipService;
 
 public class RoleGuard {
 
     private static final MembershipService membershipService = new MembershipService();
+    private static final UserRepository userRepository = new UserRepository();
 
     // =====================================================================
     // BASIC CHECKS — возвращают boolean и НЕ бросают checked exception
@@ -42,6 +45,16 @@ public class RoleGuard {
         return role != null && (role.equals("ADMIN") || role.equals("OWNER"));
     }
 
+    /** Проверка: глобальная роль ADMIN (users.role), не роль в группе */
+    public static boolean isSiteAdmin(int userId) {
+        try {
+            User u = userRepository.findById(userId);
+            return u != null && "ADMIN".equals(u.getRole());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     // =====================================================================
     // HARD GUARDS — бросают SecurityException (но НЕ checked)
     // =====================================================================
@@ -1,16 +1,20 @@
 package com.app.service;
 
+import com.app.config.Database;
+import com.app.events.EventOutbox;
 import com.app.model.Group;
 import com.app.repository.GroupRepository;
 import com.app.service.MembershipService;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 public class GroupService {
 
     private final GroupRepository groupRepo = new GroupRepository();
     private final MembershipService membershipService = new MembershipService();
+    private final EventOutbox outbox = new EventOutbox();
 
     /**
      * Список групп, в которых состоит пользователь.
@@ -29,9 +33,14 @@ public class GroupService {
         if (name == null || name.isBlank()) {
             throw new IllegalArgumentException("Group name is required");
         }
-        if (description == null) description = "";
+        String cleanDescription = description == null ? "" : description;
 
-        return groupRepo.createGroup(ownerId, name, description);
+        return Database.inTransaction(conn -> {
+            Group created = groupRepo.createGroup(conn, ownerId, name, cleanDescription);
+            outbox.append(conn, created.getGroupId(), ownerId, "GROUP_CREATED",
+                    Map.of("name", created.getName(), "entity", created));
+            return created;
+        });
     }
 
     /**
@@ -44,19 +53,31 @@ public class GroupService {
     /**
      * Обновить группу — проверка OWNER теперь в контроллере.
      */
-    public void updateGroup(int groupId, String name, String description) throws SQLException {
+    public void updateGroup(int groupId, int actorUserId, String name, String description) throws SQLException {
         if (name == null || name.isBlank()) {
             throw new IllegalArgumentException("Group name is required");
         }
-        if (description == null) description = "";
+        String cleanDescription = description == null ? "" : description;
 
-        groupRepo.updateGroup(groupId, name, description);
+        Database.inTransaction(conn -> {
+            Group before = groupRepo.findById(conn, groupId);
+            if (before == null) throw new IllegalArgumentException("Group not found");
+            groupRepo.updateGroup(conn, groupId, name, cleanDescription);
+            Group after = groupRepo.findById(conn, groupId);
+            outbox.append(conn, groupId, actorUserId, "GROUP_UPDATED",
+                    Map.of("name", after.getName(), "entity", after, "patch", outbox.patch(before, after)));
+            return null;
+        });
     }
 
     /**
      * Удалить группу — проверка OWNER также в контроллере.
      */
-    public void deleteGroup(int groupId) throws SQLException {
-        groupRepo.deleteGroup(groupId);
+    public void deleteGroup(int groupId, int actorUserId) throws SQLException {
+        Database.inTransaction(conn -> {
+            groupRepo.deleteGroup(conn, groupId);
+            outbox.append(conn, groupId, actorUserId, "GROUP_DELETED", Map.of());
+            return null;
+        });
     }
 }
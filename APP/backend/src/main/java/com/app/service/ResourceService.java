@@ -1,14 +1,18 @@
 package com.app.service;
 
+import com.app.config.Database;
+import com.app.events.EventOutbox;
 import com.app.model.Resource;
 import com.app.repository.ResourceRepository;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 public class ResourceService {
 
     private final ResourceRepository resourceRepo = new ResourceRepository();
+    private final EventOutbox outbox = new EventOutbox();
 
     public List<Resource> getResourcesForGroup(int groupId) throws SQLException {
         return resourceRepo.findByGroupId(groupId);
@@ -56,19 +60,30 @@ public class ResourceService {
         if (title == null || title.isBlank()) throw new IllegalArgumentException("title is required");
         if (filePath == null || filePath.isBlank()) throw new IllegalArgumentException("filePath is required");
 
-        return resourceRepo.createResource(
-                groupId,
-                uploadedBy,
-                title.trim(),
-                "FILE",
-                filePath.trim(),
-                originalName,
-                fileSize,
-                description == null ? null : description.trim()
-        );
+        return Database.inTransaction(conn -> {
+            Resource saved = resourceRepo.createResource(
+                    conn,
+                    groupId,
+                    uploadedBy,
+                    title.trim(),
+                    "FILE",
+                    filePath.trim(),
+                    originalName,
+                    fileSize,
+                    description == null ? null : description.trim()
+            );
+            outbox.append(conn, groupId, uploadedBy, "RESOURCE_UPLOADED",
+                    Map.of("resourceId", saved.getResourceId(), "title", saved.getTitle(), "entity", saved));
+            return saved;
+        });
     }
 
-    public void deleteResource(int resourceId) throws SQLException {
-        resourceRepo.deleteResource(resourceId);
+    public void deleteResource(Resource resource, int actorUserId) throws SQLException {
+        Database.inTransaction(conn -> {
+            resourceRepo.deleteResource(conn, resource.getResourceId());
+            outbox.append(conn, resource.getGroupId(), actorUserId, "RESOURCE_DELETED",
+                    Map.of("resourceId", resource.getResourceId()));
+            return null;
+        });
     }
 }
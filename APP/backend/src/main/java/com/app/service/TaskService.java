@@ -1,19 +1,27 @@
 package com.app.service;
 
+import com.app.config.Database;
+import com.app.events.EventOutbox;
 import com.app.model.Resource;
 import com.app.model.Task;
 import com.app.repository.TaskRepository;
 import com.app.repository.TaskResourceRepository;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Task changes and their TASK_* events are written in one transaction (see EventOutbox).
+ */
 public class TaskService {
 
     private final TaskRepository taskRepo = new TaskRepository();
     private final TaskResourceRepository taskResourceRepo = new TaskResourceRepository();
     private final ResourceService resourceService = new ResourceService();
     private final MembershipService membershipService = new MembershipService();
+    private final EventOutbox outbox = new EventOutbox();
 
     public List<Task> getTasksForGroup(int groupId) throws SQLException {
         return taskRepo.findByGroupId(groupId);
@@ -68,19 +76,31 @@ public class TaskService {
             throw new IllegalArgumentException("Invalid priority: " + priority);
         }
 
-        return taskRepo.createTask(
-                groupId,
-                createdBy,
-                assignedTo,
-                title.trim(),
-                description.trim(),
-                status,
-                deadline,
-                priority
-        );
+        String cleanTitle = title.trim();
+        String cleanDescription = description.trim();
+        String cleanStatus = status;
+        String cleanPriority = priority;
+
+        return Database.inTransaction(conn -> {
+            Task created = taskRepo.createTask(
+                    conn,
+                    groupId,
+                    createdBy,
+                    assignedTo,
+                    cleanTitle,
+                    cleanDescription,
+                    cleanStatus,
+                    deadline,
+                    cleanPriority
+            );
+            outbox.append(conn, groupId, createdBy, "TASK_CREATED",
+                    Map.of("taskId", created.getTaskId(), "title", created.getTitle(), "entity", created));
+            return created;
+        });
     }
 
     public void updateTask(int taskId,
+                           int actorUserId,
                            Integer assignedTo,
                            String title,
                            String description,
@@ -108,17 +128,21 @@ public class TaskService {
             throw new IllegalArgumentException("Invalid priority: " + priority);
         }
 
-        taskRepo.updateTask(
-                taskId,
-                assignedTo,
-                title.trim(),
-                description.trim(),
-                deadline,
-                priority
-        );
+        String cleanTitle = title.trim();
+        String cleanDescription = description.trim();
+        String cleanPriority = priority;
+
+        Database.inTransaction(conn -> {
+            Task before = requireTask(conn, taskId);
+            taskRepo.updateTask(conn, taskId, assignedTo, cleanTitle, cleanDescription, deadline, cleanPriority);
+            Task after = taskRepo.findById(conn, taskId);
+            outbox.append(conn, before.getGroupId(), actorUserId, "TASK_UPDATED",
+                    Map.of("taskId", taskId, "entity", after, "patch", outbox.patch(before, after)));
+            return null;
+        });
     }
 
-    public void updateStatus(int taskId, String status) throws Exception {
+    public void updateStatus(int taskId, int actorUserId, String status) throws Exception {
         if (taskId <= 0) {
             throw new IllegalArgumentException("taskId is required");
         }
@@ -133,11 +157,30 @@ public class TaskService {
             throw new IllegalArgumentException("Invalid status: " + status);
         }
 
-        taskRepo.updateStatus(taskId, status);
+        String newStatus = status;
+        Database.inTransaction(conn -> {
+            Task before = requireTask(conn, taskId);
+            taskRepo.updateStatus(conn, taskId, newStatus);
+            Task after = taskRepo.findById(conn, taskId);
+            outbox.append(conn, before.getGroupId(), actorUserId, "TASK_STATUS_CHANGED",
+                    Map.of("taskId", taskId, "status", newStatus, "entity", after, "patch", outbox.patch(before, after)));
+            return null;
+        });
+    }
+
+    public void deleteTask(int taskId, int actorUserId) throws SQLException {
+        Database.inTransaction(conn -> {
+            Task task = requireTask(conn, taskId);
+            taskRepo.deleteTask(conn, taskId);
+            outbox.append(conn, task.getGroupId(), actorUserId, "TASK_DELETED", Map.of("taskId", taskId));
+            return null;
+        });
     }
 
-    public void deleteTask(int taskId) throws SQLException {
-        taskRepo.deleteTask(taskId);
+    private Task requireTask(Connection conn, int taskId) throws SQLException {
+        Task task = taskRepo.findById(conn, taskId);
+        if (task == null) throw new IllegalArgumentException("Task not found");
+        return task;
     }
 
     // =========================
@@ -162,7 +205,12 @@ public class TaskService {
             throw new IllegalArgumentException("Not a member of this group");
         }
 
-        taskResourceRepo.attach(taskId, resourceId);
+        Database.inTransaction(conn -> {
+            taskResourceRepo.attach(conn, taskId, resourceId);
+            outbox.append(conn, task.getGroupId(), actorUserId, "TASK_RESOURCE_ATTACHED",
+                    Map.of("taskId", taskId, "resourceId", resourceId));
+            return null;
+        });
     }
 
     public void detachResource(int taskId, int resourceId, int actorUserId) throws Exception {
@@ -174,6 +222,11 @@ public class TaskService {
             throw new IllegalArgumentException("No permission to detach resource");
         }
 
-        taskResourceRepo.detach(taskId, resourceId);
+        Database.inTransaction(conn -> {
+            taskResourceRepo.detach(conn, taskId, resourceId);
+            outbox.append(conn, task.getGroupId(), actorUserId, "TASK_RESOURCE_DETACHED",
+                    Map.of("taskId", taskId, "resourceId", resourceId));
+            return null;
+        });
     }
 }
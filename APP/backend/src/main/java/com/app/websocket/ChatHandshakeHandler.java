@@ -0,0 +1,60 @@
+package com.app.websocket;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Negotiates the chat subprotocol (see FrameCodec) and decides whether
+ * permessage-deflate is offered back to the client:
+ *  - all:  deflate for every connection (container default);
+ *  - json: deflate only JSON text connections; Smile frames are already
+ *          compact and small, so compressing them mostly costs CPU;
+ *  - off:  never.
+ * Window size and level are fixed by the servlet container and cannot be tuned here.
+ */
+class ChatHandshakeHandler extends DefaultHandshakeHandler {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final String deflate;
+
+    ChatHandshakeHandler(String deflate) {
+        this.deflate = deflate.toLowerCase();
+        setSupportedProtocols(FrameCodec.PROTOCOLS);
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requested,
+                                                                 List<WebSocketExtension> supported) {
+        List<WebSocketExtension> extensions = super.filterRequestedExtensions(request, requested, supported);
+
+        boolean drop = switch (deflate) {
+            case "off" -> true;
+            case "json" -> FrameCodec.SMILE.equals(requestedProtocol(request));
+            default -> false;
+        };
+        if (!drop) {
+            return extensions;
+        }
+        return extensions.stream()
+                .filter(e -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(e.getName()))
+                .toList();
+    }
+
+    /** The subprotocol selectProtocol() will pick: the client's first supported one. */
+    private String requestedProtocol(ServerHttpRequest request) {
+        List<String> supported = Arrays.asList(FrameCodec.PROTOCOLS);
+        for (String p : new WebSocketHttpHeaders(request.getHeaders()).getSecWebSocketProtocol()) {
+            if (supported.contains(p.toLowerCase())) {
+                return p.toLowerCase();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.app.websocket;
+
+import com.app.model.Message;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * A chat message as the server publishes it: sender taken from the socket,
+ * persisted by the group's owner and fanned out as
+ * {"type":"message","groupId":..,"messageId":..,"userId":..,"userName":..,"text":..,"timestamp":..}.
+ * messageId is 0 until the message is stored (and then left out of the frame);
+ * once stored, timestamp is the row's, as the history endpoint returns it.
+ * Serialised once ({@link FrameCodec#write}) no matter how many sockets get it.
+ */
+record ChatMessage(int groupId, int userId, String userName, String text, String timestamp,
+                   Integer resourceId, String resourceTitle, Integer taskId, String clientMsgId,
+                   int messageId) {
+
+    ChatMessage stored(int id, String storedAt) {
+        return new ChatMessage(groupId, userId, userName, text, storedAt,
+                resourceId, resourceTitle, taskId, clientMsgId, id);
+    }
+
+    /** The row as MessageRepository reads it, for the history cache. */
+    Message toMessage() {
+        // 0 ids are stored as NULL (see saveMessage)
+        boolean resource = resourceId != null && resourceId != 0;
+        return new Message(messageId, groupId, userId, userName, text,
+                resource ? resourceId : null, resourceTitle,
+                taskId != null && taskId != 0 ? taskId : null, timestamp, clientMsgId);
+    }
+
+    void writeTo(JsonGenerator g) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("type", "message");
+        g.writeNumberField("groupId", groupId);
+        if (messageId > 0) {
+            g.writeNumberField("messageId", messageId);
+        }
+        g.writeNumberField("userId", userId);
+        g.writeStringField("userName", userName);
+        g.writeStringField("text", text);
+        g.writeStringField("timestamp", timestamp);
+        if (resourceId != null) {
+            g.writeNumberField("resourceId", resourceId);
+            g.writeStringField("resourceTitle", resourceTitle == null ? "" : resourceTitle);
+        }
+        if (taskId != null) {
+            g.writeNumberField("taskId", taskId);
+        }
+        if (clientMsgId != null) {
+            g.writeStringField("clientMsgId", clientMsgId);
+        }
+        g.writeEndObject();
+    }
+
+    /** Back from the cluster bus (FORWARD envelope). */
+    static ChatMessage of(JsonNode f) {
+        return new ChatMessage(
+                f.path("groupId").asInt(),
+                f.path("userId").asInt(),
+                f.path("userName").asText(""),
+                f.path("text").asText(""),
+                f.path("timestamp").asText(""),
+                f.has("resourceId") ? f.path("resourceId").asInt() : null,
+                f.has("resourceId") ? f.path("resourceTitle").asText("") : null,
+                f.has("taskId") ? f.path("taskId").asInt() : null,
+                f.has("clientMsgId") ? f.path("clientMsgId").asText() : null,
+                f.path("messageId").asInt()
+        );
+    }
+}
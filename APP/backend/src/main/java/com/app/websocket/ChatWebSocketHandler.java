@@ -2,193 +2,943 @@ package com.app.websocket;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import com.app.config.Database;
+import com.app.websocket.cluster.ClusterBus;
+import com.app.websocket.cluster.ClusterMessage;
+import com.app.websocket.cluster.PresenceRegistry;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
-public class ChatWebSocketHandler extends TextWebSocketHandler {
+public class ChatWebSocketHandler extends AbstractWebSocketHandler {
 
-    private static class SessionInfo {
-        final int userId;
-        final String userName;
-        final Set<Integer> groupIds;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SessionRegistry sessions;
+    private final TypingCoalescer typing;
+    private final EventCoalescer events;
+    private final FloodGuard flood;
+    private final MessageDedupe dedupe;
+    private final ReadMarkerStore readMarkers;
+    private final UnreadCounters unread;
+    private final LastSeenTracker lastSeen;
+    private final MessageCache history;
+    private long lastFloodSweep;
+    private final ScheduledExecutorService ticker;
+    // writes the sockets' queues; whoever delivers a frame only queues it
+    private final ExecutorService senders;
+    private final long sendTimeoutMillis;
+    private static final int MAX_FORWARD_HOPS = 2;
+    // frames one sender task writes before it yields its thread to the other sockets
+    private static final int SEND_TURN = 64;
+    // Tomcat's per-session limit for a blocking write (default 20 s)
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+    private static final Topic[] EVENT_TOPICS = {Topic.TASKS, Topic.RESOURCES, Topic.ACTIVITY};
 
-        SessionInfo(int userId, String userName, Set<Integer> groupIds) {
-            this.userId = userId;
-            this.userName = userName;
-            this.groupIds = groupIds;
-        }
+    private final ClusterBus bus;
+    private final PresenceRegistry presence;
+    private final GroupRouter router; // null = broadcast routing
+    private final ReplayBuffer replay;
+    private final FrameCodec codec = new FrameCodec();
+    private final MembershipIndex memberships;
+    // sequence numbers are only meaningful on the node (and process) that assigned them
+    private final String epoch;
+
+    public ChatWebSocketHandler(ClusterBus bus, PresenceRegistry presence, GroupRouter router,
+                                MembershipIndex memberships, TypingCoalescer typing, EventCoalescer events,
+                                FloodGuard flood, MessageDedupe dedupe, ReadMarkerStore readMarkers, UnreadCounters unread,
+                                LastSeenTracker lastSeen, MessageCache history,
+                                ReplayBuffer replay, SessionRegistry sessions, long tickMillis,
+                                int senderThreads, long sendTimeoutMillis) {
+        this.bus = bus;
+        this.sessions = sessions;
+        this.memberships = memberships;
+        this.presence = presence;
+        this.router = router;
+        this.typing = typing;
+        this.events = events;
+        this.flood = flood;
+        this.dedupe = dedupe;
+        this.readMarkers = readMarkers;
+        this.unread = unread;
+        this.lastSeen = lastSeen;
+        this.history = history;
+        this.replay = replay;
+        this.epoch = bus.nodeId() + "-" + Long.toString(System.currentTimeMillis(), 36);
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-ticker");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        AtomicInteger senderNo = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "chat-sender-" + senderNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        bus.setListener(this::onClusterMessage);
+        // owner routing relays a group's messages only to its owner and to nodes with sockets in it
+        history.trustOnly(groupId -> router == null || router.isOwner(groupId) || sessions.members(groupId).length > 0);
+        presence.setChangeListener(groups -> groups.forEach(this::broadcastOnline));
     }
 
-    private final ObjectMapper mapper = new ObjectMapper();
-    private final Map<WebSocketSession, SessionInfo> sessionInfo = new ConcurrentHashMap<>();
-    private final Map<Integer, Set<WebSocketSession>> groupSessions = new ConcurrentHashMap<>();
+    public void shutdown() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        if (router != null) router.shutdown();
+        bus.close();
+        presence.close();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // identity comes from the handshake (JwtHandshakeInterceptor); ids in frames are ignored
+        Map<String, Object> attrs = session.getAttributes();
+        int userId = (Integer) attrs.get(JwtHandshakeInterceptor.USER_ID);
+        long now = System.currentTimeMillis();
+        if (session instanceof NativeWebSocketSession ns) {
+            // a sender thread stuck on a dead peer is freed after this, not after Tomcat's 20 s
+            jakarta.websocket.Session nativeSession = ns.getNativeSession(jakarta.websocket.Session.class);
+            if (nativeSession != null) {
+                nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeoutMillis);
+            }
+        }
+        sessions.open(session, userId, (String) attrs.get(JwtHandshakeInterceptor.USER_NAME), now);
+        lastSeen.seen(userId, new int[0], now);
+    }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        JsonNode node = mapper.readTree(message.getPayload());
-        String type = node.path("type").asText("");
+        handleFrame(session, codec.read(message.getPayload()));
+    }
 
-        if ("join".equalsIgnoreCase(type) || "joinMultiple".equalsIgnoreCase(type)) {
-            int userId = node.path("userId").asInt();
-            String userName = node.path("userName").asText("");
-            Set<Integer> groups = ConcurrentHashMap.newKeySet();
+    /** Same frames as text, Smile-encoded ("chat.smile" subprotocol). */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        handleFrame(session, codec.read(message));
+    }
 
-            if ("joinMultiple".equalsIgnoreCase(type)) {
-                node.path("groupIds").forEach(g -> groups.add(g.asInt()));
-            } else {
-                groups.add(node.path("groupId").asInt());
+    /** Answer to our heartbeat ping: the connection is alive even if the user is silent. */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        SessionRegistry.SessionRecord rec = SessionRegistry.of(session);
+        if (rec != null) {
+            rec.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    private void handleFrame(WebSocketSession session, InboundFrame frame) {
+        SessionRegistry.SessionRecord rec = SessionRegistry.of(session);
+        if (rec == null) {
+            return;
+        }
+        rec.lastSeen = System.currentTimeMillis();
+
+        if (frame instanceof InboundFrame.Join join) {
+            join(session, rec, join);
+        } else if (frame instanceof InboundFrame.Resume resume) {
+            resume(session, rec, resume);
+        } else if (frame instanceof InboundFrame.Subscribe subscribe) {
+            subscribe(session, rec, subscribe);
+        } else if (frame instanceof InboundFrame.Message m) {
+            int groupId = targetGroup(rec, m.groupId());
+            if (groupId == 0) return;
+            if (!admit(session, rec)) return;
+
+            ChatMessage message = new ChatMessage(
+                    groupId,
+                    rec.userId,
+                    rec.userName,
+                    m.text(),
+                    m.timestamp() != null ? m.timestamp() : Instant.now().toString(),
+                    m.resourceId(),
+                    m.resourceTitle(),
+                    m.taskId(),
+                    m.clientMsgId(),
+                    0
+            );
+            stopTyping(groupId, rec.userId);
+            // acked by whichever node stores it, once it is stored
+            routeChat(message, 0, bus.nodeId(), rec.sid);
+        } else if (frame instanceof InboundFrame.Typing t) {
+            int groupId = targetGroup(rec, t.groupId());
+            if (groupId == 0) return;
+            int userId = rec.userId;
+            String userName = rec.userName;
+
+            // only refreshes state; flushTyping() sends the batched frame
+            if (typing.touch(groupId, userId, userName, System.currentTimeMillis())) {
+                ObjectNode relay = mapper.createObjectNode();
+                relay.put("op", "touch");
+                relay.put("userId", userId);
+                relay.put("userName", userName);
+                relay(ClusterMessage.Kind.TYPING, groupId, relay.toString());
+            }
+        } else if (frame instanceof InboundFrame.Read r) {
+            int groupId = targetGroup(rec, r.groupId());
+            if (groupId == 0) return;
+            // memory only once loaded; the store writes behind and flushReceipts() tells the group.
+            // An id that can only be checked in the database costs a token of the sender's flood bucket
+            try {
+                if (readMarkers.markRead(rec.userId, groupId, r.messageId(), () -> admit(session, rec))
+                        && readMarkers.isNewest(groupId, r.messageId())) {
+                    // caught up: nothing in the group is unread; an older marker leaves the count alone
+                    unread.onRead(rec.userId, groupId, r.messageId());
+                }
+            } catch (SQLException ignored) {
+                // the client reports again with the next message it shows
             }
+        }
+    }
+
+    /**
+     * Tells the sender its message is stored, so it stops resending:
+     * {"type":"ack","groupId":12,"clientMsgId":"...","duplicate":false}.
+     * The sender's socket is sid on node; another node gets the ack over the bus.
+     */
+    private void ack(String node, int sid, int groupId, String clientMsgId, boolean duplicate) {
+        if (!node.equals(bus.nodeId())) {
+            ObjectNode relay = mapper.createObjectNode();
+            relay.put("s", sid);
+            relay.put("c", clientMsgId);
+            relay.put("d", duplicate);
+            bus.send(node, ClusterMessage.Kind.ACK, groupId, relay.toString());
+            return;
+        }
+        SessionRegistry.SessionRecord rec = sessions.get(sid);
+        if (rec == null) return; // gone; it resends after reconnecting and gets duplicate:true
+
+        ObjectNode ack = mapper.createObjectNode();
+        ack.put("type", "ack");
+        ack.put("groupId", groupId);
+        ack.put("clientMsgId", clientMsgId);
+        ack.put("duplicate", duplicate);
+        sendTo(rec.session, ack.toString());
+    }
+
+    /** Flood check before a frame costs an insert and a broadcast, or a query; false = drop it. */
+    private boolean admit(WebSocketSession session, SessionRegistry.SessionRecord rec) {
+        long now = System.nanoTime();
+        FloodGuard.Verdict verdict = flood.onMessage(rec.flood, rec.userId, now);
+        switch (verdict) {
+            case PASS -> {
+                return true;
+            }
+            case WARN -> {
+                ObjectNode warn = mapper.createObjectNode();
+                warn.put("type", "rateLimited");
+                warn.put("retryAfterMs", flood.retryAfterMillis(rec.flood, now));
+                sendTo(session, warn.toString());
+            }
+            case CLOSE -> {
+                try {
+                    session.close(CloseStatus.POLICY_VIOLATION.withReason("Too many messages"));
+                } catch (Exception ignored) {
+                }
+            }
+            case DROP -> {
+            }
+        }
+        return false;
+    }
 
-            SessionInfo info = new SessionInfo(userId, userName, groups);
-            sessionInfo.put(session, info);
+    /**
+     * The frame's group, or the first joined one if it names none; 0 if the
+     * socket has not joined it (memberships were checked at join, anything
+     * else is not ours to touch).
+     */
+    private static int targetGroup(SessionRegistry.SessionRecord rec, int requested) {
+        int groupId = requested;
+        int[] joined = rec.groupIds();
+        if (groupId == 0 && joined.length > 0) {
+            groupId = joined[0];
+        }
+        return rec.inGroup(groupId) ? groupId : 0;
+    }
 
-            for (Integer gid : groups) {
-                groupSessions.computeIfAbsent(gid, k -> ConcurrentHashMap.newKeySet()).add(session);
+    private void join(WebSocketSession session, SessionRegistry.SessionRecord rec, InboundFrame.Join join) {
+        int userId = rec.userId;
+        MembershipIndex.Entry member;
+        try {
+            member = memberships.lookup(userId);
+        } catch (Exception e) {
+            return;
+        }
+        if (member == null) {
+            return;
+        }
+        String userName = member.userName;
+
+        // requested groups the user really belongs to; none requested = all of them
+        Set<Integer> groups = new LinkedHashSet<>();
+        for (int g : join.groupIds()) {
+            groups.add(g);
+        }
+        if (groups.isEmpty()) {
+            groups.addAll(member.groupIds);
+        } else {
+            groups.retainAll(member.groupIds);
+        }
+
+        // re-join on the same socket replaces the old subscription
+        leaveGroups(rec);
+        rec.userName = userName;
+        int[] groupIds = groups.stream().mapToInt(Integer::intValue).toArray();
+        sessions.setGroups(rec, groupIds, join.topics());
+        lastSeen.seen(userId, groupIds, System.currentTimeMillis());
+
+        ObjectNode joined = mapper.createObjectNode();
+        joined.put("type", "joined");
+        joined.put("epoch", epoch);
+        ObjectNode seqs = joined.putObject("seqs");
+
+        for (Integer gid : groups) {
+            publishPresence(gid, presence.join(gid, userId, userName), userId, userName);
+            seqs.put(String.valueOf(gid), replay.currentSeq(gid));
+            broadcastOnline(gid);
+        }
+        sendTo(session, joined.toString());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        SessionRegistry.SessionRecord rec = sessions.close(session);
+        if (rec != null) {
+            lastSeen.seen(rec.userId, rec.groupIds(), System.currentTimeMillis());
+            leaveGroups(rec);
+        }
+        super.afterConnectionClosed(session, status);
+    }
+
+    /**
+     * Changes what the socket hears without re-joining (no presence churn):
+     * {"type":"subscribe","groupId":12,"topics":["chat","typing"]}, or without
+     * groupId for every joined group. Answers with "subscribed".
+     */
+    private void subscribe(WebSocketSession session, SessionRegistry.SessionRecord rec, InboundFrame.Subscribe sub) {
+        int mask = sub.topics();
+        int[] targets = sub.groupId() != 0 ? new int[]{sub.groupId()} : rec.groupIds();
+
+        ObjectNode done = mapper.createObjectNode();
+        done.put("type", "subscribed");
+        ArrayNode groupIds = done.putArray("groupIds");
+        for (int gid : targets) {
+            if (!rec.inGroup(gid)) continue;
+            sessions.setTopics(rec, gid, mask);
+            groupIds.add(gid);
+        }
+        ArrayNode topics = done.putArray("topics");
+        for (Topic t : Topic.values()) {
+            if (t.in(mask)) topics.add(t.name().toLowerCase());
+        }
+        sendTo(session, done.toString());
+    }
+
+    private void leaveGroups(SessionRegistry.SessionRecord rec) {
+        for (int gid : rec.groupIds()) {
+            stopTyping(gid, rec.userId);
+            publishPresence(gid, presence.leave(gid, rec.userId), rec.userId, rec.userName);
+            if (sessions.removeFromGroup(rec, gid) > 0) {
                 broadcastOnline(gid);
+            } else if (router != null && !router.isOwner(gid)) {
+                // relays for the group stop here; a later join must not find the ring with a gap
+                history.invalidate(gid);
             }
+        }
+    }
+
+    /**
+     * Sends a chat message to wherever it must be persisted: here in broadcast
+     * routing, otherwise the group's owner node (see GroupRouter). The node
+     * that stores it acks the sender's socket (replySid on replyNode).
+     */
+    private void routeChat(ChatMessage message, int hops, String replyNode, int replySid) {
+        if (router == null) {
+            acceptChat(message, replyNode, replySid);
             return;
         }
 
-        SessionInfo info = sessionInfo.get(session);
-        if (info == null) {
+        int groupId = message.groupId();
+        long now = System.currentTimeMillis();
+        if (router.isOwner(groupId)) {
+            if (!router.holdIfNeeded(groupId, now, () -> acceptChat(message, replyNode, replySid))) {
+                acceptChat(message, replyNode, replySid);
+            }
+        } else if (hops < MAX_FORWARD_HOPS && !router.releasing(groupId, now)) {
+            String forward = "{\"h\":" + (hops + 1) + ",\"o\":" + TextNode.valueOf(replyNode)
+                    + ",\"s\":" + replySid + ",\"f\":" + codec.write(message) + "}";
+            bus.send(router.owner(groupId), ClusterMessage.Kind.FORWARD, groupId, forward);
+        } else {
+            // in flight during a handoff, or the rings disagree: accept here instead of bouncing
+            acceptChat(message, replyNode, replySid);
+        }
+    }
+
+    /**
+     * Stores and publishes the message, then acks it. A retry of a stored
+     * message is acked as a duplicate and not published again; a message that
+     * could not be stored is not acked, so the client keeps it and resends.
+     */
+    private void acceptChat(ChatMessage message, String replyNode, int replySid) {
+        int groupId = message.groupId();
+        String clientMsgId = message.clientMsgId();
+        if (clientMsgId != null && dedupe.seen(groupId, message.userId(), clientMsgId, System.currentTimeMillis())) {
+            ack(replyNode, replySid, groupId, clientMsgId, true);
             return;
         }
+        // events held for the group go first: a message may refer to what they changed
+        flushEvents(groupId);
+
+        ChatMessage stored;
+        try {
+            stored = saveMessage(message);
+        } catch (Exception e) {
+            if (clientMsgId != null) return;
+            // no id to retry with: publish it unsaved rather than lose it; failures should not crash websocket
+            stored = message;
+        }
 
-        int targetGroupId = node.path("groupId").asInt();
-        if (targetGroupId == 0 && !info.groupIds.isEmpty()) {
-            targetGroupId = info.groupIds.iterator().next();
+        if (clientMsgId != null) {
+            // null = its claim was taken: stored before, by an earlier attempt
+            dedupe.stored(groupId, message.userId(), clientMsgId, System.currentTimeMillis());
+            ack(replyNode, replySid, groupId, clientMsgId, stored == null);
         }
+        if (stored == null) {
+            return;
+        }
+        unread.onMessage(groupId, message.userId(), stored.messageId());
+        if (stored.messageId() > 0) {
+            readMarkers.onMessage(groupId, stored.messageId());
+            history.append(stored.toMessage());
+        }
+
+        publish(ClusterMessage.Kind.CHAT, groupId, Topic.CHAT, codec.write(stored));
+    }
+
+    /**
+     * Replays what a reconnecting client missed:
+     * {"type":"resume","epoch":"...","groups":{"12":40}} or {"type":"resume","groupId":12,"lastSeq":40}.
+     * Each group answers with the missed frames followed by "resumed", or with
+     * "resync" when the gap is no longer buffered and the client must reload.
+     */
+    private void resume(WebSocketSession session, SessionRegistry.SessionRecord rec, InboundFrame.Resume resume) {
+        boolean sameEpoch = epoch.equals(resume.epoch());
+        long now = System.currentTimeMillis();
+
+        resume.groups().forEach((groupId, lastSeq) -> {
+            int topics = rec.topics(groupId);
+            if (topics == 0) return;
 
-        if ("message".equalsIgnoreCase(type)) {
-            ObjectNode payload = mapper.createObjectNode();
-            payload.put("type", "message");
-            payload.put("groupId", targetGroupId);
-            payload.put("userId", node.path("userId").asInt(info.userId));
-            payload.put("userName", node.path("userName").asText(info.userName));
-            payload.put("text", node.path("text").asText(""));
-            payload.put("timestamp", node.has("timestamp") ? node.path("timestamp").asText() : Instant.now().toString());
-            if (node.has("resourceId")) {
-                payload.put("resourceId", node.path("resourceId").asInt());
-                payload.put("resourceTitle", node.path("resourceTitle").asText(""));
+            List<String> missed = sameEpoch ? replay.since(groupId, lastSeq, topics, now) : null;
+            ObjectNode done = mapper.createObjectNode();
+            done.put("type", missed == null ? "resync" : "resumed");
+            done.put("groupId", groupId);
+            done.put("seq", replay.currentSeq(groupId));
+            done.put("epoch", epoch);
+
+            if (missed != null) {
+                missed.forEach(frame -> sendTo(session, frame));
             }
-            if (node.has("taskId")) {
-                payload.put("taskId", node.path("taskId").asInt());
+            sendTo(session, done.toString());
+        });
+    }
+
+    /** Local fan-out plus relay to the other nodes. */
+    private void publish(ClusterMessage.Kind kind, int groupId, Topic topic, ObjectNode payload) {
+        publish(kind, groupId, topic, payload.toString());
+    }
+
+    private void publish(ClusterMessage.Kind kind, int groupId, Topic topic, String json) {
+        deliverSequenced(groupId, topic, json);
+        relay(kind, groupId, json);
+    }
+
+    /** Stamps the group's next seq, keeps the frame for resume, then delivers it locally. */
+    private void deliverSequenced(int groupId, Topic topic, String json) {
+        // queued to the sockets under the group's seq lock: two senders in one group cannot
+        // swap their frames between stamping and queueing (clients drop seq <= the last one seen)
+        List<SessionRegistry.SessionRecord> toDrain = new ArrayList<>();
+        replay.append(groupId, json, topic, System.currentTimeMillis(),
+                stamped -> enqueueLocal(groupId, topic, stamped, toDrain));
+        toDrain.forEach(this::drain);
+    }
+
+    /** Broadcast routing: every node. Owner routing: only nodes with sessions in the group. */
+    private void relay(ClusterMessage.Kind kind, int groupId, String json) {
+        if (router == null) {
+            bus.publish(kind, groupId, json);
+            return;
+        }
+        for (String node : presence.nodesWithGroup(groupId)) {
+            if (!node.equals(router.nodeId())) {
+                bus.send(node, kind, groupId, json);
             }
+        }
+    }
 
-            // Persist message to DB; failures should not crash websocket
-            Integer resId = node.has("resourceId") ? node.path("resourceId").asInt() : null;
-            String resTitle = node.has("resourceTitle") ? node.path("resourceTitle").asText("") : null;
-            Integer taskId = node.has("taskId") ? node.path("taskId").asInt() : null;
+    private void broadcast(int groupId, Topic topic, ObjectNode payload) {
+        SessionRegistry.SessionRecord[] members = sessions.members(groupId, topic);
+        if (members.length == 0) return; // nobody subscribed: skip serialising too
+        deliverLocal(groupId, topic, payload.toString());
+    }
 
-            saveMessage(
-                    targetGroupId,
-                    node.path("userId").asInt(info.userId),
-                    node.path("text").asText(""),
-                    resId,
-                    resTitle,
-                    taskId
-            );
+    /** Only to sockets subscribed to the topic in this group. */
+    private void deliverLocal(int groupId, Topic topic, String json) {
+        List<SessionRegistry.SessionRecord> toDrain = new ArrayList<>();
+        enqueueLocal(groupId, topic, json, toDrain);
+        toDrain.forEach(this::drain);
+    }
 
-            broadcast(targetGroupId, payload);
-        } else if ("typing".equalsIgnoreCase(type)) {
-            ObjectNode payload = mapper.createObjectNode();
-            payload.put("type", "typing");
-            payload.put("groupId", targetGroupId);
-            payload.put("userId", node.path("userId").asInt(info.userId));
-            payload.put("userName", node.path("userName").asText(info.userName));
+    /** Queues the frame to the group's subscribed sockets; the ones this caller must now write go to toDrain. */
+    private void enqueueLocal(int groupId, Topic topic, String json, List<SessionRegistry.SessionRecord> toDrain) {
+        SessionRegistry.SessionRecord[] members = sessions.members(groupId, topic);
+        if (members.length == 0) return;
 
-            broadcast(targetGroupId, payload);
+        // encoded at most once per wire format, shared by all sessions using it
+        FrameCodec.Outbound out = codec.outbound(json);
+        OutboundLanes.Lane lane = OutboundLanes.Lane.of(topic);
+        long key = OutboundLanes.lowKey(groupId, topic);
+        for (SessionRegistry.SessionRecord r : members) {
+            if (offer(r, out, lane, key)) toDrain.add(r);
         }
     }
 
-    @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        SessionInfo info = sessionInfo.remove(session);
-        if (info != null) {
-            for (Integer gid : info.groupIds) {
-                Set<WebSocketSession> sessions = groupSessions.get(gid);
-                if (sessions != null) {
-                    sessions.remove(session);
-                    if (sessions.isEmpty()) {
-                        groupSessions.remove(gid);
-                    } else {
-                        broadcastOnline(gid);
-                    }
+    /** Replies and control frames to one socket: HIGH lane. */
+    private void sendTo(WebSocketSession session, String json) {
+        SessionRegistry.SessionRecord rec = SessionRegistry.of(session);
+        if (rec != null) {
+            send(rec, codec.outbound(json), OutboundLanes.Lane.HIGH, 0);
+        }
+    }
+
+    private void send(SessionRegistry.SessionRecord rec, FrameCodec.Outbound out, OutboundLanes.Lane lane, long key) {
+        if (offer(rec, out, lane, key)) drain(rec);
+    }
+
+    /** @return true if the socket was idle and the caller must schedule its sender (drain) */
+    private boolean offer(SessionRegistry.SessionRecord rec, FrameCodec.Outbound out, OutboundLanes.Lane lane, long key) {
+        WebSocketSession s = rec.session;
+        if (!s.isOpen()) return false;
+        switch (rec.outbound.offer(out, lane, key)) {
+            case DRAIN -> {
+                return true;
+            }
+            case OVERFLOW -> {
+                // too far behind to catch up; it reconnects and resumes or resyncs
+                try {
+                    s.close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (Exception ignored) {
                 }
             }
+            case QUEUED -> {
+            }
         }
-        super.afterConnectionClosed(session, status);
+        return false;
     }
 
-    private void broadcast(int groupId, ObjectNode payload) {
-        Set<WebSocketSession> sessions = groupSessions.get(groupId);
-        if (sessions == null || sessions.isEmpty()) return;
+    /**
+     * Hands the socket's queue to a sender thread. The delivering thread (a
+     * request, the ticker, the cluster listener) returns at once, so a slow
+     * socket only ever holds up its own queue and one sender thread.
+     */
+    private void drain(SessionRegistry.SessionRecord rec) {
+        try {
+            senders.execute(() -> writeQueued(rec));
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
 
-        TextMessage msg = new TextMessage(payload.toString());
-        sessions.forEach(s -> {
-            if (s.isOpen()) {
+    /**
+     * Writes up to SEND_TURN frames of the socket's queue, HIGH lane first,
+     * then goes to the back of the senders' queue if more are left; a socket
+     * with a steady stream does not keep a thread from the others.
+     */
+    private void writeQueued(SessionRegistry.SessionRecord rec) {
+        WebSocketSession s = rec.session;
+        for (int n = 0; n < SEND_TURN; n++) {
+            FrameCodec.Outbound next = rec.outbound.next();
+            if (next == null) return; // empty: the next offer schedules a new turn
+            if (!s.isOpen()) continue; // keep polling so the queue empties and the sender flag clears
+            // pings are written by the senders too; sendMessage is not thread-safe
+            synchronized (s) {
                 try {
-                    s.sendMessage(msg);
+                    s.sendMessage(next.messageFor(s));
                 } catch (Exception ignored) {
                 }
             }
-        });
+        }
+        drain(rec);
     }
 
+    /** Socket and wire counters of this instance, for /api/chat/stats. */
+    public Map<String, Object> stats() {
+        Map<String, Object> codecStats = new LinkedHashMap<>();
+        codecStats.put("textFrames", codec.getTextFrames());
+        codecStats.put("textBytes", codec.getTextBytes());
+        codecStats.put("binaryFrames", codec.getBinaryFrames());
+        codecStats.put("binaryBytes", codec.getBinaryBytes());
+        codecStats.put("smileEncodes", codec.getSmileEncodes());
+        codecStats.put("smileEncodeNanos", codec.getSmileEncodeNanos());
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("nodeId", bus.nodeId());
+        int open = sessions.size();
+        long registryBytes = sessions.estimatedBytes();
+        out.put("sessions", open);
+        out.put("groups", sessions.groupCount());
+        out.put("registryBytes", registryBytes);
+        out.put("registryBytesPerSession", open == 0 ? 0 : registryBytes / open);
+        out.put("codec", codecStats);
+        out.put("lanes", sessions.lanes().stats());
+        out.put("flood", flood.stats(sessions, 10));
+        out.put("duplicateMessages", dedupe.getDuplicates());
+        out.put("readMarkers", readMarkers.stats());
+        out.put("unread", unread.stats());
+        out.put("lastSeen", lastSeen.stats());
+        out.put("historyCache", history.stats());
+
+        Map<String, Object> eventStats = new LinkedHashMap<>();
+        eventStats.put("eventsIn", events.getEventsIn());
+        eventStats.put("collapsed", events.getCollapsed());
+        eventStats.put("framesOut", events.getFramesOut());
+        out.put("events", eventStats);
+        return out;
+    }
+
+    /** Sent now, or held for the group's coalescing window (see EventCoalescer). */
     public void broadcastEvent(int groupId, Map<String, Object> payload) {
         ObjectNode node = mapper.createObjectNode();
         payload.forEach((k, v) -> node.set(k, mapper.valueToTree(v)));
-        broadcast(groupId, node);
+        Topic topic = Topic.ofEvent(node.path("event").asText(null));
+        if (!events.enabled()) {
+            publish(ClusterMessage.Kind.EVENT, groupId, topic, node);
+            return;
+        }
+        long checkIn = events.add(groupId, topic, node, System.currentTimeMillis());
+        if (checkIn >= 0) {
+            scheduleEventFlush(groupId, topic, checkIn);
+        }
+    }
+
+    private void scheduleEventFlush(int groupId, Topic topic, long delayMillis) {
+        ticker.schedule(() -> flushEvents(groupId, topic, false), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Sends the group's batch if due (or force); a batch that grew since stays until its new due time. */
+    private void flushEvents(int groupId, Topic topic, boolean force) {
+        // one flush at a time, so two batches of a group cannot overtake each other
+        synchronized (events) {
+            try {
+                long now = System.currentTimeMillis();
+                List<ObjectNode> batch = events.take(groupId, topic, now, force);
+                if (batch == null) {
+                    long due = events.dueIn(groupId, topic, now);
+                    if (due >= 0 && !force) scheduleEventFlush(groupId, topic, due);
+                    return;
+                }
+                publish(ClusterMessage.Kind.EVENT, groupId, topic, events.frame(groupId, batch));
+            } catch (Exception ignored) {
+                // runs on the ticker: a failed flush must not kill it
+            }
+        }
+    }
+
+    private void flushEvents(int groupId) {
+        if (events.isEmpty()) return;
+        for (Topic topic : EVENT_TOPICS) {
+            flushEvents(groupId, topic, true);
+        }
+    }
+
+    /** Frames relayed by other nodes: deliver to our sessions only, never re-publish. */
+    private void onClusterMessage(ClusterMessage m) {
+        switch (m.getKind()) {
+            case CHAT -> {
+                // known here before the sockets get it: their read frame for it must validate from memory
+                try {
+                    ChatMessage stored = ChatMessage.of(mapper.readTree(m.getPayload()));
+                    if (stored.messageId() > 0) {
+                        readMarkers.onMessage(m.getGroupId(), stored.messageId());
+                        history.append(stored.toMessage());
+                    }
+                } catch (Exception ignored) {
+                }
+                deliverSequenced(m.getGroupId(), Topic.CHAT, m.getPayload());
+            }
+            case EVENT -> {
+                try {
+                    JsonNode node = mapper.readTree(m.getPayload());
+                    // an EVENTS batch holds events of a single topic
+                    JsonNode first = node.has("events") ? node.path("events").path(0) : node;
+                    String event = first.path("event").asText(null);
+                    deliverSequenced(m.getGroupId(), Topic.ofEvent(event), m.getPayload());
+                } catch (Exception ignored) {
+                }
+            }
+            case TYPING -> {
+                try {
+                    JsonNode node = mapper.readTree(m.getPayload());
+                    int userId = node.path("userId").asInt();
+                    if ("stop".equals(node.path("op").asText())) {
+                        typing.stop(m.getGroupId(), userId);
+                    } else {
+                        typing.touch(m.getGroupId(), userId, node.path("userName").asText(""), System.currentTimeMillis());
+                    }
+                } catch (Exception ignored) {
+                }
+            }
+            case FORWARD -> {
+                try {
+                    JsonNode node = mapper.readTree(m.getPayload());
+                    routeChat(ChatMessage.of(node.path("f")), node.path("h").asInt(),
+                            node.path("o").asText(m.getOrigin()), node.path("s").asInt());
+                } catch (Exception ignored) {
+                }
+            }
+            case ACK -> {
+                try {
+                    JsonNode node = mapper.readTree(m.getPayload());
+                    ack(bus.nodeId(), node.path("s").asInt(), m.getGroupId(),
+                            node.path("c").asText(), node.path("d").asBoolean());
+                } catch (Exception ignored) {
+                }
+            }
+            case RECEIPTS -> {
+                try {
+                    JsonNode node = mapper.readTree(m.getPayload());
+                    for (Map.Entry<String, JsonNode> e : node.path("markers").properties()) {
+                        readMarkers.applyRemote(Integer.parseInt(e.getKey()), m.getGroupId(), e.getValue().asInt());
+                    }
+                    deliverLocal(m.getGroupId(), Topic.RECEIPTS, m.getPayload());
+                } catch (Exception ignored) {
+                }
+            }
+            case PRESENCE -> {
+                try {
+                    JsonNode node = mapper.readTree(m.getPayload());
+                    presence.applyRemote(
+                            m.getOrigin(),
+                            m.getGroupId(),
+                            "join".equals(node.path("op").asText()),
+                            node.path("v").asLong(),
+                            node.path("userId").asInt(),
+                            node.path("userName").asText("")
+                    );
+                    broadcastOnline(m.getGroupId());
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private void publishPresence(int groupId, PresenceRegistry.Delta delta, int userId, String userName) {
+        if (delta == null) return;
+        ObjectNode relay = mapper.createObjectNode();
+        relay.put("op", delta.join ? "join" : "leave");
+        relay.put("v", delta.version);
+        relay.put("userId", userId);
+        relay.put("userName", userName);
+        bus.publish(ClusterMessage.Kind.PRESENCE, groupId, relay.toString());
+    }
+
+    private void stopTyping(int groupId, int userId) {
+        if (typing.stop(groupId, userId)) {
+            ObjectNode relay = mapper.createObjectNode();
+            relay.put("op", "stop");
+            relay.put("userId", userId);
+            relay(ClusterMessage.Kind.TYPING, groupId, relay.toString());
+        }
+    }
+
+    private void tick() {
+        flushTyping();
+        flushReceipts();
+        heartbeat();
+        long nowMillis = System.currentTimeMillis();
+        if (nowMillis - lastFloodSweep > 60_000) {
+            lastFloodSweep = nowMillis;
+            flood.sweep(System.nanoTime());
+        }
+        replay.evictIdle(System.currentTimeMillis());
+        dedupe.evictIdle(System.currentTimeMillis());
+        if (router != null) {
+            try {
+                long now = System.currentTimeMillis();
+                router.update(presence.liveNodes(), now);
+                router.releaseHeld(now);
+                history.dropUntrusted();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Pings this tick's slice of sessions and reaps the ones that stayed silent
+     * (no frame, no pong) for longer than the idle timeout: dead peers and
+     * half-open connections that would otherwise never see afterConnectionClosed.
+     */
+    private void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            for (SessionRegistry.SessionRecord rec : sessions.heartbeatSlice()) {
+                // the last sign of life, not now: a silent socket is not "seen"
+                lastSeen.seen(rec.userId, rec.groupIds(), rec.lastSeen);
+                if (!sessions.expired(rec, now)) {
+                    ping(rec);
+                    continue;
+                }
+                if (sessions.close(rec.session) != null) {
+                    leaveGroups(rec);
+                }
+                try {
+                    rec.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (Exception ignored) {
+                }
+            }
+        } catch (Exception ignored) {
+            // a failed tick must not cancel the scheduled task
+        }
+    }
+
+    /** On a sender thread; skipped while the socket's queue is being written, the ticker never waits on a socket. */
+    private void ping(SessionRegistry.SessionRecord rec) {
+        WebSocketSession s = rec.session;
+        if (!s.isOpen() || rec.outbound.draining()) return;
+        try {
+            senders.execute(() -> {
+                synchronized (s) {
+                    try {
+                        if (s.isOpen()) s.sendMessage(new PingMessage());
+                    } catch (Exception ignored) {
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    /**
+     * One frame per group whose typer set changed during the last tick:
+     * {"type":"typing","groupId":1,"users":[{"userId":2,"userName":"Ann"}]}.
+     */
+    private void flushTyping() {
+        try {
+            typing.drain(System.currentTimeMillis()).forEach((groupId, typers) -> {
+                ObjectNode payload = mapper.createObjectNode();
+                payload.put("type", "typing");
+                payload.put("groupId", groupId);
+                ArrayNode users = payload.putArray("users");
+                for (TypingCoalescer.Typer t : typers) {
+                    users.addObject()
+                            .put("userId", t.userId)
+                            .put("userName", t.userName);
+                }
+                broadcast(groupId, Topic.TYPING, payload);
+            });
+        } catch (Exception ignored) {
+            // a failed tick must not cancel the scheduled task
+        }
+    }
+
+    /**
+     * One frame per group whose read markers moved during the last tick:
+     * {"type":"receipts","groupId":1,"markers":{"2":345}} (userId -> last read messageId).
+     * Not sequenced: a client that missed some asks /api/messages/read instead.
+     */
+    private void flushReceipts() {
+        try {
+            readMarkers.drainReceipts().forEach((groupId, users) -> {
+                ObjectNode payload = mapper.createObjectNode();
+                payload.put("type", "receipts");
+                payload.put("groupId", groupId);
+                ObjectNode markers = payload.putObject("markers");
+                users.forEach((userId, messageId) -> markers.put(String.valueOf(userId), messageId));
+                String json = payload.toString();
+                deliverLocal(groupId, Topic.RECEIPTS, json);
+                relay(ClusterMessage.Kind.RECEIPTS, groupId, json);
+            });
+        } catch (Exception ignored) {
+            // a failed tick must not cancel the scheduled task
+        }
     }
 
     private void broadcastOnline(int groupId) {
-        Set<WebSocketSession> sessions = groupSessions.get(groupId);
-        if (sessions == null) return;
-
-        // Deduplicate by userId so один пользователь в нескольких сессиях не удваивает онлайн
-        List<String> users = sessions.stream()
-                .map(sessionInfo::get)
-                .filter(info -> info != null)
-                .collect(Collectors.collectingAndThen(
-                        Collectors.toMap(i -> i.userId, i -> i.userName, (a, b) -> a),
-                        m -> m.values().stream().collect(Collectors.toList())
-                ));
+        if (sessions.members(groupId, Topic.PRESENCE).length == 0) return;
+
+        // cluster-wide, already deduplicated by userId; served from the local replica
+        List<String> users = presence.onlineUsers(groupId);
 
         ObjectNode payload = mapper.createObjectNode();
         payload.put("type", "online");
         payload.put("groupId", groupId);
         payload.putPOJO("users", users);
 
-        broadcast(groupId, payload);
+        broadcast(groupId, Topic.PRESENCE, payload);
     }
 
-    private void saveMessage(int groupId, int userId, String text, Integer resourceId, String resourceTitle, Integer taskId) {
-        String sql = "INSERT INTO messages(group_id, user_id, content, resource_id, resource_title, task_id, timestamp) VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+    /** @return the stored message, or null if its clientMsgId was claimed already (a retry) */
+    private ChatMessage saveMessage(ChatMessage message) throws SQLException {
+        Integer resourceId = message.resourceId();
+        Integer taskId = message.taskId();
+        String clientMsgId = message.clientMsgId();
+        // with a clientMsgId the row is only inserted if its claim is: a retry inserts nothing.
+        // search_tsv is written here (it is a plain column, see SearchBackfill)
+        String sql = clientMsgId == null
+                ? "INSERT INTO messages(group_id, user_id, content, resource_id, resource_title, task_id, client_msg_id, timestamp, search_tsv) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, to_tsvector('simple', coalesce(?, ''))) "
+                        + "RETURNING message_id, timestamp"
+                : "WITH claim AS (INSERT INTO message_client_ids(user_id, client_msg_id) VALUES (?, ?) "
+                        + "ON CONFLICT DO NOTHING RETURNING user_id) "
+                        + "INSERT INTO messages(group_id, user_id, content, resource_id, resource_title, task_id, client_msg_id, timestamp, search_tsv) "
+                        + "SELECT ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, to_tsvector('simple', coalesce(?, '')) FROM claim "
+                        + "RETURNING message_id, timestamp";
         try (Connection conn = Database.get();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, groupId);
-            ps.setInt(2, userId);
-            ps.setString(3, text);
-            if (resourceId == null || resourceId == 0) ps.setNull(4, java.sql.Types.INTEGER); else ps.setInt(4, resourceId);
-            if (resourceTitle == null) ps.setNull(5, java.sql.Types.VARCHAR); else ps.setString(5, resourceTitle);
-            if (taskId == null || taskId == 0) ps.setNull(6, java.sql.Types.INTEGER); else ps.setInt(6, taskId);
-            ps.executeUpdate();
-        } catch (Exception ignored) {
-            // intentionally ignore to avoid breaking websocket flow
+            int i = 0;
+            if (clientMsgId != null) {
+                ps.setInt(1, message.userId());
+                ps.setString(2, clientMsgId);
+                i = 2;
+            }
+            ps.setInt(i + 1, message.groupId());
+            ps.setInt(i + 2, message.userId());
+            ps.setString(i + 3, message.text());
+            if (resourceId == null || resourceId == 0) ps.setNull(i + 4, java.sql.Types.INTEGER); else ps.setInt(i + 4, resourceId);
+            if (message.resourceTitle() == null) ps.setNull(i + 5, java.sql.Types.VARCHAR); else ps.setString(i + 5, message.resourceTitle());
+            if (taskId == null || taskId == 0) ps.setNull(i + 6, java.sql.Types.INTEGER); else ps.setInt(i + 6, taskId);
+            if (clientMsgId == null) ps.setNull(i + 7, java.sql.Types.VARCHAR); else ps.setString(i + 7, clientMsgId);
+            ps.setString(i + 8, message.text());
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? message.stored(rs.getInt(1), rs.getString(2)) : null;
         }
     }
 }
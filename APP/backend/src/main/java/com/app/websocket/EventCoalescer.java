@@ -0,0 +1,196 @@
+package com.app.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per (group, topic) batching of EVENT frames.
+ *
+ * A bulk edit (50 tasks re-prioritised in a row) would otherwise be 50
+ * frames and, for clients that refetch, 50 list requests. Events of a group
+ * are held until the group has been quiet for windowMillis, but never longer
+ * than maxDelayMillis after the first one, and then go out as one frame:
+ * {"type":"EVENTS","groupId":12,"events":[EVENT...],"ids":{"taskId":[3,5]}}.
+ * A batch of one is sent as the plain EVENT frame.
+ *
+ * Updates of the same entity inside a batch collapse into the latest one
+ * (patches are merged), so "ids" and "events" name each entity once.
+ */
+class EventCoalescer {
+
+    /** Events whose snapshot replaces an earlier one of the same entity. */
+    private static final Set<String> COLLAPSIBLE = Set.of("TASK_UPDATED", "TASK_STATUS_CHANGED", "GROUP_UPDATED");
+    private static final String[] ID_FIELDS = {"taskId", "resourceId"};
+
+    private static final class Batch {
+        final long firstAt;
+        long lastAt;
+        final List<ObjectNode> events = new ArrayList<>();
+
+        Batch(long now) {
+            this.firstAt = now;
+            this.lastAt = now;
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final long windowMillis;
+    private final long maxDelayMillis;
+    private final int maxEvents;
+    // (groupId << 8) | topic ordinal -> open batch
+    private final Map<Long, Batch> batches = new ConcurrentHashMap<>();
+
+    private final AtomicLong eventsIn = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+
+    EventCoalescer(long windowMillis, long maxDelayMillis, int maxEvents) {
+        this.windowMillis = windowMillis;
+        this.maxDelayMillis = Math.max(windowMillis, maxDelayMillis);
+        this.maxEvents = Math.max(1, maxEvents);
+    }
+
+    /** Window 0 = no batching, every event is sent as it comes. */
+    boolean enabled() {
+        return windowMillis > 0;
+    }
+
+    boolean isEmpty() {
+        return batches.isEmpty();
+    }
+
+    /**
+     * Adds an EVENT frame to its group's batch.
+     *
+     * @return milliseconds after which the batch must be checked ({@link #take}),
+     *         or -1 if a check is already scheduled
+     */
+    synchronized long add(int groupId, Topic topic, ObjectNode event, long now) {
+        eventsIn.incrementAndGet();
+        long key = key(groupId, topic);
+        Batch batch = batches.get(key);
+        boolean opened = batch == null;
+        if (opened) {
+            batch = new Batch(now);
+            batches.put(key, batch);
+        }
+        batch.lastAt = now;
+        collapse(batch.events, event);
+        batch.events.add(event);
+
+        if (batch.events.size() >= maxEvents) return 0;
+        return opened ? windowMillis : -1;
+    }
+
+    /**
+     * Removes and returns the batch if it is due (or force), else null.
+     * A batch that is not due yet stays; see {@link #dueIn}.
+     */
+    synchronized List<ObjectNode> take(int groupId, Topic topic, long now, boolean force) {
+        long key = key(groupId, topic);
+        Batch batch = batches.get(key);
+        if (batch == null) return null;
+        if (!force && batch.events.size() < maxEvents && dueAt(batch) > now) return null;
+        batches.remove(key);
+        framesOut.incrementAndGet();
+        return batch.events;
+    }
+
+    /** Milliseconds until the open batch is due, -1 if there is none. */
+    synchronized long dueIn(int groupId, Topic topic, long now) {
+        Batch batch = batches.get(key(groupId, topic));
+        return batch == null ? -1 : Math.max(0, dueAt(batch) - now);
+    }
+
+    /** The frame for a taken batch: the event itself, or an EVENTS frame. */
+    ObjectNode frame(int groupId, List<ObjectNode> events) {
+        if (events.size() == 1) return events.get(0);
+
+        ObjectNode frame = mapper.createObjectNode();
+        frame.put("type", "EVENTS");
+        frame.put("groupId", groupId);
+        ArrayNode list = frame.putArray("events");
+        ObjectNode ids = frame.putObject("ids");
+        for (String field : ID_FIELDS) {
+            Set<Integer> seen = new LinkedHashSet<>();
+            for (ObjectNode e : events) {
+                if (e.has(field)) seen.add(e.path(field).asInt());
+            }
+            if (!seen.isEmpty()) {
+                ArrayNode arr = ids.putArray(field);
+                seen.forEach(arr::add);
+            }
+        }
+        events.forEach(list::add);
+        return frame;
+    }
+
+    long getEventsIn() {
+        return eventsIn.get();
+    }
+
+    long getCollapsed() {
+        return collapsed.get();
+    }
+
+    long getFramesOut() {
+        return framesOut.get();
+    }
+
+    private long dueAt(Batch batch) {
+        return Math.min(batch.lastAt + windowMillis, batch.firstAt + maxDelayMillis);
+    }
+
+    /** Drops earlier updates of the entity that the new event supersedes; carries their patch over. */
+    private void collapse(List<ObjectNode> pending, ObjectNode event) {
+        String type = event.path("event").asText("");
+        boolean update = COLLAPSIBLE.contains(type);
+        if (!update && !type.endsWith("_DELETED")) return;
+
+        String entity = entityKey(event);
+        if (entity == null) return;
+
+        Iterator<ObjectNode> it = pending.iterator();
+        while (it.hasNext()) {
+            ObjectNode earlier = it.next();
+            if (!COLLAPSIBLE.contains(earlier.path("event").asText("")) || !entity.equals(entityKey(earlier))) {
+                continue;
+            }
+            if (update && earlier.has("patch") && event.has("patch")) {
+                ObjectNode merged = ((ObjectNode) earlier.get("patch")).deepCopy();
+                merged.setAll((ObjectNode) event.get("patch"));
+                event.set("patch", merged);
+            }
+            it.remove();
+            collapsed.incrementAndGet();
+        }
+    }
+
+    /** "TASK:3", "GROUP:12" ...; null for events that do not name one entity. */
+    private static String entityKey(JsonNode event) {
+        String type = event.path("event").asText("");
+        String kind = type.substring(0, Math.max(0, type.indexOf('_')));
+        JsonNode id = switch (kind) {
+            case "TASK" -> event.get("taskId");
+            case "RESOURCE" -> event.get("resourceId");
+            case "GROUP" -> event.get("groupId");
+            default -> null;
+        };
+        return id == null ? null : kind + ":" + id.asText();
+    }
+
+    private static long key(int groupId, Topic topic) {
+        return ((long) groupId << 8) | topic.ordinal();
+    }
+}
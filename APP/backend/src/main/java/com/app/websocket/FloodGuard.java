@@ -0,0 +1,182 @@
+package com.app.websocket;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limits for "message" frames, and for "read" frames whose id can only
+ * be checked in the database, per socket and per user (all of a user's tabs
+ * together), so one scripted client cannot turn thousands of frames a second
+ * into inserts, group broadcasts or queries.
+ *
+ * Each limit is a token bucket kept as a single long (GCRA: the "theoretical
+ * arrival time" of the next frame), updated with one CAS and no lock:
+ * a frame passes while that time is at most burst-1 intervals ahead of now.
+ *
+ * Response is graduated per socket: every dropped frame is a strike; the
+ * first strike after a quiet cool-down answers with a "rateLimited" frame,
+ * closeAfter strikes without a cool-down close the socket (POLICY_VIOLATION).
+ */
+final class FloodGuard {
+
+    enum Verdict {
+        PASS,
+        /** Dropped silently. */
+        DROP,
+        /** Dropped; tell the client to slow down. */
+        WARN,
+        /** Dropped; close the socket. */
+        CLOSE
+    }
+
+    /** One bucket plus the strike state of its socket (unused for user buckets). */
+    static final class Bucket {
+        private static final AtomicLongFieldUpdater<Bucket> TAT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "tat");
+
+        // nanoTime has no fixed origin: start "full" from now, not from 0
+        private volatile long tat = System.nanoTime();
+        // strikes are only touched by the socket's own (serial) frame handling
+        private int strikes;
+        private long lastDrop;
+        volatile long dropped;
+    }
+
+    private final long sessionInterval;
+    private final long sessionTolerance;
+    private final long userInterval;
+    private final long userTolerance;
+    private final int closeAfter;
+    private final long coolDownNanos;
+
+    private final IntObjectMap<Bucket> users = new IntObjectMap<>();
+
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder droppedSession = new LongAdder();
+    private final LongAdder droppedUser = new LongAdder();
+    private final LongAdder warned = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+
+    /**
+     * @param sessionRate frames per second per socket; a rate of 0 disables that limit
+     * @param closeAfter  strikes before the socket is closed
+     */
+    FloodGuard(double sessionRate, int sessionBurst, double userRate, int userBurst,
+               int closeAfter, long coolDownMillis) {
+        this.sessionInterval = interval(sessionRate);
+        this.sessionTolerance = sessionInterval * Math.max(0, sessionBurst - 1);
+        this.userInterval = interval(userRate);
+        this.userTolerance = userInterval * Math.max(0, userBurst - 1);
+        this.closeAfter = Math.max(1, closeAfter);
+        this.coolDownNanos = coolDownMillis * 1_000_000L;
+    }
+
+    private static long interval(double perSecond) {
+        return perSecond <= 0 ? 0 : (long) (1_000_000_000L / perSecond);
+    }
+
+    /** A "message" frame from the socket; now from System.nanoTime(). */
+    Verdict onMessage(Bucket session, int userId, long now) {
+        boolean sessionOk = acquire(session, sessionInterval, sessionTolerance, now);
+        boolean userOk = sessionOk && acquire(user(userId), userInterval, userTolerance, now);
+        if (sessionOk && userOk) {
+            passed.increment();
+            return Verdict.PASS;
+        }
+
+        (sessionOk ? droppedUser : droppedSession).increment();
+        session.dropped++;
+        session.strikes = now - session.lastDrop > coolDownNanos ? 1 : session.strikes + 1;
+        session.lastDrop = now;
+
+        if (session.strikes >= closeAfter) {
+            closed.increment();
+            return Verdict.CLOSE;
+        }
+        if (session.strikes == 1) {
+            warned.increment();
+            return Verdict.WARN;
+        }
+        return Verdict.DROP;
+    }
+
+    /** How long until the socket's next frame would pass its own bucket. */
+    long retryAfterMillis(Bucket session, long now) {
+        return Math.max(0, session.tat - now - sessionTolerance) / 1_000_000L;
+    }
+
+    private static boolean acquire(Bucket b, long interval, long tolerance, long now) {
+        if (interval == 0) return true;
+        for (;;) {
+            long tat = b.tat;
+            long base = Math.max(tat, now);
+            if (base - now > tolerance) {
+                return false;
+            }
+            if (Bucket.TAT.compareAndSet(b, tat, base + interval)) {
+                return true;
+            }
+        }
+    }
+
+    private Bucket user(int userId) {
+        Bucket b = users.get(userId);
+        if (b != null) return b;
+        synchronized (users) {
+            b = users.get(userId);
+            if (b == null) {
+                b = new Bucket();
+                users.put(userId, b);
+            }
+            return b;
+        }
+    }
+
+    /** Forgets user buckets that are full again: a new bucket would behave the same. */
+    void sweep(long now) {
+        List<Integer> idle = new ArrayList<>();
+        users.forEachEntry((userId, b) -> {
+            if (b.tat <= now) idle.add(userId);
+        });
+        synchronized (users) {
+            for (int userId : idle) {
+                Bucket b = users.get(userId);
+                if (b != null && b.tat <= now) users.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Counters plus the sockets with the most dropped frames, to find the
+     * abusive clients: [{sid, userId, dropped}].
+     */
+    Map<String, Object> stats(SessionRegistry sessions, int top) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("passed", passed.sum());
+        out.put("droppedSession", droppedSession.sum());
+        out.put("droppedUser", droppedUser.sum());
+        out.put("warned", warned.sum());
+        out.put("closed", closed.sum());
+
+        List<SessionRegistry.SessionRecord> offenders = new ArrayList<>();
+        sessions.forEach(r -> {
+            if (r.flood.dropped > 0) offenders.add(r);
+        });
+        offenders.sort(Comparator.comparingLong((SessionRegistry.SessionRecord r) -> r.flood.dropped).reversed());
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (SessionRegistry.SessionRecord r : offenders.subList(0, Math.min(top, offenders.size()))) {
+            Map<String, Object> o = new LinkedHashMap<>();
+            o.put("sid", r.sid);
+            o.put("userId", r.userId);
+            o.put("dropped", r.flood.dropped);
+            list.add(o);
+        }
+        out.put("topSessions", list);
+        return out;
+    }
+}
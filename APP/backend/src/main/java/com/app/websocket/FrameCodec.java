@@ -0,0 +1,294 @@
+package com.app.websocket;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wire encodings of /ws/chat, chosen by the Sec-WebSocket-Protocol handshake:
+ *  - "chat.json" or no subprotocol: JSON text frames (what browsers use);
+ *  - "chat.smile": the same messages as Jackson Smile binary frames. Repeated
+ *    field names ("groupId", "userName", ...) and short values are written
+ *    once per frame and referenced afterwards, numbers are not spelled out.
+ *
+ * Internally a frame stays a JSON string (replay ring, cluster bus). An
+ * {@link Outbound} converts it at most once per encoding, no matter how many
+ * sessions receive it.
+ *
+ * Inbound frames are read with a streaming parser straight into an
+ * {@link InboundFrame} record (no JsonNode tree per frame); chat messages are
+ * written with a generator into a per-thread reusable buffer.
+ */
+final class FrameCodec {
+
+    static final String JSON = "chat.json";
+    static final String SMILE = "chat.smile";
+    /** Server preference; the client's order decides (first supported one wins). */
+    static final String[] PROTOCOLS = {SMILE, JSON};
+    /** A write buffer that grew past this is not kept for the next frame. */
+    private static final int MAX_POOLED_CHARS = 16 * 1024;
+    private static final int MAX_CLIENT_MSG_ID = 64;
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final ObjectMapper smile = new ObjectMapper(SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build());
+
+    private final ThreadLocal<CharArrayWriter> writeBuffers =
+            ThreadLocal.withInitial(() -> new CharArrayWriter(512));
+
+    private final AtomicLong textFrames = new AtomicLong();
+    private final AtomicLong textBytes = new AtomicLong();
+    private final AtomicLong binaryFrames = new AtomicLong();
+    private final AtomicLong binaryBytes = new AtomicLong();
+    private final AtomicLong smileEncodes = new AtomicLong();
+    private final AtomicLong smileEncodeNanos = new AtomicLong();
+
+    static boolean isSmile(WebSocketSession session) {
+        return SMILE.equals(session.getAcceptedProtocol());
+    }
+
+    InboundFrame read(String text) throws IOException {
+        try (JsonParser p = json.getFactory().createParser(text)) {
+            return read(p);
+        }
+    }
+
+    InboundFrame read(BinaryMessage message) throws IOException {
+        ByteBuffer buf = message.getPayload().duplicate();
+        JsonParser parser;
+        if (buf.hasArray()) {
+            parser = smile.getFactory().createParser(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        } else {
+            byte[] bytes = new byte[buf.remaining()];
+            buf.get(bytes);
+            parser = smile.getFactory().createParser(bytes);
+        }
+        try (JsonParser p = parser) {
+            return read(p);
+        }
+    }
+
+    /** Serialises a chat message; the char buffer is reused by the next frame of this thread. */
+    String write(ChatMessage message) {
+        CharArrayWriter out = writeBuffers.get();
+        out.reset();
+        try (JsonGenerator g = json.getFactory().createGenerator(out)) {
+            message.writeTo(g);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String frame = out.toString();
+        if (out.size() > MAX_POOLED_CHARS) {
+            writeBuffers.remove();
+        }
+        return frame;
+    }
+
+    /** Fields may come in any order; unknown ones (and wrongly typed values) are skipped. */
+    private static InboundFrame read(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            return new InboundFrame.Other("");
+        }
+
+        String type = "";
+        int groupId = 0;
+        int[] groupIds = null;
+        int topics = 0;
+        String epoch = null;
+        Map<Integer, Long> groups = null;
+        long lastSeq = 0;
+        String text = "";
+        String timestamp = null;
+        Integer resourceId = null;
+        String resourceTitle = null;
+        Integer taskId = null;
+        String clientMsgId = null;
+        int messageId = 0;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            boolean scalar = value.isScalarValue();
+            switch (field) {
+                case "type" -> type = scalar ? p.getValueAsString("") : skip(p, "");
+                case "groupId" -> groupId = scalar ? p.getValueAsInt() : skip(p, 0);
+                case "lastSeq" -> lastSeq = scalar ? p.getValueAsLong() : skip(p, 0L);
+                case "epoch" -> epoch = scalar ? p.getValueAsString() : skip(p, null);
+                case "text" -> text = scalar ? p.getValueAsString("") : skip(p, "");
+                case "timestamp" -> timestamp = scalar ? p.getValueAsString() : skip(p, null);
+                case "resourceId" -> resourceId = scalar && value != JsonToken.VALUE_NULL ? Integer.valueOf(p.getValueAsInt()) : skip(p, null);
+                case "resourceTitle" -> resourceTitle = scalar ? p.getValueAsString() : skip(p, null);
+                case "taskId" -> taskId = scalar && value != JsonToken.VALUE_NULL ? Integer.valueOf(p.getValueAsInt()) : skip(p, null);
+                case "clientMsgId" -> clientMsgId = scalar ? p.getValueAsString() : skip(p, null);
+                case "messageId" -> messageId = scalar ? p.getValueAsInt() : skip(p, 0);
+                case "groupIds" -> groupIds = value == JsonToken.START_ARRAY ? readInts(p) : skip(p, null);
+                case "topics" -> topics = value == JsonToken.START_ARRAY ? readTopics(p) : skip(p, 0);
+                case "groups" -> groups = value == JsonToken.START_OBJECT ? readSeqs(p) : skip(p, null);
+                default -> p.skipChildren();
+            }
+        }
+
+        int mask = topics == 0 ? Topic.ALL : topics;
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "join":
+                return new InboundFrame.Join(groupId == 0 ? new int[0] : new int[]{groupId}, mask);
+            case "joinmultiple":
+                return new InboundFrame.Join(groupIds == null ? new int[0] : groupIds, mask);
+            case "resume":
+                if (groups == null) {
+                    groups = new LinkedHashMap<>();
+                    groups.put(groupId, lastSeq);
+                }
+                return new InboundFrame.Resume(epoch == null ? "" : epoch, groups);
+            case "subscribe":
+                return new InboundFrame.Subscribe(groupId, mask);
+            case "message":
+                return new InboundFrame.Message(groupId, text, timestamp,
+                        resourceId, resourceId == null ? null : (resourceTitle == null ? "" : resourceTitle), taskId,
+                        clientMsgId == null || clientMsgId.isEmpty() || clientMsgId.length() > MAX_CLIENT_MSG_ID
+                                ? null : clientMsgId);
+            case "typing":
+                return new InboundFrame.Typing(groupId);
+            case "read":
+                return new InboundFrame.Read(groupId, messageId);
+            default:
+                return new InboundFrame.Other(type);
+        }
+    }
+
+    private static <T> T skip(JsonParser p, T fallback) throws IOException {
+        p.skipChildren();
+        return fallback;
+    }
+
+    private static int[] readInts(JsonParser p) throws IOException {
+        int[] ids = new int[8];
+        int n = 0;
+        for (JsonToken t = p.nextToken(); t != JsonToken.END_ARRAY; t = p.nextToken()) {
+            if (!t.isScalarValue()) {
+                p.skipChildren();
+                continue;
+            }
+            if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+            ids[n++] = p.getValueAsInt();
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    private static int readTopics(JsonParser p) throws IOException {
+        int mask = 0;
+        for (JsonToken t = p.nextToken(); t != JsonToken.END_ARRAY; t = p.nextToken()) {
+            if (t.isScalarValue()) {
+                mask |= Topic.bit(p.getValueAsString(""));
+            } else {
+                p.skipChildren();
+            }
+        }
+        return mask;
+    }
+
+    /** {"12":40,"13":7} -> groupId -> last seq */
+    private static Map<Integer, Long> readSeqs(JsonParser p) throws IOException {
+        Map<Integer, Long> seqs = new LinkedHashMap<>();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if (!t.isScalarValue()) {
+                p.skipChildren();
+                continue;
+            }
+            try {
+                seqs.put(Integer.parseInt(name), p.getValueAsLong());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return seqs;
+    }
+
+    Outbound outbound(String frame) {
+        return new Outbound(frame);
+    }
+
+    /** One frame on its way to a set of sessions. */
+    final class Outbound {
+        private final String frame;
+        private TextMessage text;
+        private int textLength = -1;
+        private byte[] binary;
+
+        private Outbound(String frame) {
+            this.frame = frame;
+        }
+
+        synchronized WebSocketMessage<?> messageFor(WebSocketSession session) throws IOException {
+            if (isSmile(session)) {
+                if (binary == null) {
+                    long start = System.nanoTime();
+                    binary = smile.writeValueAsBytes(json.readTree(frame));
+                    smileEncodeNanos.addAndGet(System.nanoTime() - start);
+                    smileEncodes.incrementAndGet();
+                }
+                binaryFrames.incrementAndGet();
+                binaryBytes.addAndGet(binary.length);
+                // the container consumes the buffer, so every session gets its own view
+                return new BinaryMessage(ByteBuffer.wrap(binary));
+            }
+
+            if (text == null) {
+                text = new TextMessage(frame);
+                textLength = frame.getBytes(StandardCharsets.UTF_8).length;
+            }
+            textFrames.incrementAndGet();
+            textBytes.addAndGet(textLength);
+            return text;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // counters: bytes and encode cost per message, per encoding
+    // (before permessage-deflate, which the container applies afterwards)
+    // ---------------------------------------------------------------------
+
+    long getTextFrames() {
+        return textFrames.get();
+    }
+
+    long getTextBytes() {
+        return textBytes.get();
+    }
+
+    long getBinaryFrames() {
+        return binaryFrames.get();
+    }
+
+    long getBinaryBytes() {
+        return binaryBytes.get();
+    }
+
+    long getSmileEncodes() {
+        return smileEncodes.get();
+    }
+
+    long getSmileEncodeNanos() {
+        return smileEncodeNanos.get();
+    }
+}
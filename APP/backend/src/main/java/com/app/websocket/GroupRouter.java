@@ -0,0 +1,154 @@
+package com.app.websocket;
+
+import com.app.websocket.cluster.ConsistentHashRing;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owner routing (chat.cluster.routing=owner): each group belongs to exactly one
+ * live node on a consistent-hash ring. The owner persists and orders chat
+ * messages of its groups and sends them only to nodes that have sessions in
+ * the group; other nodes forward chat frames to it.
+ *
+ * When the set of live nodes changes, ownership moves with a short handoff:
+ * a node that just acquired a group holds that group's frames until the
+ * handoff window ends, so the previous owner can drain frames already
+ * forwarded to it, and the previous owner keeps accepting them meanwhile.
+ * Held frames are replayed on the router's own thread (they insert into the
+ * database), never on the caller's.
+ */
+class GroupRouter {
+
+    private final String nodeId;
+    private final long handoffMillis;
+
+    private volatile ConsistentHashRing ring;
+    private volatile ConsistentHashRing previous;
+    private volatile long handoffUntil;
+    private final Map<Integer, Queue<Runnable>> held = new ConcurrentHashMap<>();
+    // groups with a replay submitted; one at a time per group keeps arrival order
+    private final Set<Integer> releasing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService releaser;
+
+    GroupRouter(String nodeId, long handoffMillis) {
+        this.nodeId = nodeId;
+        this.handoffMillis = handoffMillis;
+        this.ring = new ConsistentHashRing(Set.of(nodeId));
+        this.previous = ring;
+        this.releaser = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "group-release");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    /** Rebuilds the ring when the set of live nodes changed. */
+    void update(Set<String> liveNodes, long now) {
+        if (liveNodes.equals(ring.nodes())) return;
+        previous = ring;
+        ring = new ConsistentHashRing(liveNodes);
+        handoffUntil = now + handoffMillis;
+    }
+
+    String owner(int groupId) {
+        return ring.owner(groupId);
+    }
+
+    boolean isOwner(int groupId) {
+        return nodeId.equals(ring.owner(groupId));
+    }
+
+    /** We own the group now but somebody else did before the last ring change. */
+    private boolean mustHold(int groupId, long now) {
+        return now < handoffUntil && isOwner(groupId) && !nodeId.equals(previous.owner(groupId));
+    }
+
+    /** We owned the group before the last ring change and the handoff is still running. */
+    boolean releasing(int groupId, long now) {
+        return now < handoffUntil && nodeId.equals(previous.owner(groupId));
+    }
+
+    /**
+     * Queues the frame behind the group's held frames if it must wait.
+     * Checked and queued under the group's entry, so a frame either waits or
+     * finds nothing held that is older than itself.
+     *
+     * @return false if the caller must run it now
+     */
+    boolean holdIfNeeded(int groupId, long now, Runnable frame) {
+        boolean[] held = {false};
+        this.held.compute(groupId, (k, q) -> {
+            if (q == null && !mustHold(groupId, now)) return null;
+            if (q == null) q = new ArrayDeque<>();
+            q.add(frame);
+            held[0] = true;
+            return q;
+        });
+        return held[0];
+    }
+
+    /**
+     * After the handoff window, hands each group with held frames to the
+     * releaser, which replays them in arrival order. Returns right away.
+     */
+    void releaseHeld(long now) {
+        if (held.isEmpty() || now < handoffUntil) return;
+
+        for (Integer groupId : held.keySet()) {
+            if (releasing.add(groupId)) {
+                releaser.execute(() -> release(groupId));
+            }
+        }
+    }
+
+    /**
+     * Runs the group's held frames. A frame leaves the queue only after it
+     * ran, and the entry goes (under the group's entry, like holdIfNeeded)
+     * only once the last one ran: frames arriving meanwhile queue up behind
+     * the older ones instead of overtaking them.
+     */
+    private void release(int groupId) {
+        try {
+            Runnable next = peek(groupId);
+            while (next != null) {
+                try {
+                    next.run();
+                } catch (Exception ignored) {
+                }
+                Runnable[] after = new Runnable[1];
+                held.computeIfPresent(groupId, (k, q) -> {
+                    q.poll();
+                    after[0] = q.peek();
+                    return after[0] == null ? null : q;
+                });
+                next = after[0];
+            }
+        } finally {
+            releasing.remove(groupId);
+        }
+    }
+
+    /** The queue is only touched under its entry. */
+    private Runnable peek(int groupId) {
+        Runnable[] head = new Runnable[1];
+        held.computeIfPresent(groupId, (k, queue) -> {
+            head[0] = queue.peek();
+            return queue;
+        });
+        return head[0];
+    }
+
+    void shutdown() {
+        releaser.shutdownNow();
+    }
+}
@@ -0,0 +1,40 @@
+package com.app.websocket;
+
+import java.util.Map;
+
+/**
+ * A decoded client frame. {@link FrameCodec#read} fills these straight from
+ * the streaming parser, without building a JsonNode tree; ids in frames are
+ * never trusted, the sender is the socket's user.
+ */
+sealed interface InboundFrame {
+
+    /** "join" (one group, none = all of the user's) or "joinMultiple"; topics is a Topic mask. */
+    record Join(int[] groupIds, int topics) implements InboundFrame {
+    }
+
+    /** "resume": last seen seq per group, and the epoch they belong to. */
+    record Resume(String epoch, Map<Integer, Long> groups) implements InboundFrame {
+    }
+
+    /** "subscribe": groupId 0 = every joined group. */
+    record Subscribe(int groupId, int topics) implements InboundFrame {
+    }
+
+    /** "message"; groupId 0 = the first joined group; clientMsgId (optional) makes retries idempotent. */
+    record Message(int groupId, String text, String timestamp,
+                   Integer resourceId, String resourceTitle, Integer taskId,
+                   String clientMsgId) implements InboundFrame {
+    }
+
+    record Typing(int groupId) implements InboundFrame {
+    }
+
+    /** "read": the newest message the user has seen in the group. */
+    record Read(int groupId, int messageId) implements InboundFrame {
+    }
+
+    /** Anything else: ignored, but still counts as a sign of life. */
+    record Other(String type) implements InboundFrame {
+    }
+}
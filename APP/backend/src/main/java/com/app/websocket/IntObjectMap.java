@@ -0,0 +1,198 @@
+package com.app.websocket;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * int -> V open-addressing hash map (linear probing, backward-shift deletes):
+ * no boxed keys, no per-entry node objects, two flat arrays.
+ *
+ * Writes take an exclusive lock. Reads are lock-free in the common case
+ * (optimistic StampedLock read, retried under the read lock if a write
+ * raced), which is what the fan-out path needs.
+ */
+final class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** keys and values are swapped together on resize, so a reader never mixes two tables. */
+    private static final class Table {
+        final int[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+
+    interface EntryVisitor<V> {
+        void visit(int key, V value);
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private int size;
+
+    V get(int key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            V v = find(table, key);
+            if (lock.validate(stamp)) {
+                return v;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(table, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    V put(int key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 2 > table.keys.length) {
+                resize(table.keys.length * 2);
+            }
+            Table t = table;
+            int mask = t.keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                if (t.values[i] == null) {
+                    t.keys[i] = key;
+                    t.values[i] = value;
+                    size++;
+                    return null;
+                }
+                if (t.keys[i] == key) {
+                    @SuppressWarnings("unchecked")
+                    V old = (V) t.values[i];
+                    t.values[i] = value;
+                    return old;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    V remove(int key) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int i = hash(key) & mask;
+            while (t.values[i] != null && t.keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (t.values[i] == null) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            V old = (V) t.values[i];
+
+            // backward-shift: pull later entries of the probe run into the hole
+            int hole = i;
+            for (int j = (i + 1) & mask; t.values[j] != null; j = (j + 1) & mask) {
+                int home = hash(t.keys[j]) & mask;
+                boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+                if (movable) {
+                    t.keys[hole] = t.keys[j];
+                    t.values[hole] = t.values[j];
+                    hole = j;
+                }
+            }
+            t.values[hole] = null;
+            size--;
+
+            if (t.keys.length > MIN_CAPACITY && size * 8 < t.keys.length) {
+                resize(t.keys.length / 2);
+            }
+            return old;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int capacity() {
+        return table.keys.length;
+    }
+
+    /** Visits every value under the read lock; keep the action short. */
+    void forEachValue(Consumer<V> action) {
+        long stamp = lock.readLock();
+        try {
+            Object[] values = table.values;
+            for (Object v : values) {
+                if (v != null) {
+                    @SuppressWarnings("unchecked")
+                    V value = (V) v;
+                    action.accept(value);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Like {@link #forEachValue}, with the key. */
+    @SuppressWarnings("unchecked")
+    void forEachEntry(EntryVisitor<V> action) {
+        long stamp = lock.readLock();
+        try {
+            Table t = table;
+            for (int i = 0; i < t.keys.length; i++) {
+                if (t.values[i] != null) {
+                    action.visit(t.keys[i], (V) t.values[i]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V find(Table t, int key) {
+        int mask = t.keys.length - 1;
+        int i = hash(key) & mask;
+        // bounded: an optimistic read may see a table mid-update
+        for (int n = 0; n < t.keys.length; n++) {
+            Object v = t.values[i];
+            if (v == null) return null;
+            if (t.keys[i] == key) return (V) v;
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    private void resize(int capacity) {
+        Table old = table;
+        Table t = new Table(Math.max(MIN_CAPACITY, capacity));
+        int mask = t.keys.length - 1;
+        for (int j = 0; j < old.keys.length; j++) {
+            if (old.values[j] == null) continue;
+            int i = hash(old.keys[j]) & mask;
+            while (t.values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            t.keys[i] = old.keys[j];
+            t.values[i] = old.values[j];
+        }
+        table = t;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,80 @@
+package com.app.websocket;
+
+import com.app.security.JwtUtil;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Authenticates /ws/chat once, at the handshake. Browsers cannot set headers
+ * on a WebSocket request, so the JWT comes as ?token=...; an
+ * "Authorization: Bearer" header is accepted too.
+ *
+ * On success the session attributes carry the verified userId and userName;
+ * the handler trusts only these, never ids sent in frames.
+ */
+class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    static final String USER_ID = "userId";
+    static final String USER_NAME = "userName";
+
+    private final MembershipIndex memberships;
+
+    JwtHandshakeInterceptor(MembershipIndex memberships) {
+        this.memberships = memberships;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        Map<String, Object> payload = JwtUtil.validateToken(token(request));
+        if (payload == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        try {
+            int userId = Integer.parseInt(String.valueOf(payload.get("sub")));
+            MembershipIndex.Entry entry = memberships.lookup(userId);
+            if (entry == null) {
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return false;
+            }
+            attributes.put(USER_ID, entry.userId);
+            attributes.put(USER_NAME, entry.userName);
+            return true;
+        } catch (NumberFormatException e) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        } catch (Exception e) {
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        // no-op
+    }
+
+    private static String token(ServerHttpRequest request) {
+        String fromQuery = UriComponentsBuilder.fromUri(request.getURI())
+                .build()
+                .getQueryParams()
+                .getFirst("token");
+        if (fromQuery != null && !fromQuery.isBlank()) {
+            return fromQuery;
+        }
+        String auth = request.getHeaders().getFirst("Authorization");
+        if (auth != null && auth.startsWith("Bearer ")) {
+            return auth.substring("Bearer ".length()).trim();
+        }
+        return null;
+    }
+}
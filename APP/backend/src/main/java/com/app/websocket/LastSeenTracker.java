@@ -0,0 +1,177 @@
+package com.app.websocket;
+
+import com.app.config.Database;
+import com.app.model.Membership;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * When users (and their memberships) were last seen on a chat socket.
+ *
+ * Connects, heartbeats and disconnects only raise a timestamp in memory;
+ * every flushMillis the raised ones are written to users.last_seen_at and
+ * memberships.last_seen_at in one batched transaction (GREATEST, so an
+ * instance with an older value cannot move them back). Member lists overlay
+ * what is not flushed yet.
+ *
+ * A flush takes the pending maps with one getAndSet; a seen() that merged
+ * into maps swapped out under it merges again into the new ones (raising is
+ * idempotent), so a timestamp that misses a flush goes with the next one,
+ * even a disconnect's last one.
+ */
+public class LastSeenTracker {
+
+    // userId -> ms, and userId << 32 | groupId -> ms, raised since the last flush
+    private record Pending(Map<Integer, Long> users, Map<Long, Long> memberships) {
+        Pending() {
+            this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+
+        void raise(int userId, int[] groupIds, long at) {
+            users.merge(userId, at, Math::max);
+            for (int groupId : groupIds) {
+                memberships.merge(key(userId, groupId), at, Math::max);
+            }
+        }
+    }
+
+    private final AtomicReference<Pending> pending = new AtomicReference<>(new Pending());
+    private final long flushMillis;
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong flushErrors = new AtomicLong();
+
+    public LastSeenTracker(long flushMillis) {
+        this.flushMillis = flushMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "last-seen");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Starts the write-behind flushes. */
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long key(int userId, int groupId) {
+        return ((long) userId << 32) | (groupId & 0xffffffffL);
+    }
+
+    /** The user was active at the given time, in each of the groups. */
+    public void seen(int userId, int[] groupIds, long at) {
+        Pending p = pending.get();
+        for (;;) {
+            p.raise(userId, groupIds, at);
+            Pending now = pending.get();
+            // still current: a flush swapping it later reads what was merged
+            if (now == p) return;
+            p = now;
+        }
+    }
+
+    /** Raises lastSeenAt / userLastSeenAt of a group's members, as loaded by MembershipRepository.findByGroupId. */
+    public void overlay(List<Membership> members) {
+        Pending p = pending.get();
+        Map<Integer, Long> users = p.users();
+        Map<Long, Long> memberships = p.memberships();
+        for (Membership m : members) {
+            Long user = users.get(m.getUserId());
+            if (user != null && after(user, m.getUserLastSeenAt())) {
+                m.setUserLastSeenAt(Instant.ofEpochMilli(user).toString());
+            }
+            Long member = memberships.get(key(m.getUserId(), m.getGroupId()));
+            if (member != null && after(member, m.getLastSeenAt())) {
+                m.setLastSeenAt(Instant.ofEpochMilli(member).toString());
+            }
+        }
+    }
+
+    private static boolean after(long millis, String stored) {
+        return stored == null || millis > Instant.parse(stored).toEpochMilli();
+    }
+
+    /** Writes the raised timestamps in one transaction; on failure they are merged back for the next round. */
+    public synchronized void flush() throws SQLException {
+        Pending current = pending.get();
+        if (current.users().isEmpty() && current.memberships().isEmpty()) return;
+        // until the commit member lists show the older stored values
+        Pending taken = pending.getAndSet(new Pending());
+        Map<Integer, Long> u = taken.users();
+        Map<Long, Long> m = taken.memberships();
+
+        flushes.incrementAndGet();
+        try {
+            Database.inTransaction(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE users SET last_seen_at = GREATEST(last_seen_at, ?) WHERE user_id = ?")) {
+                    for (Map.Entry<Integer, Long> e : u.entrySet()) {
+                        ps.setTimestamp(1, new Timestamp(e.getValue()));
+                        ps.setInt(2, e.getKey());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE memberships SET last_seen_at = GREATEST(last_seen_at, ?) WHERE user_id = ? AND group_id = ?")) {
+                    for (Map.Entry<Long, Long> e : m.entrySet()) {
+                        ps.setTimestamp(1, new Timestamp(e.getValue()));
+                        ps.setInt(2, (int) (e.getKey() >>> 32));
+                        ps.setInt(3, (int) (long) e.getKey());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                return null;
+            });
+            rowsWritten.addAndGet(u.size() + m.size());
+        } catch (SQLException | RuntimeException e) {
+            flushErrors.incrementAndGet();
+            // only flush() swaps, and it is synchronized: the current maps stay current
+            Pending next = pending.get();
+            u.forEach((k, v) -> next.users().merge(k, v, Math::max));
+            m.forEach((k, v) -> next.memberships().merge(k, v, Math::max));
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception ignored) {
+            // retried next round; a failed run must not cancel the scheduled task
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        Pending p = pending.get();
+        out.put("pendingUsers", p.users().size());
+        out.put("pendingMemberships", p.memberships().size());
+        out.put("flushes", flushes.get());
+        out.put("rowsWritten", rowsWritten.get());
+        out.put("flushErrors", flushErrors.get());
+        return out;
+    }
+
+    /** Last flush on the way down. */
+    public void shutdown() {
+        flusher.shutdownNow();
+        flushQuietly();
+    }
+}
@@ -0,0 +1,96 @@
+package com.app.websocket;
+
+import com.app.config.Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * userId -> (name, groups) for the chat socket, loaded with a single query
+ * and cached, so authorizing a connection never costs more than one lookup
+ * and usually none.
+ *
+ * Membership endpoints invalidate the affected users on this instance; the
+ * TTL bounds how long another instance may keep serving a stale entry.
+ */
+public class MembershipIndex {
+
+    public static final class Entry {
+        public final int userId;
+        public final String userName;
+        public final Set<Integer> groupIds;
+        final long loadedAt;
+
+        Entry(int userId, String userName, Set<Integer> groupIds, long loadedAt) {
+            this.userId = userId;
+            this.userName = userName;
+            this.groupIds = groupIds;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    public MembershipIndex(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /** @return the user's name and groups, or null if the user does not exist */
+    public Entry lookup(int userId) throws SQLException {
+        long now = System.currentTimeMillis();
+        Entry cached = entries.get(userId);
+        if (cached != null && now - cached.loadedAt < ttlMillis) {
+            return cached;
+        }
+
+        Entry loaded = load(userId, now);
+        if (loaded == null) {
+            entries.remove(userId);
+        } else {
+            entries.put(userId, loaded);
+        }
+        return loaded;
+    }
+
+    public void invalidate(int userId) {
+        entries.remove(userId);
+    }
+
+    /** A deleted group: everyone who had it reloads on next lookup. */
+    public void invalidateGroup(int groupId) {
+        entries.values().removeIf(e -> e.groupIds.contains(groupId));
+    }
+
+    private Entry load(int userId, long now) throws SQLException {
+        String sql = """
+            SELECT u.name, m.group_id
+            FROM USERS u
+            LEFT JOIN MEMBERSHIPS m ON m.user_id = u.user_id
+            WHERE u.user_id = ?
+            """;
+
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                String name = null;
+                Set<Integer> groups = new HashSet<>();
+                while (rs.next()) {
+                    name = rs.getString(1);
+                    int groupId = rs.getInt(2);
+                    if (!rs.wasNull()) {
+                        groups.add(groupId);
+                    }
+                }
+                return name == null ? null : new Entry(userId, name, Set.copyOf(groups), now);
+            }
+        }
+    }
+}
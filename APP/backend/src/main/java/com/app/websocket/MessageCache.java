@@ -0,0 +1,216 @@
+package com.app.websocket;
+
+import com.app.model.Message;
+import com.app.repository.MessageRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * The newest messages of recently used groups, so opening a chat does not
+ * run the history query each time.
+ *
+ * A group's ring is loaded from the database on its first read (perGroup
+ * newest messages) and from then on appended to as messages are stored here
+ * or relayed from other instances. A ring older than maxAgeMillis is loaded
+ * again, which bounds how long a missed relay can show. Rings are kept in
+ * LRU order (reads and writes both count) and dropped when idle for
+ * idleMillis or when all rings together exceed maxMessages.
+ *
+ * A ring is only as fresh as the appends this instance gets. With owner
+ * routing, a node that neither owns a group nor has sockets in it gets none:
+ * its ring is dropped (see {@link #trustOnly}) and its reads go to the
+ * database until it receives the group's messages again.
+ */
+public class MessageCache {
+
+    private static final class Ring {
+        ArrayDeque<Message> messages = new ArrayDeque<>();
+        // false while the first read loads it; appends meanwhile are kept and merged
+        boolean loaded;
+        long loadedAt;
+        long lastUse;
+    }
+
+    private final MessageRepository repo;
+    private final int perGroup;
+    private final int maxMessages;
+    private final long maxAgeMillis;
+    private final long idleMillis;
+
+    // access order: the eldest entry is the least recently used group
+    private final LinkedHashMap<Integer, Ring> groups = new LinkedHashMap<>(64, 0.75f, true);
+    private int total;
+    // true while messages of the group reach append() on this instance
+    private volatile IntPredicate receivesAppends = groupId -> true;
+
+    private long hits;
+    private long misses;
+    private long bypassed;
+    private long evictions;
+    private long untrusted;
+
+    public MessageCache(MessageRepository repo, int perGroup, int maxMessages, long maxAgeMillis, long idleMillis) {
+        this.repo = repo;
+        this.perGroup = Math.max(1, perGroup);
+        this.maxMessages = Math.max(this.perGroup, maxMessages);
+        this.maxAgeMillis = maxAgeMillis;
+        this.idleMillis = idleMillis;
+    }
+
+    /** Set by the socket handler, which knows where a group's messages are relayed. */
+    void trustOnly(IntPredicate receivesAppends) {
+        this.receivesAppends = receivesAppends;
+    }
+
+    /** The newest limit messages of the group, oldest first, as MessageRepository.findRecentByGroup returns them. */
+    public List<Message> latest(int groupId, int limit) throws SQLException {
+        boolean trusted = receivesAppends.test(groupId);
+        if (limit > perGroup || !trusted) {
+            synchronized (this) {
+                bypassed++;
+                if (!trusted) invalidate(groupId);
+            }
+            return repo.findRecentByGroup(groupId, limit);
+        }
+
+        long now = System.currentTimeMillis();
+        Ring ring;
+        synchronized (this) {
+            Ring r = groups.get(groupId);
+            if (r != null && r.loaded && now - r.loadedAt <= maxAgeMillis) {
+                hits++;
+                r.lastUse = now;
+                return tail(r.messages, limit);
+            }
+            misses++;
+            if (r != null && !r.loaded) {
+                ring = null; // another request is loading it
+            } else {
+                ring = new Ring();
+                ring.lastUse = now;
+                if (r != null) total -= r.messages.size();
+                groups.put(groupId, ring);
+            }
+        }
+
+        List<Message> rows = repo.findRecentByGroup(groupId, perGroup);
+        if (ring != null) {
+            install(groupId, ring, rows, now);
+        }
+        return rows.size() > limit ? new ArrayList<>(rows.subList(rows.size() - limit, rows.size())) : rows;
+    }
+
+    private synchronized void install(int groupId, Ring ring, List<Message> rows, long now) {
+        if (groups.get(groupId) != ring) return; // evicted while loading
+
+        int newest = rows.isEmpty() ? 0 : rows.get(rows.size() - 1).getMessageId();
+        ArrayDeque<Message> appended = ring.messages;
+        total -= appended.size();
+        ring.messages = new ArrayDeque<>(rows);
+        for (Message m : appended) {
+            if (m.getMessageId() > newest) ring.messages.add(m);
+        }
+        while (ring.messages.size() > perGroup) ring.messages.poll();
+        total += ring.messages.size();
+        ring.loaded = true;
+        ring.loadedAt = now;
+        evict(now);
+    }
+
+    /** A message just stored (here or on another instance); ignored for groups not cached. */
+    public synchronized void append(Message m) {
+        Ring r = groups.get(m.getGroupId());
+        if (r == null) return;
+        long now = System.currentTimeMillis();
+        r.lastUse = now;
+        r.messages.add(m);
+        total++;
+        if (r.loaded && r.messages.size() > perGroup) {
+            r.messages.poll();
+            total--;
+        }
+        evict(now);
+    }
+
+    /**
+     * Whether messageId is one of the group's messages, as far as its ring
+     * can tell; null if the group is not cached (or no longer gets appends
+     * here) or the id is older than everything in the ring.
+     */
+    synchronized Boolean holds(int groupId, int messageId) {
+        Ring r = groups.get(groupId);
+        if (r == null || !r.loaded || !receivesAppends.test(groupId)) return null;
+        int oldest = Integer.MAX_VALUE;
+        for (Message m : r.messages) {
+            if (m.getMessageId() == messageId) return Boolean.TRUE;
+            oldest = Math.min(oldest, m.getMessageId());
+        }
+        // an id inside the ring's range that it does not hold belongs to another group
+        return messageId > oldest ? Boolean.FALSE : null;
+    }
+
+    /** Forgets the group's ring: appends for it may stop arriving here. */
+    synchronized void invalidate(int groupId) {
+        Ring r = groups.remove(groupId);
+        if (r != null) {
+            total -= r.messages.size();
+            untrusted++;
+        }
+    }
+
+    /** Drops the rings of groups this instance no longer gets appends for (after an ownership change). */
+    synchronized void dropUntrusted() {
+        Iterator<Map.Entry<Integer, Ring>> it = groups.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Ring> e = it.next();
+            if (!receivesAppends.test(e.getKey())) {
+                total -= e.getValue().messages.size();
+                it.remove();
+                untrusted++;
+            }
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Ring> it = groups.values().iterator();
+        while (it.hasNext()) {
+            Ring eldest = it.next();
+            boolean idle = now - eldest.lastUse > idleMillis;
+            if (!idle && total <= maxMessages) break;
+            total -= eldest.messages.size();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static List<Message> tail(ArrayDeque<Message> messages, int limit) {
+        List<Message> out = new ArrayList<>(Math.min(limit, messages.size()));
+        int skip = messages.size() - limit;
+        for (Message m : messages) {
+            if (skip-- > 0) continue;
+            out.add(m);
+        }
+        return out;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("groups", groups.size());
+        out.put("messages", total);
+        out.put("hits", hits);
+        out.put("misses", misses);
+        out.put("bypassed", bypassed);
+        out.put("evictions", evictions);
+        out.put("untrusted", untrusted);
+        long reads = hits + misses;
+        out.put("hitRate", reads == 0 ? 0.0 : (double) hits / reads);
+        return out;
+    }
+}
@@ -0,0 +1,92 @@
+package com.app.websocket;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client message ids seen recently, per group.
+ *
+ * A client that reconnects resends what it has no ack for; the retry carries
+ * the same clientMsgId, so on the node that stored the original it costs one
+ * hash lookup instead of another insert and broadcast. Each group keeps at most capacity ids for at most
+ * windowMillis (insertion order, oldest evicted first). Retries that outlive
+ * the window, or reach another instance, find their id already claimed in
+ * message_client_ids and insert nothing.
+ */
+class MessageDedupe {
+
+    private static final class GroupWindow {
+        // "userId:clientMsgId" -> first seen (ms)
+        final LinkedHashMap<String, Long> ids = new LinkedHashMap<>();
+        long lastUse;
+    }
+
+    private final int capacity;
+    private final long windowMillis;
+    private final Map<Integer, GroupWindow> groups = new ConcurrentHashMap<>();
+
+    private final AtomicLong duplicates = new AtomicLong();
+
+    MessageDedupe(int capacity, long windowMillis) {
+        this.capacity = Math.max(1, capacity);
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @return true for a retry of a message stored within the window; nothing
+     *         is recorded here, see {@link #stored}
+     */
+    boolean seen(int groupId, int userId, String clientMsgId, long now) {
+        GroupWindow w = groups.get(groupId);
+        if (w == null) return false;
+        synchronized (w) {
+            w.lastUse = now;
+            expire(w, now);
+            if (!w.ids.containsKey(userId + ":" + clientMsgId)) {
+                return false;
+            }
+            duplicates.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Records the id once its message is stored: a message whose insert failed
+     * is not a duplicate, its retry must still be inserted.
+     */
+    void stored(int groupId, int userId, String clientMsgId, long now) {
+        GroupWindow w = groups.computeIfAbsent(groupId, k -> new GroupWindow());
+        synchronized (w) {
+            w.lastUse = now;
+            expire(w, now);
+            if (w.ids.putIfAbsent(userId + ":" + clientMsgId, now) == null && w.ids.size() > capacity) {
+                Iterator<String> it = w.ids.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /** Drops groups without sends for longer than the window. */
+    void evictIdle(long now) {
+        groups.entrySet().removeIf(e -> {
+            synchronized (e.getValue()) {
+                return now - e.getValue().lastUse > windowMillis;
+            }
+        });
+    }
+
+    long getDuplicates() {
+        return duplicates.get();
+    }
+
+    private void expire(GroupWindow w, long now) {
+        Iterator<Long> it = w.ids.values().iterator();
+        while (it.hasNext() && now - it.next() > windowMillis) {
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.app.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outbound priority lanes of the chat sockets.
+ *
+ * Every socket has a {@link Queue}: HIGH holds chat messages, events and
+ * control frames (joined, resumed ...) in order; LOW holds typing and
+ * presence, which are snapshots of a group's state, so a newer frame of the
+ * same group replaces the queued one (collapse). The sender drains HIGH
+ * first. While a socket is more than shedLowAt HIGH frames behind, LOW frames
+ * are dropped (shed): the next snapshot repairs the state anyway. A socket
+ * more than maxHigh frames behind is closed; it would only fall further back.
+ *
+ * Whoever queues onto an idle socket schedules its sender, a task on the
+ * handler's sender pool that writes the queue until it is empty; everyone
+ * else just queues and returns. Delivering a frame never writes to a socket,
+ * so a slow socket cannot hold up the fan-out to the others.
+ */
+final class OutboundLanes {
+
+    enum Lane {
+        HIGH, LOW;
+
+        static Lane of(Topic topic) {
+            return topic == Topic.TYPING || topic == Topic.PRESENCE ? LOW : HIGH;
+        }
+    }
+
+    enum Offer {
+        /** Queued; the caller must now drain the socket. */
+        DRAIN,
+        /** Queued (or collapsed/shed); another thread is sending. */
+        QUEUED,
+        /** HIGH backlog over the limit: the caller should close the socket. */
+        OVERFLOW
+    }
+
+    private final int maxHigh;
+    private final int shedLowAt;
+
+    private final LongAdder[] queued = {new LongAdder(), new LongAdder()};
+    private final LongAdder[] sent = {new LongAdder(), new LongAdder()};
+    private final LongAdder lowCollapsed = new LongAdder();
+    private final LongAdder lowShed = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final AtomicLong maxHighDepth = new AtomicLong();
+
+    OutboundLanes(int maxHigh, int shedLowAt) {
+        this.maxHigh = Math.max(1, maxHigh);
+        this.shedLowAt = Math.max(0, shedLowAt);
+    }
+
+    Queue newQueue() {
+        return new Queue();
+    }
+
+    /** One socket's lanes; the deques are only allocated once the socket has a backlog. */
+    final class Queue {
+        private ArrayDeque<FrameCodec.Outbound> high;
+        // (groupId << 8) | topic ordinal -> latest frame
+        private LinkedHashMap<Long, FrameCodec.Outbound> low;
+        private boolean draining;
+
+        /** @param key LOW only: frames with the same key replace each other */
+        synchronized Offer offer(FrameCodec.Outbound out, Lane lane, long key) {
+            int backlog = high == null ? 0 : high.size();
+            if (lane == Lane.HIGH) {
+                if (backlog >= maxHigh) {
+                    overflows.increment();
+                    return Offer.OVERFLOW;
+                }
+                if (high == null) high = new ArrayDeque<>(4);
+                high.add(out);
+                maxHighDepth.accumulateAndGet(high.size(), Math::max);
+                queued[Lane.HIGH.ordinal()].increment();
+            } else {
+                if (backlog > shedLowAt) {
+                    lowShed.increment();
+                    return Offer.QUEUED;
+                }
+                if (low == null) low = new LinkedHashMap<>(4);
+                if (low.put(key, out) != null) {
+                    lowCollapsed.increment();
+                } else {
+                    queued[Lane.LOW.ordinal()].increment();
+                }
+            }
+            if (draining) return Offer.QUEUED;
+            draining = true;
+            return Offer.DRAIN;
+        }
+
+        /** A sender is scheduled or writing. */
+        synchronized boolean draining() {
+            return draining;
+        }
+
+        /** Next frame to write, HIGH first; null ends the caller's turn as sender. */
+        synchronized FrameCodec.Outbound next() {
+            if (high != null && !high.isEmpty()) {
+                sent[Lane.HIGH.ordinal()].increment();
+                return high.poll();
+            }
+            if (low != null && !low.isEmpty()) {
+                Iterator<FrameCodec.Outbound> it = low.values().iterator();
+                FrameCodec.Outbound out = it.next();
+                it.remove();
+                sent[Lane.LOW.ordinal()].increment();
+                return out;
+            }
+            // drop the empty deques: idle sockets keep no buffers
+            high = null;
+            low = null;
+            draining = false;
+            return null;
+        }
+    }
+
+    static long lowKey(int groupId, Topic topic) {
+        return ((long) groupId << 8) | topic.ordinal();
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Lane lane : Lane.values()) {
+            Map<String, Object> l = new LinkedHashMap<>();
+            l.put("queued", queued[lane.ordinal()].sum());
+            l.put("sent", sent[lane.ordinal()].sum());
+            if (lane == Lane.LOW) {
+                l.put("collapsed", lowCollapsed.sum());
+                l.put("shed", lowShed.sum());
+            } else {
+                l.put("maxDepth", maxHighDepth.get());
+                l.put("overflowCloses", overflows.sum());
+            }
+            out.put(lane.name().toLowerCase(), l);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,331 @@
+package com.app.websocket;
+
+import com.app.model.ReadMarker;
+import com.app.repository.ReadMarkerRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Last-read message per (user, group), kept in memory and written behind.
+ *
+ * A client sends a "read" frame whenever it shows newer messages; most of
+ * them only move a marker that is about to move again. Here a frame is one
+ * max-merge in memory; every flushMillis the latest value of each changed
+ * marker goes to read_markers in one batched upsert (GREATEST on conflict,
+ * so instances flushing the same marker cannot move it back).
+ *
+ * Markers are indexed by group. A marker is loaded from the table before it
+ * is first moved or read, and a group's stored markers are loaded once for
+ * groupMarkers(), so neither can report a marker behind the stored one.
+ * A read is only taken for a message of the group no newer than the group's
+ * newest one (known from the messages stored or relayed here). Validation is
+ * answered from memory where it can be: the newest id, the group's
+ * MessageCache ring, ids already found not to be in the group. Only then is
+ * the database asked, and only if the caller's mayQuery allows it (the socket
+ * handler charges the sender's flood bucket), so stale or forged ids cannot
+ * turn into one query per frame. Clean markers unused for idleMillis are
+ * dropped.
+ */
+public class ReadMarkerStore {
+
+    private static final class Marker {
+        volatile int messageId;
+        // only changed inside ConcurrentHashMap.compute* of its key
+        boolean dirty;
+        boolean loaded;
+        volatile long lastUse;
+
+        Marker(int messageId, boolean dirty, boolean loaded, long lastUse) {
+            this.messageId = messageId;
+            this.dirty = dirty;
+            this.loaded = loaded;
+            this.lastUse = lastUse;
+        }
+    }
+
+    private static final class GroupMarkers {
+        final Map<Integer, Marker> users = new ConcurrentHashMap<>();
+        // every stored marker of the group is in users; cleared when one is dropped
+        volatile boolean loaded;
+        // newest message id known here, 0 = not looked up yet
+        final AtomicInteger newest = new AtomicInteger();
+        // when newest was last looked up; a newer id in between is rejected without a query
+        volatile long newestCheckedAt;
+        // ids found not to be messages of the group, most recent last
+        final Map<Integer, Boolean> notInGroup = Collections.synchronizedMap(
+                new LinkedHashMap<>(16, 0.75f, false) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                        return size() > MAX_NOT_IN_GROUP;
+                    }
+                });
+    }
+
+    private static final long NEWEST_RECHECK_MILLIS = 1000;
+    private static final int MAX_NOT_IN_GROUP = 64;
+
+    private final ReadMarkerRepository repo = new ReadMarkerRepository();
+    private final MessageCache history;
+    private final long flushMillis;
+    private final long idleMillis;
+    // kept for the life of the process: one small entry per group touched
+    private final Map<Integer, GroupMarkers> groups = new ConcurrentHashMap<>();
+    // groupId -> (userId -> messageId) advanced since the last drainReceipts()
+    private final Map<Integer, Map<Integer, Integer>> receipts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong advanced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong flushErrors = new AtomicLong();
+
+    public ReadMarkerStore(MessageCache history, long flushMillis, long idleMillis) {
+        this.history = history;
+        this.flushMillis = flushMillis;
+        this.idleMillis = idleMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "read-markers");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Starts the write-behind flushes. */
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private GroupMarkers group(int groupId) {
+        return groups.computeIfAbsent(groupId, k -> new GroupMarkers());
+    }
+
+    /** A message was stored in the group (here or on another instance). */
+    public void onMessage(int groupId, int messageId) {
+        group(groupId).newest.accumulateAndGet(messageId, Math::max);
+    }
+
+    /**
+     * The user has seen the group up to messageId.
+     *
+     * @param mayQuery asked before validating messageId needs the database; false rejects the read
+     * @return true if that moved the marker forward (and a receipt is due)
+     */
+    public boolean markRead(int userId, int groupId, int messageId, BooleanSupplier mayQuery) throws SQLException {
+        reads.incrementAndGet();
+        if (messageId <= 0) return false;
+        // most frames repeat or trail the marker: no further checks for those
+        if (messageId <= lastRead(userId, groupId)) return false;
+        if (!isValid(groupId, messageId, mayQuery)) {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean[] moved = {false};
+        group(groupId).users.compute(userId, (k, m) -> {
+            if (m == null) {
+                // dropped since lastRead(): the upsert still keeps the greater value
+                moved[0] = true;
+                return new Marker(messageId, true, false, now);
+            }
+            m.lastUse = now;
+            if (messageId > m.messageId) {
+                m.messageId = messageId;
+                m.dirty = true;
+                moved[0] = true;
+            }
+            return m;
+        });
+        if (!moved[0]) return false;
+
+        advanced.incrementAndGet();
+        receipts.compute(groupId, (g, users) -> {
+            Map<Integer, Integer> m = users == null ? new HashMap<>() : users;
+            m.merge(userId, messageId, Math::max);
+            return m;
+        });
+        return true;
+    }
+
+    /** A message of the group, and not newer than its newest one. */
+    private boolean isValid(int groupId, int messageId, BooleanSupplier mayQuery) throws SQLException {
+        GroupMarkers g = group(groupId);
+        if (messageId > g.newest.get()) {
+            // not known here yet (first read of the group, or a relay this node did not get)
+            long now = System.currentTimeMillis();
+            if (now - g.newestCheckedAt < NEWEST_RECHECK_MILLIS || !mayQuery.getAsBoolean()) return false;
+            g.newestCheckedAt = now;
+            g.newest.accumulateAndGet(repo.newestMessageId(groupId), Math::max);
+            if (messageId > g.newest.get()) return false;
+        }
+        // clients report the newest message they show: usually the group's newest one
+        if (messageId == g.newest.get()) return true;
+        Boolean cached = history.holds(groupId, messageId);
+        if (cached != null) return cached;
+        if (g.notInGroup.containsKey(messageId) || !mayQuery.getAsBoolean()) return false;
+        if (repo.isInGroup(messageId, groupId)) return true;
+        g.notInGroup.put(messageId, Boolean.TRUE);
+        return false;
+    }
+
+    /** True if messageId is the newest message of the group known here. */
+    public boolean isNewest(int groupId, int messageId) {
+        GroupMarkers g = groups.get(groupId);
+        return g != null && messageId >= g.newest.get();
+    }
+
+    /** A marker another instance moved: kept if cached, never written from here. */
+    public void applyRemote(int userId, int groupId, int messageId) {
+        GroupMarkers g = groups.get(groupId);
+        if (g == null) return;
+        long now = System.currentTimeMillis();
+        g.users.compute(userId, (k, m) -> {
+            if (m == null) {
+                // groupMarkers() answers from memory once the group is loaded: keep it complete
+                return g.loaded ? new Marker(messageId, false, false, now) : null;
+            }
+            if (messageId > m.messageId) m.messageId = messageId;
+            return m;
+        });
+    }
+
+    /** Last read messageId, 0 if none. */
+    public int lastRead(int userId, int groupId) throws SQLException {
+        GroupMarkers g = group(groupId);
+        Marker m = g.users.get(userId);
+        if (m != null && m.loaded) {
+            m.lastUse = System.currentTimeMillis();
+            return m.messageId;
+        }
+
+        // a marker moved before it was ever loaded may still be behind the stored one
+        int stored = repo.find(userId, groupId);
+        long now = System.currentTimeMillis();
+        return g.users.compute(userId, (key, cur) -> {
+            if (cur == null) return new Marker(stored, false, true, now);
+            if (stored > cur.messageId) cur.messageId = stored;
+            cur.loaded = true;
+            cur.lastUse = now;
+            return cur;
+        }).messageId;
+    }
+
+    /** userId -> last read messageId for everyone with a marker in the group. */
+    public Map<Integer, Integer> groupMarkers(int groupId) throws SQLException {
+        GroupMarkers g = group(groupId);
+        if (!g.loaded) {
+            // set first: a marker dropped while loading clears it again
+            g.loaded = true;
+            long now = System.currentTimeMillis();
+            List<ReadMarker> stored;
+            try {
+                stored = repo.findByGroup(groupId);
+            } catch (SQLException e) {
+                g.loaded = false;
+                throw e;
+            }
+            for (ReadMarker r : stored) {
+                g.users.compute(r.getUserId(), (key, cur) -> {
+                    if (cur == null) return new Marker(r.getMessageId(), false, true, now);
+                    if (r.getMessageId() > cur.messageId) cur.messageId = r.getMessageId();
+                    cur.loaded = true;
+                    return cur;
+                });
+            }
+        }
+
+        Map<Integer, Integer> out = new LinkedHashMap<>();
+        g.users.forEach((userId, m) -> out.put(userId, m.messageId));
+        return out;
+    }
+
+    /** groupId -> (userId -> messageId) of the markers that moved since the last call. */
+    Map<Integer, Map<Integer, Integer>> drainReceipts() {
+        Map<Integer, Map<Integer, Integer>> out = new HashMap<>();
+        for (Integer groupId : receipts.keySet()) {
+            Map<Integer, Integer> users = receipts.remove(groupId);
+            if (users != null) out.put(groupId, users);
+        }
+        return out;
+    }
+
+    /** Writes every changed marker in one batch; on failure they stay dirty for the next round. */
+    public void flush() throws SQLException {
+        List<ReadMarker> batch = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        groups.forEach((groupId, g) -> {
+            for (Integer userId : g.users.keySet()) {
+                g.users.computeIfPresent(userId, (key, m) -> {
+                    if (m.dirty) {
+                        batch.add(new ReadMarker(userId, groupId, m.messageId));
+                        m.dirty = false;
+                        return m;
+                    }
+                    if (now - m.lastUse <= idleMillis) return m;
+                    g.loaded = false;
+                    return null;
+                });
+            }
+        });
+        if (batch.isEmpty()) return;
+
+        flushes.incrementAndGet();
+        try {
+            repo.upsertAll(batch);
+            rowsWritten.addAndGet(batch.size());
+        } catch (SQLException | RuntimeException e) {
+            flushErrors.incrementAndGet();
+            for (ReadMarker r : batch) {
+                group(r.getGroupId()).users.compute(r.getUserId(), (key, m) -> {
+                    if (m == null) return new Marker(r.getMessageId(), true, false, now);
+                    m.dirty = true;
+                    return m;
+                });
+            }
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception ignored) {
+            // retried next round; a failed run must not cancel the scheduled task
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        int cached = 0;
+        for (GroupMarkers g : groups.values()) cached += g.users.size();
+        out.put("cached", cached);
+        out.put("reads", reads.get());
+        out.put("advanced", advanced.get());
+        out.put("rejected", rejected.get());
+        out.put("flushes", flushes.get());
+        out.put("rowsWritten", rowsWritten.get());
+        out.put("flushErrors", flushErrors.get());
+        return out;
+    }
+
+    /** Last flush on the way down. */
+    public void shutdown() {
+        flusher.shutdownNow();
+        flushQuietly();
+    }
+}
@@ -0,0 +1,128 @@
+package com.app.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Recent sequenced frames per group, so a reconnecting client can ask for
+ * "everything after seq N" instead of reloading the whole history.
+ *
+ * Each group gets a monotonic sequence number and a bounded ring of its last
+ * frames. A group's sequence starts at (creation time in ms * 1000), so a ring
+ * that was evicted and recreated never reuses numbers a client may still hold.
+ * Frames remember their Topic so a resume only replays what the socket is
+ * subscribed to; the numbering itself stays per group.
+ */
+class ReplayBuffer {
+
+    private static final class GroupLog {
+        long seq;
+        final String[] frames;
+        final byte[] topics;
+        final long[] seqs;
+        final long[] times;
+        int start;
+        int count;
+        long lastAppend;
+
+        GroupLog(int capacity, long now) {
+            this.seq = now * 1000;
+            this.frames = new String[capacity];
+            this.topics = new byte[capacity];
+            this.seqs = new long[capacity];
+            this.times = new long[capacity];
+            this.lastAppend = now;
+        }
+    }
+
+    private final int capacity;
+    private final long maxAgeMillis;
+    private final Map<Integer, GroupLog> logs = new ConcurrentHashMap<>();
+
+    ReplayBuffer(int capacity, long maxAgeMillis) {
+        this.capacity = capacity;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Assigns the next sequence number, stores the stamped frame and hands it
+     * to publish before the group's next append can run, so whatever publish
+     * queues is queued in seq order. json must be a non-empty JSON object;
+     * "seq" becomes its first field.
+     */
+    String append(int groupId, String json, Topic topic, long now, Consumer<String> publish) {
+        GroupLog log = logs.computeIfAbsent(groupId, k -> new GroupLog(capacity, now));
+        synchronized (log) {
+            long seq = ++log.seq;
+            String stamped = "{\"seq\":" + seq + "," + json.substring(1);
+
+            int idx = (log.start + log.count) % capacity;
+            if (log.count == capacity) {
+                log.start = (log.start + 1) % capacity;
+            } else {
+                log.count++;
+            }
+            log.frames[idx] = stamped;
+            log.topics[idx] = (byte) topic.ordinal();
+            log.seqs[idx] = seq;
+            log.times[idx] = now;
+            log.lastAppend = now;
+            publish.accept(stamped);
+            return stamped;
+        }
+    }
+
+    /** Latest sequence number of the group, or 0 if nothing is buffered. */
+    long currentSeq(int groupId) {
+        GroupLog log = logs.get(groupId);
+        if (log == null) return 0;
+        synchronized (log) {
+            return log.seq;
+        }
+    }
+
+    /**
+     * Frames with seq greater than lastSeq whose topic is in the mask, oldest first.
+     *
+     * @return null if part of the gap is no longer buffered (evicted, aged out,
+     *         or lastSeq belongs to an older ring) and the client must reload
+     */
+    List<String> since(int groupId, long lastSeq, int topics, long now) {
+        GroupLog log = logs.get(groupId);
+        if (log == null) return null;
+
+        synchronized (log) {
+            if (lastSeq == log.seq) return List.of();
+            if (lastSeq > log.seq) return null;
+
+            List<String> out = new ArrayList<>();
+            long expected = lastSeq + 1;
+            for (int i = 0; i < log.count; i++) {
+                int idx = (log.start + i) % capacity;
+                long seq = log.seqs[idx];
+                if (seq <= lastSeq) continue;
+                if (seq != expected || now - log.times[idx] > maxAgeMillis) {
+                    return null;
+                }
+                // filtered frames still count: the gap check covers the whole group
+                if ((topics & (1 << log.topics[idx])) != 0) {
+                    out.add(log.frames[idx]);
+                }
+                expected++;
+            }
+            return expected == log.seq + 1 ? out : null;
+        }
+    }
+
+    /** Drops rings that have been quiet for longer than the replay window. */
+    void evictIdle(long now) {
+        logs.entrySet().removeIf(e -> {
+            synchronized (e.getValue()) {
+                return now - e.getValue().lastAppend > maxAgeMillis;
+            }
+        });
+    }
+}
@@ -0,0 +1,276 @@
+package com.app.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Open chat sockets of this instance.
+ *
+ * Sized for six-figure connection counts: one compact SessionRecord per
+ * socket (kept in the session's own attributes, so no session-keyed map),
+ * int-keyed open-addressing maps, and per group one immutable SessionRecord[]
+ * per Topic (plus one with every socket) that fan-out reads without locking
+ * and joins/leaves/subscribes replace (copy-on-write).
+ *
+ * Outbound frames go through the socket's priority lanes (OutboundLanes).
+ *
+ * Liveness: every inbound frame or pong refreshes lastSeen. The heartbeat
+ * walks one slice of the sessions per tick, pings them, and reports those
+ * silent for longer than the idle timeout, which covers half-open TCP
+ * connections that never produce a close event.
+ */
+class SessionRegistry {
+
+    static final String ATTR = "chat.session";
+    private static final long[] NO_SUBSCRIPTIONS = new long[0];
+    private static final SessionRecord[] NO_SESSIONS = new SessionRecord[0];
+    /** Slot of the per-group member table that holds every socket, whatever its topics. */
+    private static final int ANY = Topic.values().length;
+
+    static final class SessionRecord {
+        final int sid;
+        final WebSocketSession session;
+        final int userId;
+        volatile String userName;
+        /** (groupId << 32) | topic mask, one entry per joined group; replaced as a whole. */
+        volatile long[] subscriptions = NO_SUBSCRIPTIONS;
+        volatile long lastSeen;
+        final OutboundLanes.Queue outbound;
+        final FloodGuard.Bucket flood = new FloodGuard.Bucket();
+
+        SessionRecord(int sid, WebSocketSession session, int userId, String userName, long now,
+                      OutboundLanes.Queue outbound) {
+            this.sid = sid;
+            this.session = session;
+            this.outbound = outbound;
+            this.userId = userId;
+            this.userName = userName;
+            this.lastSeen = now;
+        }
+
+        boolean inGroup(int groupId) {
+            return topics(groupId) != 0;
+        }
+
+        /** Topic mask in the group, 0 if not joined. */
+        int topics(int groupId) {
+            for (long sub : subscriptions) {
+                if ((int) (sub >>> 32) == groupId) return (int) sub;
+            }
+            return 0;
+        }
+
+        int[] groupIds() {
+            long[] subs = subscriptions;
+            int[] ids = new int[subs.length];
+            for (int i = 0; i < subs.length; i++) {
+                ids[i] = (int) (subs[i] >>> 32);
+            }
+            return ids;
+        }
+    }
+
+    private final long pingMillis;
+    private final long idleTimeoutMillis;
+    private final int slices;
+    private final OutboundLanes lanes;
+    private int slice;
+
+    private final AtomicInteger nextSid = new AtomicInteger();
+    private final IntObjectMap<SessionRecord> sessions = new IntObjectMap<>();
+    // groupId -> [topic ordinal | ANY] -> sockets
+    private final IntObjectMap<SessionRecord[][]> groups = new IntObjectMap<>();
+
+    SessionRegistry(long pingMillis, long idleTimeoutMillis, long tickMillis, OutboundLanes lanes) {
+        this.pingMillis = pingMillis;
+        this.lanes = lanes;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.slices = (int) Math.max(1, pingMillis / Math.max(1, tickMillis));
+    }
+
+    static SessionRecord of(WebSocketSession session) {
+        return (SessionRecord) session.getAttributes().get(ATTR);
+    }
+
+    SessionRecord open(WebSocketSession session, int userId, String userName, long now) {
+        SessionRecord rec = new SessionRecord(nextSid.incrementAndGet(), session, userId, userName, now,
+                lanes.newQueue());
+        session.getAttributes().put(ATTR, rec);
+        sessions.put(rec.sid, rec);
+        return rec;
+    }
+
+    /** The open socket with this sid, or null (acks coming back from another node). */
+    SessionRecord get(int sid) {
+        return sessions.get(sid);
+    }
+
+    /**
+     * Removes the socket; its groups are left to the caller (presence etc.).
+     *
+     * @return the record, or null if it was already closed (reaper and close event race)
+     */
+    SessionRecord close(WebSocketSession session) {
+        SessionRecord rec = of(session);
+        if (rec == null || sessions.remove(rec.sid) == null) {
+            return null;
+        }
+        return rec;
+    }
+
+    /**
+     * Subscribes the socket to the groups with the same topic mask; the
+     * previous subscription must have been left first.
+     */
+    synchronized void setGroups(SessionRecord rec, int[] groupIds, int topics) {
+        long[] subs = new long[groupIds.length];
+        for (int i = 0; i < groupIds.length; i++) {
+            subs[i] = ((long) groupIds[i] << 32) | (topics & 0xFFFFFFFFL);
+            update(rec, groupIds[i], 0, topics);
+        }
+        rec.subscriptions = subs;
+    }
+
+    /** Changes the topics of one joined group. */
+    synchronized void setTopics(SessionRecord rec, int groupId, int topics) {
+        long[] subs = rec.subscriptions.clone();
+        for (int i = 0; i < subs.length; i++) {
+            if ((int) (subs[i] >>> 32) == groupId) {
+                update(rec, groupId, (int) subs[i], topics);
+                subs[i] = ((long) groupId << 32) | (topics & 0xFFFFFFFFL);
+            }
+        }
+        rec.subscriptions = subs;
+    }
+
+    /** @return how many sockets are still in the group */
+    synchronized int removeFromGroup(SessionRecord rec, int groupId) {
+        update(rec, groupId, rec.topics(groupId), 0);
+        return members(groupId).length;
+    }
+
+    /** Sockets of the group subscribed to the topic; never null, must not be modified. */
+    SessionRecord[] members(int groupId, Topic topic) {
+        SessionRecord[][] table = groups.get(groupId);
+        return table == null ? NO_SESSIONS : table[topic.ordinal()];
+    }
+
+    /** Every socket joined to the group. */
+    SessionRecord[] members(int groupId) {
+        SessionRecord[][] table = groups.get(groupId);
+        return table == null ? NO_SESSIONS : table[ANY];
+    }
+
+    /** Moves the socket between per-topic arrays; mask 0 means "not in the group". */
+    private void update(SessionRecord rec, int groupId, int oldTopics, int newTopics) {
+        SessionRecord[][] current = groups.get(groupId);
+        SessionRecord[][] table = current == null ? emptyTable() : current.clone();
+
+        int oldBits = oldTopics == 0 ? 0 : oldTopics | (1 << ANY);
+        int newBits = newTopics == 0 ? 0 : newTopics | (1 << ANY);
+        for (int slot = 0; slot <= ANY; slot++) {
+            boolean had = (oldBits & (1 << slot)) != 0;
+            boolean has = (newBits & (1 << slot)) != 0;
+            if (has && !had) {
+                table[slot] = with(table[slot], rec);
+            } else if (had && !has) {
+                table[slot] = without(table[slot], rec);
+            }
+        }
+
+        if (table[ANY].length == 0) {
+            groups.remove(groupId);
+        } else {
+            groups.put(groupId, table);
+        }
+    }
+
+    private static SessionRecord[][] emptyTable() {
+        SessionRecord[][] table = new SessionRecord[ANY + 1][];
+        Arrays.fill(table, NO_SESSIONS);
+        return table;
+    }
+
+    private static SessionRecord[] with(SessionRecord[] arr, SessionRecord rec) {
+        SessionRecord[] next = Arrays.copyOf(arr, arr.length + 1);
+        next[arr.length] = rec;
+        return next;
+    }
+
+    private static SessionRecord[] without(SessionRecord[] arr, SessionRecord rec) {
+        for (int i = 0; i < arr.length; i++) {
+            if (arr[i] == rec) {
+                if (arr.length == 1) return NO_SESSIONS;
+                SessionRecord[] next = new SessionRecord[arr.length - 1];
+                System.arraycopy(arr, 0, next, 0, i);
+                System.arraycopy(arr, i + 1, next, i, arr.length - i - 1);
+                return next;
+            }
+        }
+        return arr;
+    }
+
+    /** Visits every open socket under the map's read lock; keep the action short. */
+    void forEach(Consumer<SessionRecord> action) {
+        sessions.forEachValue(action);
+    }
+
+    /** Sessions to ping or reap on this tick: each session comes up once per ping interval. */
+    List<SessionRecord> heartbeatSlice() {
+        int current;
+        synchronized (this) {
+            current = slice;
+            slice = (slice + 1) % slices;
+        }
+        List<SessionRecord> due = new ArrayList<>();
+        sessions.forEachValue(r -> {
+            if (r.sid % slices == current) due.add(r);
+        });
+        return due;
+    }
+
+    boolean expired(SessionRecord rec, long now) {
+        return now - rec.lastSeen > idleTimeoutMillis;
+    }
+
+    OutboundLanes lanes() {
+        return lanes;
+    }
+
+    long pingMillis() {
+        return pingMillis;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Approximate bytes held by the registry itself (compressed oops, 64-bit JVM):
+     * map slots, records (with their idle send queue and flood bucket), per-record subscriptions
+     * and per-group member arrays.
+     * The container's own per-socket buffers come on top; see heap per session in /api/chat/stats.
+     */
+    long estimatedBytes() {
+        long[] bytes = {
+                (long) sessions.capacity() * (4 + 4) + (long) groups.capacity() * (4 + 4)
+        };
+        sessions.forEachValue(r -> bytes[0] += 48 + 24 + 32 + 16 + 8L * r.subscriptions.length);
+        groups.forEachValue(table -> {
+            bytes[0] += 16 + 4L * table.length;
+            for (SessionRecord[] arr : table) {
+                bytes[0] += arr.length == 0 ? 0 : 16 + 4L * arr.length;
+            }
+        });
+        return bytes[0];
+    }
+}
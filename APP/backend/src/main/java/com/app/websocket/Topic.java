@@ -0,0 +1,42 @@
+package com.app.websocket;
+
+/**
+ * What a socket wants to hear about in a group. A subscription is a bit mask
+ * of topics; sockets that do not ask for anything get {@link #ALL}.
+ */
+enum Topic {
+    CHAT,       // "message"
+    TYPING,     // "typing"
+    PRESENCE,   // "online"
+    TASKS,      // EVENT TASK_*
+    RESOURCES,  // EVENT RESOURCE_*
+    ACTIVITY,   // other EVENTs (GROUP_* ...)
+    RECEIPTS;   // "receipts" (read markers)
+
+    static final int ALL = (1 << values().length) - 1;
+
+    int bit() {
+        return 1 << ordinal();
+    }
+
+    boolean in(int mask) {
+        return (mask & bit()) != 0;
+    }
+
+    /** "chat" -> CHAT's bit; unknown names -> 0. An empty mask means ALL (see FrameCodec). */
+    static int bit(String name) {
+        for (Topic topic : values()) {
+            if (topic.name().equalsIgnoreCase(name)) {
+                return topic.bit();
+            }
+        }
+        return 0;
+    }
+
+    static Topic ofEvent(String event) {
+        if (event == null) return ACTIVITY;
+        if (event.startsWith("TASK_")) return TASKS;
+        if (event.startsWith("RESOURCE_")) return RESOURCES;
+        return ACTIVITY;
+    }
+}
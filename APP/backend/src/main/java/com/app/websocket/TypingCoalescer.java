@@ -0,0 +1,122 @@
+package com.app.websocket;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-side typing state per (group, user).
+ *
+ * Clients send "typing" on every keystroke; here a keystroke only refreshes
+ * a timestamp. A group is marked dirty when somebody starts or stops typing,
+ * and {@link #drain(long)} returns the current typer list once per dirty group,
+ * so the handler emits at most one frame per group per tick.
+ */
+class TypingCoalescer {
+
+    static final class Typer {
+        final int userId;
+        final String userName;
+        volatile long lastSeen;
+        volatile long relayedAt;
+
+        Typer(int userId, String userName, long lastSeen) {
+            this.userId = userId;
+            this.userName = userName;
+            this.lastSeen = lastSeen;
+            this.relayedAt = lastSeen;
+        }
+    }
+
+    private final long idleMillis;
+    private final Map<Integer, Map<Integer, Typer>> typers = new ConcurrentHashMap<>();
+    private final Set<Integer> dirtyGroups = ConcurrentHashMap.newKeySet();
+
+    TypingCoalescer(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Keystroke from a user: starts typing or just keeps it alive.
+     *
+     * @return true when other nodes should hear about it: the user just started,
+     *         or the last relayed keep-alive is older than half the idle window
+     */
+    boolean touch(int groupId, int userId, String userName, long now) {
+        boolean[] relay = new boolean[1];
+        typers.compute(groupId, (k, group) -> {
+            if (group == null) {
+                group = new ConcurrentHashMap<>();
+            }
+            Typer existing = group.putIfAbsent(userId, new Typer(userId, userName, now));
+            if (existing == null) {
+                dirtyGroups.add(groupId);
+                relay[0] = true;
+            } else {
+                existing.lastSeen = now;
+                if (now - existing.relayedAt >= idleMillis / 2) {
+                    existing.relayedAt = now;
+                    relay[0] = true;
+                }
+            }
+            return group;
+        });
+        return relay[0];
+    }
+
+    /**
+     * Explicit stop (message sent, socket closed).
+     *
+     * @return true if the user was typing
+     */
+    boolean stop(int groupId, int userId) {
+        boolean[] removed = new boolean[1];
+        typers.computeIfPresent(groupId, (k, group) -> {
+            if (group.remove(userId) != null) {
+                dirtyGroups.add(groupId);
+                removed[0] = true;
+            }
+            return group;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Expires idle typers and returns the typer list of every group whose
+     * state changed since the previous call. An empty list means "nobody is typing".
+     */
+    Map<Integer, List<Typer>> drain(long now) {
+        for (Map.Entry<Integer, Map<Integer, Typer>> e : typers.entrySet()) {
+            Iterator<Typer> it = e.getValue().values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().lastSeen > idleMillis) {
+                    it.remove();
+                    dirtyGroups.add(e.getKey());
+                }
+            }
+        }
+
+        if (dirtyGroups.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Integer, List<Typer>> changed = new LinkedHashMap<>();
+        Iterator<Integer> it = dirtyGroups.iterator();
+        while (it.hasNext()) {
+            Integer groupId = it.next();
+            it.remove();
+            List<Typer> list = new ArrayList<>();
+            // drop empty groups atomically so a concurrent touch() never lands in a detached map
+            typers.computeIfPresent(groupId, (k, group) -> {
+                list.addAll(group.values());
+                return group.isEmpty() ? null : group;
+            });
+            changed.put(groupId, list);
+        }
+        return changed;
+    }
+}
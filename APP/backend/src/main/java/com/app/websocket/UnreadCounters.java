@@ -0,0 +1,285 @@
+package com.app.websocket;
+
+import com.app.config.Database;
+import com.app.model.Group;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unread message counts per (user, group), kept in memberships.unread_count
+ * and moved by deltas instead of COUNT queries over messages.
+ *
+ * A group's memory is the ids of the messages accepted since the last flush,
+ * plus an entry only for members who sent or read in that time: what they
+ * sent does not count for them, and reading up to the group's newest message
+ * resets their count to what came after it. A flush turns that into one
+ * additive UPDATE per group and one per entry, so instances flushing the same
+ * group add up instead of overwriting each other.
+ *
+ * A reset is not a value from this node's memory (other instances may still
+ * hold increments for the group): it is recounted in the UPDATE itself, from
+ * the messages after the reader's marker, and records the newest id it
+ * counted in memberships.unread_reset_id. Every delta only adds or removes
+ * its messages with a greater id, so one counted by a reset is never added
+ * again. Resets are only taken when the reader has caught up, so the recount
+ * covers a handful of rows. The group list and GET /api/messages/read overlay
+ * what is not flushed yet.
+ */
+public class UnreadCounters {
+
+    /** Message ids in arrival order; a few per group and flush interval. */
+    private static final class Ids {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        void addAll(Ids other) {
+            for (int i = 0; i < other.size; i++) add(other.ids[i]);
+        }
+
+        Integer[] boxed() {
+            Integer[] out = new Integer[size];
+            for (int i = 0; i < size; i++) out[i] = ids[i];
+            return out;
+        }
+    }
+
+    private static final class UserDelta {
+        // own messages since the flush (or since the reset)
+        final Ids sent = new Ids();
+        // the group's count when the user read up to date; -1 = no read since the flush
+        int resetAt = -1;
+        // the message the user read up to, for the recount
+        int readUpTo;
+    }
+
+    private static final class GroupDelta {
+        final Ids messages = new Ids();
+        final Map<Integer, UserDelta> users = new HashMap<>(4);
+
+        /** Unread messages for the user on top of the stored count (or instead of it, if reset). */
+        int pending(int userId) {
+            UserDelta u = users.get(userId);
+            if (u == null) return messages.size;
+            return messages.size - Math.max(u.resetAt, 0) - u.sent.size;
+        }
+
+        boolean reset(int userId) {
+            UserDelta u = users.get(userId);
+            return u != null && u.resetAt >= 0;
+        }
+
+        /** Puts a delta that failed to flush back in front of this (newer) one. */
+        void prepend(GroupDelta older) {
+            // a read in the newer delta wins; it now comes after the older messages
+            for (UserDelta u : users.values()) {
+                if (u.resetAt >= 0) u.resetAt += older.messages.size;
+            }
+            older.users.forEach((userId, o) -> {
+                UserDelta u = users.get(userId);
+                if (u == null) {
+                    users.put(userId, o);
+                } else if (u.resetAt < 0) {
+                    o.sent.addAll(u.sent);
+                    u.sent.ids = o.sent.ids;
+                    u.sent.size = o.sent.size;
+                    u.resetAt = o.resetAt;
+                    u.readUpTo = o.readUpTo;
+                }
+            });
+            older.messages.addAll(messages);
+            messages.ids = older.messages.ids;
+            messages.size = older.messages.size;
+        }
+    }
+
+    private final Map<Integer, GroupDelta> groups = new HashMap<>();
+    private final long flushMillis;
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong flushErrors = new AtomicLong();
+
+    public UnreadCounters(long flushMillis) {
+        this.flushMillis = flushMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "unread-counters");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Starts the write-behind flushes. */
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A chat message was stored in the group: one more unread for everyone but
+     * the sender. messageId 0 (published without being stored) only shows in
+     * the overlay, it is not in the table a reset recounts from.
+     */
+    public synchronized void onMessage(int groupId, int senderId, int messageId) {
+        GroupDelta g = groups.computeIfAbsent(groupId, k -> new GroupDelta());
+        g.messages.add(messageId);
+        g.users.computeIfAbsent(senderId, k -> new UserDelta()).sent.add(messageId);
+    }
+
+    /**
+     * The user has read the group up to messageId, its newest message (see
+     * ReadMarkerStore.isNewest); older reads do not count.
+     */
+    public synchronized void onRead(int userId, int groupId, int messageId) {
+        GroupDelta g = groups.computeIfAbsent(groupId, k -> new GroupDelta());
+        UserDelta u = g.users.computeIfAbsent(userId, k -> new UserDelta());
+        u.resetAt = g.messages.size;
+        u.readUpTo = Math.max(u.readUpTo, messageId);
+        u.sent.size = 0;
+    }
+
+    /** The stored count (memberships.unread_count) corrected by what is not flushed yet. */
+    public synchronized int unread(int userId, int groupId, int stored) {
+        GroupDelta g = groups.get(groupId);
+        if (g == null) return stored;
+        int base = g.reset(userId) ? 0 : stored;
+        return Math.max(0, base + g.pending(userId));
+    }
+
+    /** Fills unreadCount of the user's groups, as loaded by GroupRepository.findByUserId. */
+    public void overlay(int userId, List<Group> list) {
+        for (Group g : list) {
+            g.setUnreadCount(unread(userId, g.getGroupId(), g.getUnreadCount()));
+        }
+    }
+
+    /** Writes the deltas in one transaction; on failure they are merged back for the next round. */
+    public void flush() throws SQLException {
+        Map<Integer, GroupDelta> batch;
+        synchronized (this) {
+            if (groups.isEmpty()) return;
+            batch = new HashMap<>(groups);
+            groups.clear();
+        }
+
+        flushes.incrementAndGet();
+        try {
+            int rows = Database.inTransaction(conn -> {
+                int n = 0;
+                // everyone in the group first, then the corrections per member, then the recounts;
+                // each only counts the ids after the member's last recount
+                try (PreparedStatement all = conn.prepareStatement("""
+                        UPDATE memberships SET unread_count = unread_count
+                            + (SELECT COUNT(*) FROM unnest(?::int[]) id WHERE id > unread_reset_id)
+                        WHERE group_id = ?
+                        """)) {
+                    for (Map.Entry<Integer, GroupDelta> e : batch.entrySet()) {
+                        if (e.getValue().messages.size == 0) continue;
+                        all.setArray(1, conn.createArrayOf("integer", e.getValue().messages.boxed()));
+                        all.setInt(2, e.getKey());
+                        all.addBatch();
+                        n++;
+                    }
+                    all.executeBatch();
+                }
+                try (PreparedStatement sent = conn.prepareStatement("""
+                        UPDATE memberships SET unread_count = GREATEST(0, unread_count
+                            - (SELECT COUNT(*) FROM unnest(?::int[]) id WHERE id > unread_reset_id))
+                        WHERE user_id = ? AND group_id = ?
+                        """);
+                     PreparedStatement reset = conn.prepareStatement("""
+                        UPDATE memberships ms
+                        SET unread_count = c.unread,
+                            unread_reset_id = GREATEST(ms.unread_reset_id, c.newest)
+                        FROM (
+                            SELECT COUNT(*) FILTER (WHERE m.user_id IS DISTINCT FROM ?) AS unread,
+                                   COALESCE(MAX(m.message_id), ?) AS newest
+                            FROM messages m
+                            WHERE m.group_id = ?
+                              AND m.timestamp >= (SELECT timestamp FROM messages WHERE message_id = ?)
+                              AND m.message_id > ?
+                        ) c
+                        WHERE ms.user_id = ? AND ms.group_id = ?
+                        """)) {
+                    for (Map.Entry<Integer, GroupDelta> e : batch.entrySet()) {
+                        int groupId = e.getKey();
+                        for (Map.Entry<Integer, UserDelta> entry : e.getValue().users.entrySet()) {
+                            int userId = entry.getKey();
+                            UserDelta u = entry.getValue();
+                            if (u.resetAt >= 0) {
+                                reset.setInt(1, userId);
+                                reset.setInt(2, u.readUpTo);
+                                reset.setInt(3, groupId);
+                                reset.setInt(4, u.readUpTo);
+                                reset.setInt(5, u.readUpTo);
+                                reset.setInt(6, userId);
+                                reset.setInt(7, groupId);
+                                reset.addBatch();
+                            } else {
+                                sent.setArray(1, conn.createArrayOf("integer", u.sent.boxed()));
+                                sent.setInt(2, userId);
+                                sent.setInt(3, groupId);
+                                sent.addBatch();
+                            }
+                            n++;
+                        }
+                    }
+                    sent.executeBatch();
+                    reset.executeBatch();
+                }
+                return n;
+            });
+            rowsWritten.addAndGet(rows);
+        } catch (SQLException | RuntimeException e) {
+            flushErrors.incrementAndGet();
+            synchronized (this) {
+                batch.forEach((groupId, older) -> {
+                    GroupDelta newer = groups.get(groupId);
+                    if (newer == null) {
+                        groups.put(groupId, older);
+                    } else {
+                        newer.prepend(older);
+                    }
+                });
+            }
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception ignored) {
+            // retried next round; a failed run must not cancel the scheduled task
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("pendingGroups", groups.size());
+        out.put("flushes", flushes.get());
+        out.put("statements", rowsWritten.get());
+        out.put("flushErrors", flushErrors.get());
+        return out;
+    }
+
+    /** Last flush on the way down. */
+    public void shutdown() {
+        flusher.shutdownNow();
+        flushQuietly();
+    }
+}
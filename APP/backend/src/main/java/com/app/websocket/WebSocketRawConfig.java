@@ -1,23 +1,239 @@
 package com.app.websocket;
 
+import com.app.repository.MessageRepository;
+import com.app.websocket.cluster.ClusterBus;
+import com.app.websocket.cluster.LocalClusterBus;
+import com.app.websocket.cluster.PgNotifyClusterBus;
+import com.app.websocket.cluster.PresenceRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+import java.util.UUID;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketRawConfig implements WebSocketConfigurer {
 
+    private final MessageRepository messageRepository;
+
+    public WebSocketRawConfig(MessageRepository messageRepository) {
+        this.messageRepository = messageRepository;
+    }
+
+    @Value("${chat.typing.tick-ms:300}")
+    private long typingTickMillis;
+
+    @Value("${chat.typing.idle-ms:3000}")
+    private long typingIdleMillis;
+
+    @Value("${chat.replay.capacity:256}")
+    private int replayCapacity;
+
+    @Value("${chat.replay.max-age-ms:300000}")
+    private long replayMaxAgeMillis;
+
+    @Value("${chat.session.ping-ms:25000}")
+    private long pingMillis;
+
+    @Value("${chat.session.idle-timeout-ms:60000}")
+    private long idleTimeoutMillis;
+
+    @Value("${chat.session.send-queue-max:1000}")
+    private int sendQueueMax;
+
+    @Value("${chat.session.shed-low-at:32}")
+    private int shedLowAt;
+
+    @Value("${chat.session.sender-threads:16}")
+    private int senderThreads;
+
+    @Value("${chat.session.send-timeout-ms:5000}")
+    private long sendTimeoutMillis;
+
+    @Value("${chat.flood.message-rate:5}")
+    private double floodMessageRate;
+
+    @Value("${chat.flood.message-burst:20}")
+    private int floodMessageBurst;
+
+    @Value("${chat.flood.user-rate:10}")
+    private double floodUserRate;
+
+    @Value("${chat.flood.user-burst:40}")
+    private int floodUserBurst;
+
+    @Value("${chat.flood.close-after:50}")
+    private int floodCloseAfter;
+
+    @Value("${chat.flood.cool-down-ms:10000}")
+    private long floodCoolDownMillis;
+
+    @Value("${chat.dedupe.capacity:1024}")
+    private int dedupeCapacity;
+
+    @Value("${chat.dedupe.window-ms:600000}")
+    private long dedupeWindowMillis;
+
+    @Value("${chat.read.flush-ms:2000}")
+    private long readFlushMillis;
+
+    @Value("${chat.read.idle-ms:600000}")
+    private long readIdleMillis;
+
+    @Bean(initMethod = "start")
+    public ReadMarkerStore readMarkerStore() {
+        return new ReadMarkerStore(messageCache(), readFlushMillis, readIdleMillis);
+    }
+
+    @Value("${chat.unread.flush-ms:5000}")
+    private long unreadFlushMillis;
+
+    @Bean(initMethod = "start")
+    public UnreadCounters unreadCounters() {
+        return new UnreadCounters(unreadFlushMillis);
+    }
+
+    @Value("${chat.last-seen.flush-ms:30000}")
+    private long lastSeenFlushMillis;
+
+    @Bean(initMethod = "start")
+    public LastSeenTracker lastSeenTracker() {
+        return new LastSeenTracker(lastSeenFlushMillis);
+    }
+
+    @Value("${chat.history-cache.per-group:200}")
+    private int historyPerGroup;
+
+    @Value("${chat.history-cache.max-messages:50000}")
+    private int historyMaxMessages;
+
+    @Value("${chat.history-cache.max-age-ms:300000}")
+    private long historyMaxAgeMillis;
+
+    @Value("${chat.history-cache.idle-ms:600000}")
+    private long historyIdleMillis;
+
+    @Bean
+    public MessageCache messageCache() {
+        return new MessageCache(messageRepository, historyPerGroup, historyMaxMessages, historyMaxAgeMillis, historyIdleMillis);
+    }
+
+    @Value("${chat.cluster.bus:local}")
+    private String clusterBusType;
+
+    @Value("${chat.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${chat.cluster.channel:chat_bus}")
+    private String clusterChannel;
+
+    @Value("${chat.cluster.batch-max-bytes:7000}")
+    private int clusterBatchMaxBytes;
+
+    @Value("${chat.cluster.dispatch-threads:4}")
+    private int clusterDispatchThreads;
+
+    @Bean
+    public ClusterBus clusterBus() {
+        String id = (nodeId == null || nodeId.isBlank())
+                ? UUID.randomUUID().toString().substring(0, 8)
+                : nodeId;
+
+        if ("postgres".equalsIgnoreCase(clusterBusType)) {
+            return new PgNotifyClusterBus(id, clusterChannel, clusterBatchMaxBytes, clusterDispatchThreads);
+        }
+        return new LocalClusterBus(id);
+    }
+
+    @Value("${chat.presence.heartbeat-ms:5000}")
+    private long presenceHeartbeatMillis;
+
+    @Value("${chat.presence.ttl-ms:20000}")
+    private long presenceTtlMillis;
+
+    @Bean
+    public PresenceRegistry presenceRegistry() {
+        // the shared heartbeat table only matters when there are peers to share with
+        boolean shared = "postgres".equalsIgnoreCase(clusterBusType);
+        return new PresenceRegistry(clusterBus().nodeId(), shared, presenceHeartbeatMillis, presenceTtlMillis);
+    }
+
+    @Value("${chat.cluster.routing:broadcast}")
+    private String routing;
+
+    @Value("${chat.cluster.handoff-ms:2000}")
+    private long handoffMillis;
+
+    @Value("${chat.events.window-ms:150}")
+    private long eventWindowMillis;
+
+    @Value("${chat.events.max-delay-ms:500}")
+    private long eventMaxDelayMillis;
+
+    @Value("${chat.events.max-batch:100}")
+    private int eventMaxBatch;
+
     @Bean
     public ChatWebSocketHandler chatWebSocketHandler() {
-        return new ChatWebSocketHandler();
+        GroupRouter router = "owner".equalsIgnoreCase(routing)
+                ? new GroupRouter(clusterBus().nodeId(), handoffMillis)
+                : null;
+        return new ChatWebSocketHandler(
+                clusterBus(),
+                presenceRegistry(),
+                router,
+                membershipIndex(),
+                new TypingCoalescer(typingIdleMillis),
+                new EventCoalescer(eventWindowMillis, eventMaxDelayMillis, eventMaxBatch),
+                new FloodGuard(floodMessageRate, floodMessageBurst, floodUserRate, floodUserBurst,
+                        floodCloseAfter, floodCoolDownMillis),
+                new MessageDedupe(dedupeCapacity, dedupeWindowMillis),
+                readMarkerStore(),
+                unreadCounters(),
+                lastSeenTracker(),
+                messageCache(),
+                new ReplayBuffer(replayCapacity, replayMaxAgeMillis),
+                new SessionRegistry(pingMillis, idleTimeoutMillis, typingTickMillis,
+                        new OutboundLanes(sendQueueMax, shedLowAt)),
+                typingTickMillis,
+                senderThreads,
+                sendTimeoutMillis
+        );
+    }
+
+    @Value("${chat.membership.ttl-ms:60000}")
+    private long membershipTtlMillis;
+
+    @Bean
+    public MembershipIndex membershipIndex() {
+        return new MembershipIndex(membershipTtlMillis);
+    }
+
+    @Value("${chat.ws.deflate:all}")
+    private String deflate;
+
+    @Value("${chat.ws.max-message-bytes:65536}")
+    private int maxMessageBytes;
+
+    /** Container limits for /ws/chat (Tomcat's default buffers are 8 KB). */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxMessageBytes);
+        container.setMaxBinaryMessageBufferSize(maxMessageBytes);
+        return container;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatWebSocketHandler(), "/ws/chat")
+                .setHandshakeHandler(new ChatHandshakeHandler(deflate))
+                .addInterceptors(new JwtHandshakeInterceptor(membershipIndex()))
                 .setAllowedOriginPatterns("*");
     }
 }
@@ -0,0 +1,23 @@
+package com.app.websocket.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Fan-out channel between backend instances.
+ *
+ * publish() goes to every other node, send() to a single one. Neither delivers
+ * back to the sender; the listener only sees messages that originated elsewhere.
+ */
+public interface ClusterBus {
+
+    String nodeId();
+
+    void publish(ClusterMessage.Kind kind, int groupId, String payload);
+
+    /** Point-to-point delivery to one node (group owner routing). */
+    void send(String nodeId, ClusterMessage.Kind kind, int groupId, String payload);
+
+    void setListener(Consumer<ClusterMessage> listener);
+
+    void close();
+}
@@ -0,0 +1,49 @@
+package com.app.websocket.cluster;
+
+/**
+ * One frame relayed between backend instances.
+ * payload is the JSON the receiving node hands to its local sessions.
+ */
+public class ClusterMessage {
+
+    public enum Kind {
+        CHAT,
+        EVENT,
+        TYPING,
+        PRESENCE,
+        // chat frame handed from a non-owner node to the group's owner
+        FORWARD,
+        // store result of a FORWARDed message, back to the node of the sender's socket
+        ACK,
+        // read markers that moved on the sending node
+        RECEIPTS
+    }
+
+    private final Kind kind;
+    private final int groupId;
+    private final String origin;
+    private final String payload;
+
+    public ClusterMessage(Kind kind, int groupId, String origin, String payload) {
+        this.kind = kind;
+        this.groupId = groupId;
+        this.origin = origin;
+        this.payload = payload;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,40 @@
+package com.app.websocket.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Single-instance deployment: nothing to relay.
+ */
+public class LocalClusterBus implements ClusterBus {
+
+    private final String nodeId;
+
+    public LocalClusterBus(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterMessage.Kind kind, int groupId, String payload) {
+        // no other nodes
+    }
+
+    @Override
+    public void send(String nodeId, ClusterMessage.Kind kind, int groupId, String payload) {
+        // no other nodes
+    }
+
+    @Override
+    public void setListener(Consumer<ClusterMessage> listener) {
+        // nothing will ever arrive
+    }
+
+    @Override
+    public void close() {
+        // no-op
+    }
+}
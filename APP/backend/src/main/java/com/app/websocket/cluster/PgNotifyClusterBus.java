@@ -0,0 +1,373 @@
+package com.app.websocket.cluster;
+
+import com.app.config.Database;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ClusterBus on top of Postgres LISTEN/NOTIFY, so several Cloud Run instances
+ * can share chat traffic without extra infrastructure.
+ *
+ * Every node listens on the shared channel (publish) and on its own
+ * "<channel>_<node>" channel (send).
+ *
+ * Notification payload:
+ *   {"o":"<origin node>","m":[{"k":"CHAT","g":1,"p":"<frame json>"}, ...]}
+ * Everything queued while the sender was busy goes out packed into as few
+ * notifications as fit the payload limit, all in one transaction. A single
+ * frame that does not fit is stored in CLUSTER_SPILL and only its id is sent:
+ *   {"o":"<origin node>","r":42}
+ *
+ * The listener thread only reads and decodes notifications; the listener
+ * runs on dispatch threads, one per groupId % dispatchThreads, so frames of
+ * one group keep their order and a slow group does not stall the LISTEN
+ * connection.
+ */
+public class PgNotifyClusterBus implements ClusterBus {
+
+    // Postgres rejects NOTIFY payloads of 8000 bytes or more
+    private static final int NOTIFY_LIMIT = 7900;
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final long SPILL_CLEANUP_MS = 60_000;
+
+    private final String nodeId;
+    private final String channel;
+    private final String directChannel;
+    private final int batchMaxBytes;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // {target channel, serialized item}
+    private final BlockingQueue<String[]> outbound = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final String envelopePrefix;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    private volatile Consumer<ClusterMessage> listener = m -> { };
+    private volatile boolean running = true;
+    private final Thread senderThread;
+    private final Thread listenerThread;
+    private final ExecutorService[] dispatchers;
+
+    public PgNotifyClusterBus(String nodeId, String channel, int batchMaxBytes, int dispatchThreads) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid channel name: " + channel);
+        }
+        this.nodeId = nodeId;
+        this.channel = channel;
+        this.directChannel = directChannelOf(nodeId);
+        this.batchMaxBytes = Math.min(batchMaxBytes, NOTIFY_LIMIT);
+        try {
+            this.envelopePrefix = "{\"o\":" + mapper.writeValueAsString(nodeId) + ",";
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid node id", e);
+        }
+
+        this.dispatchers = new ExecutorService[Math.max(1, dispatchThreads)];
+        for (int i = 0; i < dispatchers.length; i++) {
+            String name = "cluster-bus-dispatch-" + i;
+            dispatchers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        this.senderThread = new Thread(this::sendLoop, "cluster-bus-sender");
+        this.listenerThread = new Thread(this::listenLoop, "cluster-bus-listener");
+        senderThread.setDaemon(true);
+        listenerThread.setDaemon(true);
+        senderThread.start();
+        listenerThread.start();
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterMessage.Kind kind, int groupId, String payload) {
+        enqueue(channel, kind, groupId, payload);
+    }
+
+    @Override
+    public void send(String targetNode, ClusterMessage.Kind kind, int groupId, String payload) {
+        enqueue(directChannelOf(targetNode), kind, groupId, payload);
+    }
+
+    private String directChannelOf(String node) {
+        return channel + "_" + node.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+    }
+
+    private void enqueue(String target, ClusterMessage.Kind kind, int groupId, String payload) {
+        ObjectNode item = mapper.createObjectNode();
+        item.put("k", kind.name());
+        item.put("g", groupId);
+        item.put("p", payload);
+        if (outbound.offer(new String[]{target, item.toString()})) {
+            published.incrementAndGet();
+        } else {
+            // database is too slow or down; remote nodes miss this frame, the local fan-out already happened
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void setListener(Consumer<ClusterMessage> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        senderThread.interrupt();
+        listenerThread.interrupt();
+        for (ExecutorService d : dispatchers) {
+            d.shutdownNow();
+        }
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getNotifications() {
+        return notifications.get();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    // =====================================================================
+    // SENDER
+    // =====================================================================
+
+    private void sendLoop() {
+        Connection conn = null;
+        long lastCleanup = System.currentTimeMillis();
+
+        while (running) {
+            try {
+                String[] first = outbound.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                List<String[]> drained = new ArrayList<>();
+                drained.add(first);
+                outbound.drainTo(drained, 1000);
+
+                // keep per-channel order, pack each channel separately
+                Map<String, List<String>> byChannel = new LinkedHashMap<>();
+                for (String[] e : drained) {
+                    byChannel.computeIfAbsent(e[0], k -> new ArrayList<>()).add(e[1]);
+                }
+
+                if (conn == null || conn.isClosed()) {
+                    conn = Database.get();
+                    conn.setAutoCommit(false);
+                }
+
+                for (Map.Entry<String, List<String>> e : byChannel.entrySet()) {
+                    sendBatch(conn, e.getKey(), e.getValue());
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastCleanup > SPILL_CLEANUP_MS) {
+                    try (Statement st = conn.createStatement()) {
+                        st.executeUpdate("DELETE FROM CLUSTER_SPILL WHERE created_at < CURRENT_TIMESTAMP - INTERVAL '5 minutes'");
+                    }
+                    lastCleanup = now;
+                }
+
+                // notifications are delivered on commit
+                conn.commit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                closeQuietly(conn);
+                conn = null;
+                sleepQuietly(1000);
+            }
+        }
+        closeQuietly(conn);
+    }
+
+    private void sendBatch(Connection conn, String target, List<String> batch) throws SQLException {
+        StringBuilder items = new StringBuilder();
+        int bytes = envelopePrefix.length() + 8;
+        int base = bytes;
+
+        for (String item : batch) {
+            int size = item.getBytes(StandardCharsets.UTF_8).length + 1;
+
+            if (base + size > batchMaxBytes) {
+                notify(conn, target, envelopePrefix + "\"r\":" + spill(conn, item) + "}");
+                continue;
+            }
+            if (bytes + size > batchMaxBytes) {
+                notify(conn, target, envelopePrefix + "\"m\":[" + items + "]}");
+                items.setLength(0);
+                bytes = base;
+            }
+            if (items.length() > 0) {
+                items.append(',');
+            }
+            items.append(item);
+            bytes += size;
+        }
+
+        if (items.length() > 0) {
+            notify(conn, target, envelopePrefix + "\"m\":[" + items + "]}");
+        }
+    }
+
+    private void notify(Connection conn, String target, String payload) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+            ps.setString(1, target);
+            ps.setString(2, payload);
+            ps.execute();
+        }
+        notifications.incrementAndGet();
+    }
+
+    private long spill(Connection conn, String item) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO CLUSTER_SPILL(payload) VALUES (?) RETURNING spill_id")) {
+            ps.setString(1, item);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                spilled.incrementAndGet();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // =====================================================================
+    // LISTENER
+    // =====================================================================
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection conn = Database.get()) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + channel);
+                    st.execute("LISTEN " + directChannel);
+                }
+                PGConnection pg = conn.unwrap(PGConnection.class);
+
+                while (running) {
+                    PGNotification[] batch = pg.getNotifications(500);
+                    if (batch == null) {
+                        continue;
+                    }
+                    for (PGNotification n : batch) {
+                        handle(conn, n.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                // connection lost: frames sent meanwhile are missed, reconnect and keep listening
+                sleepQuietly(1000);
+            }
+        }
+    }
+
+    private void handle(Connection conn, String text) {
+        try {
+            JsonNode env = mapper.readTree(text);
+            String origin = env.path("o").asText("");
+            if (nodeId.equals(origin)) {
+                return; // our own notification
+            }
+
+            if (env.has("r")) {
+                deliver(origin, mapper.readTree(loadSpill(conn, env.path("r").asLong())));
+            } else {
+                for (JsonNode item : env.path("m")) {
+                    deliver(origin, item);
+                }
+            }
+        } catch (Exception ignored) {
+            // a malformed notification must not stop the listener
+        }
+    }
+
+    private void deliver(String origin, JsonNode item) {
+        received.incrementAndGet();
+        ClusterMessage message = new ClusterMessage(
+                ClusterMessage.Kind.valueOf(item.path("k").asText()),
+                item.path("g").asInt(),
+                origin,
+                item.path("p").asText()
+        );
+        dispatchers[Math.floorMod(message.getGroupId(), dispatchers.length)].execute(() -> {
+            try {
+                listener.accept(message);
+            } catch (Exception ignored) {
+                // one failing frame must not stop its dispatch thread
+            }
+        });
+    }
+
+    private String loadSpill(Connection conn, long spillId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT payload FROM CLUSTER_SPILL WHERE spill_id = ?")) {
+            ps.setLong(1, spillId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Spilled frame " + spillId + " is gone");
+                }
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
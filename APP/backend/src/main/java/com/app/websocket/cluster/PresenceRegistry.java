@@ -0,0 +1,372 @@
+package com.app.websocket.cluster;
+
+import com.app.config.Database;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Who is online in which group, across all backend instances.
+ *
+ * Local sessions are tracked here directly. Every other node is mirrored in a
+ * local replica, so onlineUsers() never touches the database:
+ *  - each node heartbeats a compact summary of its own sessions into
+ *    PRESENCE_NODES, rewriting it only when it changed (version bump);
+ *  - rows whose heartbeat is older than the TTL are deleted, i.e. dead nodes
+ *    expire on their own;
+ *  - join/leave deltas travel over the ClusterBus and are applied to the
+ *    replica immediately; a node is re-read from the table only when its
+ *    version jumps (missed delta) or it was never seen before.
+ *
+ * With shared = false (single instance) there is no table and no heartbeat.
+ */
+public class PresenceRegistry {
+
+    private static final class LocalUser {
+        final String userName;
+        int sessions;
+
+        LocalUser(String userName) {
+            this.userName = userName;
+        }
+    }
+
+    private static final class RemoteNode {
+        long version;
+        boolean stale;
+        Map<Integer, Map<Integer, String>> groups = new HashMap<>();
+    }
+
+    /** A change of this node's presence that peers should hear about. */
+    public static final class Delta {
+        public final boolean join;
+        public final long version;
+
+        Delta(boolean join, long version) {
+            this.join = join;
+            this.version = version;
+        }
+    }
+
+    private final String nodeId;
+    private final long ttlMillis;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<Integer, Map<Integer, LocalUser>> local = new HashMap<>();
+    private final Map<String, RemoteNode> remote = new HashMap<>();
+    private long version = System.currentTimeMillis();
+    private long writtenVersion = -1;
+
+    private volatile Consumer<Set<Integer>> changeListener = groups -> { };
+    private final ScheduledExecutorService heartbeat;
+
+    public PresenceRegistry(String nodeId, boolean shared, long heartbeatMillis, long ttlMillis) {
+        this.nodeId = nodeId;
+        this.ttlMillis = ttlMillis;
+
+        if (shared) {
+            this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "presence-heartbeat");
+                t.setDaemon(true);
+                return t;
+            });
+            heartbeat.scheduleWithFixedDelay(this::beat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.heartbeat = null;
+        }
+    }
+
+    /** Called with the groups whose online set changed because of other nodes. */
+    public void setChangeListener(Consumer<Set<Integer>> listener) {
+        this.changeListener = listener;
+    }
+
+    // =====================================================================
+    // LOCAL SESSIONS
+    // =====================================================================
+
+    /** A local session of userId joined groupId. Returns a delta if the user just came online here. */
+    public synchronized Delta join(int groupId, int userId, String userName) {
+        Map<Integer, LocalUser> users = local.computeIfAbsent(groupId, k -> new HashMap<>());
+        LocalUser u = users.computeIfAbsent(userId, k -> new LocalUser(userName));
+        u.sessions++;
+        if (u.sessions > 1) {
+            return null;
+        }
+        return new Delta(true, ++version);
+    }
+
+    /** A local session left. Returns a delta if that was the user's last session in the group here. */
+    public synchronized Delta leave(int groupId, int userId) {
+        Map<Integer, LocalUser> users = local.get(groupId);
+        if (users == null) return null;
+        LocalUser u = users.get(userId);
+        if (u == null) return null;
+
+        if (--u.sessions > 0) {
+            return null;
+        }
+        users.remove(userId);
+        if (users.isEmpty()) {
+            local.remove(groupId);
+        }
+        return new Delta(false, ++version);
+    }
+
+    // =====================================================================
+    // READS (local replica only)
+    // =====================================================================
+
+    /** Distinct online user names of a group on all live nodes. */
+    public synchronized List<String> onlineUsers(int groupId) {
+        Map<Integer, String> merged = new LinkedHashMap<>();
+        Map<Integer, LocalUser> mine = local.get(groupId);
+        if (mine != null) {
+            mine.forEach((userId, u) -> merged.put(userId, u.userName));
+        }
+        for (RemoteNode node : remote.values()) {
+            Map<Integer, String> theirs = node.groups.get(groupId);
+            if (theirs != null) {
+                theirs.forEach(merged::putIfAbsent);
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /** This node plus every peer with a live heartbeat. */
+    public synchronized Set<String> liveNodes() {
+        Set<String> nodes = new HashSet<>(remote.keySet());
+        nodes.add(nodeId);
+        return nodes;
+    }
+
+    /** Nodes (including this one) that have at least one session in the group. */
+    public synchronized Set<String> nodesWithGroup(int groupId) {
+        Set<String> nodes = new HashSet<>();
+        if (local.containsKey(groupId)) {
+            nodes.add(nodeId);
+        }
+        remote.forEach((id, node) -> {
+            if (node.groups.containsKey(groupId)) {
+                nodes.add(id);
+            }
+        });
+        return nodes;
+    }
+
+    // =====================================================================
+    // REMOTE DELTAS (from the cluster bus)
+    // =====================================================================
+
+    /**
+     * Applies a peer's join/leave. A version gap means we missed something,
+     * so the peer is re-read from the table on the next heartbeat instead.
+     *
+     * @return true if the group's online set may have changed
+     */
+    public synchronized boolean applyRemote(String origin, int groupId, boolean join,
+                                            long deltaVersion, int userId, String userName) {
+        RemoteNode node = remote.get(origin);
+        if (node == null || node.stale || deltaVersion != node.version + 1) {
+            if (node == null) {
+                node = new RemoteNode();
+                remote.put(origin, node);
+            }
+            node.stale = true;
+        } else {
+            node.version = deltaVersion;
+        }
+
+        // apply anyway: the table refresh will correct it if needed
+        Map<Integer, String> users = node.groups.computeIfAbsent(groupId, k -> new HashMap<>());
+        if (join) {
+            users.put(userId, userName);
+        } else {
+            users.remove(userId);
+            if (users.isEmpty()) {
+                node.groups.remove(groupId);
+            }
+        }
+        return true;
+    }
+
+    // =====================================================================
+    // HEARTBEAT
+    // =====================================================================
+
+    private void beat() {
+        try (Connection conn = Database.get()) {
+            writeOwnRow(conn);
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE FROM PRESENCE_NODES WHERE heartbeat_at < CURRENT_TIMESTAMP - (? * INTERVAL '1 millisecond')")) {
+                ps.setLong(1, ttlMillis);
+                ps.executeUpdate();
+            }
+
+            refreshReplica(conn);
+        } catch (Exception ignored) {
+            // next heartbeat retries; the replica keeps serving the last known state
+        }
+    }
+
+    private void writeOwnRow(Connection conn) throws Exception {
+        long v;
+        String summary = null;
+        synchronized (this) {
+            v = version;
+            if (v != writtenVersion) {
+                summary = summaryJson();
+            }
+        }
+
+        if (summary == null) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE PRESENCE_NODES SET heartbeat_at = CURRENT_TIMESTAMP WHERE node_id = ?")) {
+                ps.setString(1, nodeId);
+                if (ps.executeUpdate() > 0) {
+                    return;
+                }
+            }
+            // our row expired (long pause) — write it again in full
+            synchronized (this) {
+                summary = summaryJson();
+            }
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement("""
+                INSERT INTO PRESENCE_NODES(node_id, version, summary, heartbeat_at)
+                VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+                ON CONFLICT (node_id) DO UPDATE
+                SET version = EXCLUDED.version, summary = EXCLUDED.summary, heartbeat_at = EXCLUDED.heartbeat_at
+                """)) {
+            ps.setString(1, nodeId);
+            ps.setLong(2, v);
+            ps.setString(3, summary);
+            ps.executeUpdate();
+        }
+        synchronized (this) {
+            writtenVersion = v;
+        }
+    }
+
+    /** {"12":[[5,"Ann"],[7,"Bob"]], ...} */
+    private String summaryJson() {
+        ObjectNode root = mapper.createObjectNode();
+        local.forEach((groupId, users) -> {
+            ArrayNode arr = root.putArray(String.valueOf(groupId));
+            users.forEach((userId, u) -> arr.addArray().add(userId).add(u.userName));
+        });
+        return root.toString();
+    }
+
+    private void refreshReplica(Connection conn) throws Exception {
+        Map<String, Long> live = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT node_id, version FROM PRESENCE_NODES WHERE node_id <> ?")) {
+            ps.setString(1, nodeId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    live.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+
+        Set<Integer> changed = new HashSet<>();
+        List<String> toFetch = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, RemoteNode>> it = remote.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, RemoteNode> e = it.next();
+                if (!live.containsKey(e.getKey())) {
+                    changed.addAll(e.getValue().groups.keySet());
+                    it.remove();
+                }
+            }
+            live.forEach((id, v) -> {
+                RemoteNode node = remote.get(id);
+                if (node == null || node.stale || node.version != v) {
+                    toFetch.add(id);
+                }
+            });
+        }
+
+        if (!toFetch.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT node_id, version, summary FROM PRESENCE_NODES WHERE node_id = ANY(?)")) {
+                Array ids = conn.createArrayOf("text", toFetch.toArray());
+                ps.setArray(1, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        changed.addAll(replace(rs.getString(1), rs.getLong(2), rs.getString(3)));
+                    }
+                }
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            changeListener.accept(changed);
+        }
+    }
+
+    private Set<Integer> replace(String id, long v, String summary) throws Exception {
+        Map<Integer, Map<Integer, String>> groups = new HashMap<>();
+        JsonNode root = mapper.readTree(summary);
+        for (Map.Entry<String, JsonNode> e : root.properties()) {
+            Map<Integer, String> users = new HashMap<>();
+            e.getValue().forEach(pair -> users.put(pair.get(0).asInt(), pair.get(1).asText()));
+            groups.put(Integer.parseInt(e.getKey()), users);
+        }
+
+        synchronized (this) {
+            RemoteNode node = remote.computeIfAbsent(id, k -> new RemoteNode());
+            if (!node.stale && node.version > v) {
+                return Set.of(); // deltas already moved past the row we read
+            }
+            Set<Integer> changed = new HashSet<>();
+            Set<Integer> all = new HashSet<>(node.groups.keySet());
+            all.addAll(groups.keySet());
+            for (Integer g : all) {
+                if (!Objects.equals(node.groups.get(g), groups.get(g))) {
+                    changed.add(g);
+                }
+            }
+            node.groups = groups;
+            node.version = v;
+            node.stale = false;
+            return changed;
+        }
+    }
+
+    public void close() {
+        if (heartbeat == null) return;
+        heartbeat.shutdownNow();
+        try (Connection conn = Database.get();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM PRESENCE_NODES WHERE node_id = ?")) {
+            ps.setString(1, nodeId);
+            ps.executeUpdate();
+        } catch (SQLException ignored) {
+            // the row expires by TTL anyway
+        }
+    }
+}
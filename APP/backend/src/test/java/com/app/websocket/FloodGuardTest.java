@@ -0,0 +1,95 @@
+package com.app.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FloodGuardTest {
+
+    private static final long MS = 1_000_000L;
+
+    // buckets start full at their creation time; start the clock well after it
+    private final long t0 = System.nanoTime() + 1_000 * MS;
+
+    @Test
+    void burstPassesThenDrops() {
+        FloodGuard guard = new FloodGuard(10, 5, 0, 0, 100, 1_000);
+        FloodGuard.Bucket session = new FloodGuard.Bucket();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(guard.onMessage(session, 1, t0)).isEqualTo(FloodGuard.Verdict.PASS);
+        }
+        assertThat(guard.onMessage(session, 1, t0)).isEqualTo(FloodGuard.Verdict.WARN);
+        assertThat(session.dropped).isEqualTo(1);
+    }
+
+    @Test
+    void refillsAtTheRate() {
+        FloodGuard guard = new FloodGuard(10, 2, 0, 0, 100, 1_000);
+        FloodGuard.Bucket session = new FloodGuard.Bucket();
+        guard.onMessage(session, 1, t0);
+        guard.onMessage(session, 1, t0);
+        assertThat(guard.onMessage(session, 1, t0 + 50 * MS)).isNotEqualTo(FloodGuard.Verdict.PASS);
+
+        // one token per 100 ms
+        assertThat(guard.retryAfterMillis(session, t0 + 50 * MS)).isEqualTo(50);
+        assertThat(guard.onMessage(session, 1, t0 + 100 * MS)).isEqualTo(FloodGuard.Verdict.PASS);
+        assertThat(guard.onMessage(session, 1, t0 + 100 * MS)).isNotEqualTo(FloodGuard.Verdict.PASS);
+
+        // a long pause refills up to the burst, not beyond
+        long later = t0 + 10_000 * MS;
+        assertThat(guard.onMessage(session, 1, later)).isEqualTo(FloodGuard.Verdict.PASS);
+        assertThat(guard.onMessage(session, 1, later)).isEqualTo(FloodGuard.Verdict.PASS);
+        assertThat(guard.onMessage(session, 1, later)).isNotEqualTo(FloodGuard.Verdict.PASS);
+    }
+
+    @Test
+    void warnsOnFirstStrikeThenDropsThenCloses() {
+        FloodGuard guard = new FloodGuard(1, 1, 0, 0, 4, 1_000);
+        FloodGuard.Bucket session = new FloodGuard.Bucket();
+        assertThat(guard.onMessage(session, 1, t0)).isEqualTo(FloodGuard.Verdict.PASS);
+
+        assertThat(guard.onMessage(session, 1, t0 + MS)).isEqualTo(FloodGuard.Verdict.WARN);
+        assertThat(guard.onMessage(session, 1, t0 + 2 * MS)).isEqualTo(FloodGuard.Verdict.DROP);
+        assertThat(guard.onMessage(session, 1, t0 + 3 * MS)).isEqualTo(FloodGuard.Verdict.DROP);
+        assertThat(guard.onMessage(session, 1, t0 + 4 * MS)).isEqualTo(FloodGuard.Verdict.CLOSE);
+        assertThat(session.dropped).isEqualTo(4);
+    }
+
+    @Test
+    void strikesResetAfterTheCoolDown() {
+        FloodGuard guard = new FloodGuard(1, 1, 0, 0, 3, 100);
+        FloodGuard.Bucket session = new FloodGuard.Bucket();
+        guard.onMessage(session, 1, t0);
+        assertThat(guard.onMessage(session, 1, t0 + MS)).isEqualTo(FloodGuard.Verdict.WARN);
+        assertThat(guard.onMessage(session, 1, t0 + 2 * MS)).isEqualTo(FloodGuard.Verdict.DROP);
+
+        // quiet for longer than the cool-down: the next drop is a first strike again
+        assertThat(guard.onMessage(session, 1, t0 + 200 * MS)).isEqualTo(FloodGuard.Verdict.WARN);
+        assertThat(guard.onMessage(session, 1, t0 + 201 * MS)).isEqualTo(FloodGuard.Verdict.DROP);
+        assertThat(guard.onMessage(session, 1, t0 + 202 * MS)).isEqualTo(FloodGuard.Verdict.CLOSE);
+    }
+
+    @Test
+    void userLimitSpansSockets() {
+        FloodGuard guard = new FloodGuard(0, 0, 1, 3, 100, 1_000);
+        FloodGuard.Bucket tab1 = new FloodGuard.Bucket();
+        FloodGuard.Bucket tab2 = new FloodGuard.Bucket();
+
+        assertThat(guard.onMessage(tab1, 7, t0)).isEqualTo(FloodGuard.Verdict.PASS);
+        assertThat(guard.onMessage(tab2, 7, t0)).isEqualTo(FloodGuard.Verdict.PASS);
+        assertThat(guard.onMessage(tab1, 7, t0)).isEqualTo(FloodGuard.Verdict.PASS);
+        assertThat(guard.onMessage(tab2, 7, t0)).isEqualTo(FloodGuard.Verdict.WARN);
+        // another user has its own bucket
+        assertThat(guard.onMessage(tab2, 8, t0)).isEqualTo(FloodGuard.Verdict.PASS);
+    }
+
+    @Test
+    void zeroRateDisablesTheLimit() {
+        FloodGuard guard = new FloodGuard(0, 0, 0, 0, 1, 1_000);
+        FloodGuard.Bucket session = new FloodGuard.Bucket();
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(guard.onMessage(session, 1, t0)).isEqualTo(FloodGuard.Verdict.PASS);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.app.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntObjectMapTest {
+
+    /** Same spreading as IntObjectMap, to pick keys that collide in a 16-slot table. */
+    private static int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & 15;
+    }
+
+    private static List<Integer> keysInSlot(int slot, int count) {
+        List<Integer> out = new ArrayList<>();
+        for (int k = 1; out.size() < count; k++) {
+            if (slot(k) == slot) out.add(k);
+        }
+        return out;
+    }
+
+    @Test
+    void putGetReplace() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertThat(map.put(1, "a")).isNull();
+        assertThat(map.put(2, "b")).isNull();
+        assertThat(map.put(1, "c")).isEqualTo("a");
+
+        assertThat(map.get(1)).isEqualTo("c");
+        assertThat(map.get(2)).isEqualTo("b");
+        assertThat(map.get(3)).isNull();
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void negativeAndZeroKeys() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        map.put(0, "zero");
+        map.put(-1, "minus");
+        map.put(Integer.MIN_VALUE, "min");
+
+        assertThat(map.get(0)).isEqualTo("zero");
+        assertThat(map.get(-1)).isEqualTo("minus");
+        assertThat(map.get(Integer.MIN_VALUE)).isEqualTo("min");
+    }
+
+    @Test
+    void removeReturnsOldValue() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        map.put(1, "a");
+        assertThat(map.remove(1)).isEqualTo("a");
+        assertThat(map.remove(1)).isNull();
+        assertThat(map.get(1)).isNull();
+        assertThat(map.size()).isZero();
+    }
+
+    @Test
+    void probeRunWrapsAroundTheTable() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        // three keys homed at the last slot: two of them wrap to slots 0 and 1
+        List<Integer> keys = keysInSlot(15, 3);
+        for (int k : keys) map.put(k, "v" + k);
+        assertThat(map.capacity()).isEqualTo(16);
+        for (int k : keys) assertThat(map.get(k)).isEqualTo("v" + k);
+
+        // removing the head of the run shifts the wrapped entries back
+        map.remove(keys.get(0));
+        assertThat(map.get(keys.get(0))).isNull();
+        assertThat(map.get(keys.get(1))).isEqualTo("v" + keys.get(1));
+        assertThat(map.get(keys.get(2))).isEqualTo("v" + keys.get(2));
+
+        map.remove(keys.get(1));
+        assertThat(map.get(keys.get(2))).isEqualTo("v" + keys.get(2));
+    }
+
+    @Test
+    void removeKeepsEntriesHomedAfterTheHoleInPlace() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        int a = keysInSlot(14, 1).get(0);
+        List<Integer> b = keysInSlot(15, 2); // slot 15, then wraps to 0
+        int c = keysInSlot(0, 1).get(0);     // home 0, pushed to 1
+        map.put(a, "a");
+        map.put(b.get(0), "b0");
+        map.put(b.get(1), "b1");
+        map.put(c, "c");
+
+        map.remove(a);
+        map.remove(b.get(0));
+        assertThat(map.get(b.get(1))).isEqualTo("b1");
+        assertThat(map.get(c)).isEqualTo("c");
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void growsAndShrinks() {
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        for (int k = 0; k < 1000; k++) map.put(k, k);
+        assertThat(map.capacity()).isGreaterThanOrEqualTo(2000);
+        for (int k = 0; k < 1000; k++) assertThat(map.get(k)).isEqualTo(k);
+
+        for (int k = 0; k < 990; k++) map.remove(k);
+        assertThat(map.capacity()).isLessThan(2000);
+        for (int k = 990; k < 1000; k++) assertThat(map.get(k)).isEqualTo(k);
+    }
+
+    @Test
+    void matchesHashMapUnderRandomChurn() {
+        Random random = new Random(42);
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        // a small key space keeps the table small, so runs collide and wrap often
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(24);
+            if (random.nextBoolean()) {
+                assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+            } else {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            }
+        }
+        assertThat(map.size()).isEqualTo(expected.size());
+        Map<Integer, Integer> actual = new HashMap<>();
+        map.forEachEntry(actual::put);
+        assertThat(actual).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,105 @@
+package com.app.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplayBufferTest {
+
+    private static final long NOW = 1_000_000L;
+
+    private static long seqOf(String frame) {
+        return Long.parseLong(frame.substring("{\"seq\":".length(), frame.indexOf(',')));
+    }
+
+    private static long append(ReplayBuffer buffer, int groupId, String json, Topic topic, long now) {
+        return seqOf(buffer.append(groupId, json, topic, now, f -> { }));
+    }
+
+    @Test
+    void stampsSeqAsFirstFieldAndPublishesTheStampedFrame() {
+        ReplayBuffer buffer = new ReplayBuffer(8, 60_000);
+        List<String> published = new ArrayList<>();
+        String frame = buffer.append(1, "{\"type\":\"message\"}", Topic.CHAT, NOW, published::add);
+
+        assertThat(frame).startsWith("{\"seq\":").endsWith(",\"type\":\"message\"}");
+        assertThat(published).containsExactly(frame);
+        assertThat(buffer.currentSeq(1)).isEqualTo(seqOf(frame));
+    }
+
+    @Test
+    void returnsFramesAfterLastSeq() {
+        ReplayBuffer buffer = new ReplayBuffer(8, 60_000);
+        long first = append(buffer, 1, "{\"n\":1}", Topic.CHAT, NOW);
+        append(buffer, 1, "{\"n\":2}", Topic.CHAT, NOW);
+        append(buffer, 1, "{\"n\":3}", Topic.CHAT, NOW);
+
+        List<String> frames = buffer.since(1, first, Topic.ALL, NOW);
+        assertThat(frames).hasSize(2);
+        assertThat(frames.get(0)).endsWith("\"n\":2}");
+        assertThat(frames.get(1)).endsWith("\"n\":3}");
+    }
+
+    @Test
+    void upToDateClientGetsNothing() {
+        ReplayBuffer buffer = new ReplayBuffer(8, 60_000);
+        long seq = append(buffer, 1, "{\"n\":1}", Topic.CHAT, NOW);
+
+        assertThat(buffer.since(1, seq, Topic.ALL, NOW)).isEmpty();
+    }
+
+    @Test
+    void filtersByTopicButStillReplays() {
+        ReplayBuffer buffer = new ReplayBuffer(8, 60_000);
+        long first = append(buffer, 1, "{\"n\":1}", Topic.CHAT, NOW);
+        append(buffer, 1, "{\"n\":2}", Topic.TYPING, NOW);
+        append(buffer, 1, "{\"n\":3}", Topic.CHAT, NOW);
+
+        List<String> frames = buffer.since(1, first, Topic.CHAT.bit(), NOW);
+        assertThat(frames).hasSize(1);
+        assertThat(frames.get(0)).endsWith("\"n\":3}");
+    }
+
+    @Test
+    void evictedGapNeedsResync() {
+        ReplayBuffer buffer = new ReplayBuffer(2, 60_000);
+        long first = append(buffer, 1, "{\"n\":1}", Topic.CHAT, NOW);
+        append(buffer, 1, "{\"n\":2}", Topic.CHAT, NOW);
+        append(buffer, 1, "{\"n\":3}", Topic.CHAT, NOW);
+        append(buffer, 1, "{\"n\":4}", Topic.CHAT, NOW);
+
+        assertThat(buffer.since(1, first, Topic.ALL, NOW)).isNull();
+        assertThat(buffer.since(1, first + 1, Topic.ALL, NOW)).hasSize(2);
+    }
+
+    @Test
+    void agedGapNeedsResync() {
+        ReplayBuffer buffer = new ReplayBuffer(8, 1_000);
+        long first = append(buffer, 1, "{\"n\":1}", Topic.CHAT, NOW);
+        append(buffer, 1, "{\"n\":2}", Topic.CHAT, NOW);
+
+        assertThat(buffer.since(1, first, Topic.ALL, NOW + 500)).hasSize(1);
+        assertThat(buffer.since(1, first, Topic.ALL, NOW + 2_000)).isNull();
+    }
+
+    @Test
+    void seqFromAnotherRingNeedsResync() {
+        ReplayBuffer buffer = new ReplayBuffer(8, 1_000);
+        long old = append(buffer, 1, "{\"n\":1}", Topic.CHAT, NOW);
+        buffer.evictIdle(NOW + 2_000);
+
+        assertThat(buffer.since(1, old, Topic.ALL, NOW + 2_000)).isNull();
+        append(buffer, 1, "{\"n\":2}", Topic.CHAT, NOW + 2_000);
+        // the recreated ring numbers from its own creation time, so the old seq is a gap
+        assertThat(buffer.since(1, old, Topic.ALL, NOW + 2_000)).isNull();
+        assertThat(buffer.since(1, Long.MAX_VALUE, Topic.ALL, NOW + 2_000)).isNull();
+    }
+
+    @Test
+    void unknownGroupNeedsResync() {
+        assertThat(new ReplayBuffer(8, 60_000).since(42, 1, Topic.ALL, NOW)).isNull();
+    }
+}
@@ -0,0 +1,75 @@
+package com.app.websocket.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    private static final int GROUPS = 10_000;
+
+    private static Map<Integer, String> owners(ConsistentHashRing ring) {
+        Map<Integer, String> out = new HashMap<>();
+        for (int g = 1; g <= GROUPS; g++) {
+            out.put(g, ring.owner(g));
+        }
+        return out;
+    }
+
+    @Test
+    void emptyRingHasNoOwner() {
+        assertThat(new ConsistentHashRing(Set.of()).owner(1)).isNull();
+    }
+
+    @Test
+    void ownershipDoesNotDependOnNodeOrder() {
+        ConsistentHashRing a = new ConsistentHashRing(List.of("n1", "n2", "n3"));
+        ConsistentHashRing b = new ConsistentHashRing(List.of("n3", "n1", "n2"));
+        assertThat(owners(a)).isEqualTo(owners(b));
+    }
+
+    @Test
+    void groupsSpreadOverAllNodes() {
+        Map<Integer, String> owners = owners(new ConsistentHashRing(Set.of("n1", "n2", "n3", "n4")));
+        Map<String, Integer> perNode = new HashMap<>();
+        owners.values().forEach(n -> perNode.merge(n, 1, Integer::sum));
+
+        assertThat(perNode).containsOnlyKeys("n1", "n2", "n3", "n4");
+        // 64 virtual nodes each: no node is far off its quarter
+        perNode.values().forEach(n -> assertThat(n).isBetween(GROUPS / 8, GROUPS / 2));
+    }
+
+    @Test
+    void addingANodeOnlyMovesGroupsToIt() {
+        Map<Integer, String> before = owners(new ConsistentHashRing(Set.of("n1", "n2", "n3")));
+        Map<Integer, String> after = owners(new ConsistentHashRing(Set.of("n1", "n2", "n3", "n4")));
+
+        int moved = 0;
+        for (int g = 1; g <= GROUPS; g++) {
+            if (!before.get(g).equals(after.get(g))) {
+                assertThat(after.get(g)).isEqualTo("n4");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(GROUPS / 8, GROUPS / 2);
+    }
+
+    @Test
+    void removingANodeOnlyMovesItsGroups() {
+        Map<Integer, String> before = owners(new ConsistentHashRing(Set.of("n1", "n2", "n3")));
+        Map<Integer, String> after = owners(new ConsistentHashRing(Set.of("n1", "n3")));
+
+        for (int g = 1; g <= GROUPS; g++) {
+            if (!before.get(g).equals("n2")) {
+                assertThat(after.get(g)).isEqualTo(before.get(g));
+            } else {
+                assertThat(after.get(g)).isIn("n1", "n3");
+            }
+        }
+    }
+}
@@ -179,6 +179,21 @@ function App() {
 
   const handleTaskEvent = useCallback(
     (message) => {
+      if (message?.type === "EVENTS") {
+        // one notification per batch
+        const taskEvents = message.events.filter((e) => e.event?.startsWith("TASK_"));
+        if (taskEvents.length === 0) return;
+        if (taskEvents.length > 1) {
+          const groupId = message.groupId;
+          showNotification({
+            title: "Task activity",
+            text: `${taskEvents.length} tasks were changed`,
+            action: { label: "Open tasks", handler: () => openTasks(groupId) },
+          });
+          return;
+        }
+        message = { ...taskEvents[0], type: "EVENT", groupId: message.groupId };
+      }
       if (!message || message.type !== "EVENT") return;
       const { event, payload, groupId } = message;
       if (!event || !event.startsWith("TASK_")) return;
@@ -217,7 +232,8 @@ function App() {
 
   useEffect(() => {
     if (user && knownGroups.length) {
-      joinGroups(knownGroups.map((g) => g.groupId), user);
+      // this socket only drives task notifications and the Tasks page
+      joinGroups(knownGroups.map((g) => g.groupId), user, ["tasks"]);
     }
   }, [user, knownGroups]);
 
@@ -1,5 +1,27 @@
 import { useEffect, useRef, useState, useCallback } from "react";
-import { apiGet, apiDownload, WS_BASE } from "../services/api";
+import { apiGet, apiDownload, chatSocketUrl } from "../services/api";
+
+const PAGE_SIZE = 100;
+
+// history rows -> the shape of websocket "message" frames
+const fromHistory = (m) => ({
+  messageId: m.messageId,
+  userId: m.userId,
+  userName: m.userName,
+  text: m.content,
+  resourceId: m.resourceId,
+  resourceTitle: m.resourceTitle,
+  taskId: m.taskId,
+  timestamp: m.timestamp,
+  clientMsgId: m.clientMsgId,
+});
+
+// search headlines mark matches with <mark>; rendered as text, never as HTML
+function Headline({ text }) {
+  return (text || "").split(/(<mark>.*?<\/mark>)/).map((part, i) =>
+    part.startsWith("<mark>") ? <mark key={i}>{part.slice(6, -7)}</mark> : part
+  );
+}
 
 function SkeletonMessage() {
   return <div className="chat-message skeleton" style={{ width: "60%" }}></div>;
@@ -15,10 +37,21 @@ export default function Chat({ user, group, goBack, onNotify }) {
   const [loading, setLoading] = useState(true);
   const [resources, setResources] = useState([]);
   const [resourceId, setResourceId] = useState("");
+  // userId -> last messageId they have read in this group
+  const [readMarkers, setReadMarkers] = useState({});
+  // the last history page was full: there may be more before it
+  const [hasOlder, setHasOlder] = useState(false);
+  const [loadingOlder, setLoadingOlder] = useState(false);
+  const [query, setQuery] = useState("");
+  // null = not searching; otherwise {hits, next}
+  const [search, setSearch] = useState(null);
 
   const socketRef = useRef(null);
   const logRef = useRef(null);
-  const typingTimeouts = useRef({});
+  const lastTypingSent = useRef(0);
+  // sent but not acknowledged yet, by clientMsgId; resent after a reconnect
+  const pendingRef = useRef(new Map());
+  const lastReadSent = useRef(0);
 
   const scrollToBottom = useCallback(() => {
     if (logRef.current) {
@@ -26,20 +59,11 @@ export default function Chat({ user, group, goBack, onNotify }) {
     }
   }, []);
 
+  // server sends the full list of typers for the group whenever it changes
   const handleTyping = useCallback((msg) => {
-    const { userId, userName } = msg;
-
-    setTypingUsers((prev) => {
-      if (!prev.includes(userName)) return [...prev, userName];
-      return prev;
-    });
-
-    if (typingTimeouts.current[userId]) clearTimeout(typingTimeouts.current[userId]);
-
-    typingTimeouts.current[userId] = setTimeout(() => {
-      setTypingUsers((prev) => prev.filter((u) => u !== userName));
-    }, 2000);
-  }, []);
+    const users = Array.isArray(msg.users) ? msg.users : [];
+    setTypingUsers(users.filter((u) => u.userId !== user.userId).map((u) => u.userName));
+  }, [user]);
 
   // Load resources for quick sharing
   useEffect(() => {
@@ -56,59 +80,123 @@ export default function Chat({ user, group, goBack, onNotify }) {
     })();
   }, [groupId]);
 
-  useEffect(() => {
-    if (!groupId) return;
+  const loadHistory = useCallback(async () => {
+    try {
+      // newest page only; older ones are fetched on demand
+      const hist = await apiGet(`/api/messages?groupId=${groupId}&limit=${PAGE_SIZE}`);
+      if (Array.isArray(hist)) {
+        setMessages(hist.map(fromHistory));
+        setHasOlder(hist.length === PAGE_SIZE);
+      } else {
+        setMessages([]);
+        setHasOlder(false);
+      }
+    } catch {
+      setMessages([]);
+      setHasOlder(false);
+    }
+  }, [groupId]);
 
-    setLoading(true);
-    (async () => {
+  const runSearch = useCallback(
+    async (cursor) => {
+      const q = query.trim();
+      if (!q) {
+        setSearch(null);
+        return;
+      }
+      const params = `groupId=${groupId}&q=${encodeURIComponent(q)}${cursor ? `&cursor=${encodeURIComponent(cursor)}` : ""}`;
       try {
-        const hist = await apiGet(`/api/messages?groupId=${groupId}`);
-        if (Array.isArray(hist)) {
-          // shape to align with websocket payload
-          const mapped = hist.map((m) => ({
-            userId: m.userId,
-            userName: m.userName,
-            text: m.content,
-            resourceId: m.resourceId,
-            resourceTitle: m.resourceTitle,
-            taskId: m.taskId,
-            timestamp: m.timestamp,
-          }));
-          setMessages(mapped);
-        } else {
-          setMessages([]);
-        }
+        const res = await apiGet(`/api/messages/search?${params}`);
+        setSearch((prev) => ({
+          hits: [...(cursor && prev ? prev.hits : []), ...(res?.hits || [])],
+          next: res?.next || null,
+        }));
       } catch {
-        setMessages([]);
-      } finally {
-        setLoading(false);
+        setSearch({ hits: [], next: null });
       }
-    })();
+    },
+    [groupId, query]
+  );
+
+  const loadOlder = useCallback(async () => {
+    const oldest = messages.find((m) => m.messageId);
+    if (!oldest) return;
+    setLoadingOlder(true);
+    try {
+      const page = await apiGet(
+        `/api/messages?groupId=${groupId}&limit=${PAGE_SIZE}&before=${oldest.messageId}`
+      );
+      if (Array.isArray(page)) {
+        setMessages((prev) => [...page.map(fromHistory), ...prev]);
+        setHasOlder(page.length === PAGE_SIZE);
+      }
+    } catch {
+      // keep what is shown; the button stays for another try
+    } finally {
+      setLoadingOlder(false);
+    }
+  }, [groupId, messages]);
+
+  const loadReadState = useCallback(async () => {
+    try {
+      const res = await apiGet(`/api/messages/read?groupId=${groupId}`);
+      lastReadSent.current = res?.lastRead || 0;
+      setReadMarkers(res?.markers || {});
+    } catch {
+      setReadMarkers({});
+    }
   }, [groupId]);
 
   useEffect(() => {
     if (!groupId) return;
 
-    const ws = new WebSocket(`${WS_BASE}/ws/chat`);
-    socketRef.current = ws;
-
-    ws.onopen = () => {
-      ws.send(
-        JSON.stringify({
-          type: "join",
-          groupId: groupId,
-          userId: user.userId,
-          userName: user.name,
-        })
-      );
+    loadReadState();
+    setLoading(true);
+    loadHistory().finally(() => setLoading(false));
+  }, [groupId, loadHistory]);
 
-      setTimeout(() => setLoading(false), 300);
-    };
+  useEffect(() => {
+    if (!groupId) return;
+
+    // resume point: server epoch + last seq seen in this group
+    let epoch = null;
+    let lastSeq = null;
+    let closed = false;
+    let retry = null;
+    pendingRef.current = new Map();
+
+    const connect = () => {
+      const ws = new WebSocket(chatSocketUrl());
+      socketRef.current = ws;
+
+      ws.onopen = () => {
+        ws.send(
+          JSON.stringify({
+            type: "join",
+            groupId: groupId,
+            topics: ["chat", "typing", "presence", "receipts"],
+          })
+        );
+        if (epoch && lastSeq !== null) {
+          ws.send(JSON.stringify({ type: "resume", epoch, groupId, lastSeq }));
+        }
+        // same clientMsgId: the server drops what it already stored
+        pendingRef.current.forEach((frame) => ws.send(JSON.stringify(frame)));
+
+        setTimeout(() => setLoading(false), 300);
+      };
 
-    ws.onerror = (e) => console.error("WS error", e);
-    ws.onclose = () => console.log("WS Closed");
+      ws.onerror = (e) => console.error("WS error", e);
+      ws.onclose = (e) => {
+        console.log("WS Closed");
+        // 1008: closed for flooding; back off instead of reconnecting right away
+        if (!closed) retry = setTimeout(connect, e.code === 1008 ? 30000 : 2000);
+      };
 
-    ws.onmessage = (event) => {
+      ws.onmessage = onMessage;
+    };
+
+    const onMessage = (event) => {
       let msg = {};
       try {
         msg = JSON.parse(event.data);
@@ -116,6 +204,45 @@ export default function Chat({ user, group, goBack, onNotify }) {
         return;
       }
 
+      if (msg.type === "joined") {
+        // a fresh server process restarts numbering; a resume against it is pointless
+        if (msg.epoch !== epoch) {
+          if (epoch) {
+            loadHistory();
+            loadReadState();
+          }
+          epoch = msg.epoch;
+          lastSeq = msg.seqs?.[groupId] ?? 0;
+        }
+        return;
+      }
+
+      if (msg.type === "resumed" || msg.type === "resync") {
+        epoch = msg.epoch;
+        lastSeq = msg.seq;
+        // the gap is no longer buffered on the server: reload the history
+        if (msg.type === "resync") loadHistory();
+        return;
+      }
+
+      if (msg.seq !== undefined) {
+        if (lastSeq !== null && msg.seq <= lastSeq) return;
+        lastSeq = msg.seq;
+      }
+
+      if (msg.type === "ack") {
+        pendingRef.current.delete(msg.clientMsgId);
+        return;
+      }
+
+      if (msg.type === "rateLimited") {
+        onNotify?.({
+          title: "Slow down",
+          text: `Messages are being sent too fast; some were dropped. Try again in ${Math.ceil((msg.retryAfterMs || 1000) / 1000)} s.`,
+        });
+        return;
+      }
+
       if (msg.type === "online") {
         setOnline(msg.users || []);
         return;
@@ -126,7 +253,20 @@ export default function Chat({ user, group, goBack, onNotify }) {
         return;
       }
 
+      // only the markers that moved; not resumable, so a reconnect reloads them
+      if (msg.type === "receipts") {
+        setReadMarkers((prev) => {
+          const next = { ...prev };
+          Object.entries(msg.markers || {}).forEach(([uid, id]) => {
+            if (!(next[uid] >= id)) next[uid] = id;
+          });
+          return next;
+        });
+        return;
+      }
+
       if (msg.type === "message") {
+        if (msg.clientMsgId) pendingRef.current.delete(msg.clientMsgId);
         setMessages((prev) => [...prev, msg]);
         scrollToBottom();
 
@@ -142,30 +282,52 @@ export default function Chat({ user, group, goBack, onNotify }) {
       }
     };
 
-    return () => ws.close();
-  }, [groupId, user, onNotify, handleTyping, scrollToBottom, group?.name]);
+    connect();
 
-  const send = useCallback(() => {
-    const trimmed = text.trim();
-    if (!trimmed && !resourceId) return;
+    return () => {
+      closed = true;
+      clearTimeout(retry);
+      socketRef.current?.close();
+    };
+  }, [groupId, user, onNotify, handleTyping, scrollToBottom, loadHistory, loadReadState, group?.name]);
 
+  // tell the server how far we have read; it keeps the marker in memory and writes it in batches
+  useEffect(() => {
+    const newest = messages.reduce((max, m) => Math.max(max, m.messageId || 0), 0);
+    if (newest <= lastReadSent.current) return;
     const ws = socketRef.current;
     if (!ws || ws.readyState !== WebSocket.OPEN) return;
+    lastReadSent.current = newest;
+    ws.send(JSON.stringify({ type: "read", groupId, messageId: newest }));
+  }, [messages, groupId]);
+
+  const readBy = (m) =>
+    Object.entries(readMarkers).filter(
+      ([uid, id]) => Number(uid) !== user.userId && id >= m.messageId
+    ).length;
+
+  const send = useCallback(() => {
+    const trimmed = text.trim();
+    if (!trimmed && !resourceId) return;
 
     const resource = resources.find((r) => (r.id ?? r.resourceId) === Number(resourceId));
 
-    ws.send(
-      JSON.stringify({
-        type: "message",
-        groupId: groupId,
-        userId: user.userId,
-        userName: user.name,
-        text: trimmed,
-        resourceId: resource ? (resource.id ?? resource.resourceId) : undefined,
-        resourceTitle: resource?.title || resource?.originalFilename,
-        timestamp: new Date().toISOString(),
-      })
-    );
+    const frame = {
+      type: "message",
+      groupId: groupId,
+      text: trimmed,
+      resourceId: resource ? (resource.id ?? resource.resourceId) : undefined,
+      resourceTitle: resource?.title || resource?.originalFilename,
+      timestamp: new Date().toISOString(),
+      clientMsgId: crypto.randomUUID?.() ?? `${Date.now()}-${Math.random().toString(36).slice(2)}`,
+    };
+    // kept until acked; if the socket is down it goes out on reconnect
+    pendingRef.current.set(frame.clientMsgId, frame);
+
+    const ws = socketRef.current;
+    if (ws && ws.readyState === WebSocket.OPEN) {
+      ws.send(JSON.stringify(frame));
+    }
 
     setText("");
     setResourceId("");
@@ -175,14 +337,18 @@ export default function Chat({ user, group, goBack, onNotify }) {
     const ws = socketRef.current;
     if (!ws || ws.readyState !== WebSocket.OPEN) return;
 
+    // the server only needs a keep-alive, not every keystroke
+    const now = Date.now();
+    if (now - lastTypingSent.current < 1000) return;
+    lastTypingSent.current = now;
+
     ws.send(
       JSON.stringify({
         type: "typing",
-        userId: user.userId,
-        userName: user.name,
+        groupId: groupId,
       })
     );
-  }, [user]);
+  }, [user, groupId]);
 
   const handleKeyDown = (e) => {
     if (e.key === "Enter" && !e.shiftKey) {
@@ -222,6 +388,51 @@ export default function Chat({ user, group, goBack, onNotify }) {
         <div className="chat-online">👥 {online.length} online</div>
       </div>
 
+      <div className="chat-attach-row">
+        <input
+          className="input"
+          value={query}
+          placeholder="Search messages…"
+          onChange={(e) => setQuery(e.target.value)}
+          onKeyDown={(e) => e.key === "Enter" && runSearch(null)}
+        />
+        {search && (
+          <button className="btn-ghost" onClick={() => { setSearch(null); setQuery(""); }}>
+            Close
+          </button>
+        )}
+        <button
+          className="btn-ghost"
+          title="Download the whole chat (gzip NDJSON)"
+          onClick={() =>
+            apiDownload(`/api/messages/export?groupId=${groupId}`, `group-${groupId}-messages.ndjson.gz`).catch(() => {})
+          }
+        >
+          Export
+        </button>
+      </div>
+
+      {search && (
+        <div className="chat-log">
+          {search.hits.length === 0 && <div style={{ opacity: 0.6 }}>Nothing found</div>}
+          {search.hits.map((h) => (
+            <div key={h.messageId} className="chat-message">
+              <div className="chat-meta">
+                {h.userName} · {h.timestamp ? new Date(h.timestamp).toLocaleString() : ""}
+              </div>
+              <div className="chat-text">
+                <Headline text={h.headline} />
+              </div>
+            </div>
+          ))}
+          {search.next && (
+            <button className="btn-ghost" onClick={() => runSearch(search.next)}>
+              More results
+            </button>
+          )}
+        </div>
+      )}
+
       <div ref={logRef} className="chat-log">
         {loading && (
           <>
@@ -231,6 +442,12 @@ export default function Chat({ user, group, goBack, onNotify }) {
           </>
         )}
 
+        {!loading && hasOlder && (
+          <button className="btn-ghost" onClick={loadOlder} disabled={loadingOlder}>
+            {loadingOlder ? "Loading…" : "Load older messages"}
+          </button>
+        )}
+
         {!loading && messages.length === 0 && (
           <div style={{ opacity: 0.6 }}>No messages yet. Start the conversation 🚀</div>
         )}
@@ -245,6 +462,9 @@ export default function Chat({ user, group, goBack, onNotify }) {
                 </div>
                 <div className="chat-text">{m.text}</div>
                 {renderResourceChip(m)}
+                {mine && m.messageId > 0 && readBy(m) > 0 && (
+                  <div className="chat-meta">✓ read by {readBy(m)}</div>
+                )}
               </div>
             );
           })}
@@ -1,5 +1,5 @@
 import { useEffect, useState, useCallback } from "react";
-import { apiGet, apiUploadForm, apiDelete, apiDownload, WS_BASE } from "../services/api";
+import { apiGet, apiUploadForm, apiDelete, apiDownload, chatSocketUrl } from "../services/api";
 import "../css/GroupResources.css";
 
 export default function GroupResources({ group, goBack }) {
@@ -53,14 +53,13 @@ export default function GroupResources({ group, goBack }) {
   useEffect(() => {
     if (!groupId) return;
 
-    const ws = new WebSocket(`${WS_BASE}/ws/chat`);
+    const ws = new WebSocket(chatSocketUrl());
 
     ws.onopen = () => {
       ws.send(JSON.stringify({
         type: "join",
         groupId: groupId,
-        userId: 0,
-        userName: "resourceWatcher"
+        topics: ["resources"]
       }));
     };
 
@@ -68,12 +67,23 @@ export default function GroupResources({ group, goBack }) {
       let msg = {};
       try { msg = JSON.parse(evt.data); } catch { return; }
 
-      if (msg.type === "EVENT") {
-        if (msg.event === "RESOURCE_UPLOADED" ||
-            msg.event === "RESOURCE_DELETED") {
-          loadResources();
+      // EVENTS is a batch of EVENT frames; refetch at most once for it
+      const batch = msg.type === "EVENTS" ? msg.events : msg.type === "EVENT" ? [msg] : [];
+      let reload = false;
+      batch.forEach((e) => {
+        // events carry the new row; only refetch when the server sends ids only
+        if (e.event === "RESOURCE_UPLOADED" && e.entity) {
+          setResources((prev) => [
+            e.entity,
+            ...prev.filter((r) => (r.id ?? r.resourceId) !== e.entity.resourceId),
+          ]);
+        } else if (e.event === "RESOURCE_DELETED") {
+          setResources((prev) => prev.filter((r) => (r.id ?? r.resourceId) !== e.resourceId));
+        } else if (e.event === "RESOURCE_UPLOADED") {
+          reload = true;
         }
-      }
+      });
+      if (reload) loadResources();
     };
 
     return () => ws.close();
@@ -301,6 +301,9 @@ export default function Groups({
                 onClick={() => setActive(g)}
               >
                 <div className="group-item-name">{g.name}</div>
+                {g.unreadCount > 0 && (
+                  <span className="unread-badge">{g.unreadCount > 99 ? "99+" : g.unreadCount}</span>
+                )}
                 <div className="group-item-desc">
                   {g.description || "No description yet"}
                 </div>
@@ -503,6 +506,11 @@ export default function Groups({
                     </div>
                     <div className="group-item-meta">
                       <span>Role: {m.role}</span>
+                      <span>
+                        {m.lastSeenAt
+                          ? `Seen ${new Date(m.lastSeenAt).toLocaleString()}`
+                          : "Not seen yet"}
+                      </span>
                       <div style={{ display: "flex", gap: 6 }}>
                         <button
                           className="link-button"
@@ -2,6 +2,14 @@ import { useEffect, useState, useCallback } from "react";
 import { apiGet, apiPost, apiDelete, apiDownload, apiTaskResources } from "../services/api";
 import { connectWebSocket, subscribe } from "../services/ws";
 
+// same order as GET /api/tasks: with deadline first (soonest first), then newest
+const sortTasks = (list) =>
+  [...list].sort((a, b) => {
+    if (!a.deadline !== !b.deadline) return a.deadline ? -1 : 1;
+    if (a.deadline && b.deadline && a.deadline !== b.deadline) return a.deadline < b.deadline ? -1 : 1;
+    return (b.createdAt || "").localeCompare(a.createdAt || "");
+  });
+
 export default function Tasks({ user, group, goBack, focusTaskId, onFocusHandled }) {
   const [tasks, setTasks] = useState([]);
   const [title, setTitle] = useState("");
@@ -72,21 +80,51 @@ export default function Tasks({ user, group, goBack, focusTaskId, onFocusHandled
     connectWebSocket();
 
     const unsubscribe = subscribe((msg) => {
-      if (msg.type !== "EVENT") return;
+      if (msg.type !== "EVENT" && msg.type !== "EVENTS") return;
       if (msg.groupId !== group.groupId) return;
 
-      if (
-        msg.event === "TASK_CREATED" ||
-        msg.event === "TASK_UPDATED" ||
-        msg.event === "TASK_DELETED" ||
-        msg.event === "TASK_STATUS_CHANGED" ||
-        msg.event === "TASK_RESOURCE_ATTACHED" ||
-        msg.event === "TASK_RESOURCE_DETACHED"
-      ) {
-        load();
-      }
+      // a batch is applied event by event, with at most one refetch at the end
+      const batch = msg.type === "EVENTS" ? msg.events : [msg];
+      if (!batch.map(applyEvent).every(Boolean)) load();
     });
 
+    // apply the change carried by the event; false when it carries ids only
+    function applyEvent(msg) {
+      switch (msg.event) {
+        case "TASK_CREATED":
+        case "TASK_UPDATED":
+        case "TASK_STATUS_CHANGED":
+          if (msg.entity) {
+            setTasks((prev) => sortTasks([...prev.filter((t) => t.taskId !== msg.taskId), msg.entity]));
+          } else if (msg.patch) {
+            setTasks((prev) =>
+              sortTasks(prev.map((t) => (t.taskId === msg.taskId ? { ...t, ...msg.patch } : t)))
+            );
+          } else {
+            return false;
+          }
+          break;
+        case "TASK_DELETED":
+          setTasks((prev) => prev.filter((t) => t.taskId !== msg.taskId));
+          break;
+        case "TASK_RESOURCE_ATTACHED":
+          setAttachments((prev) => {
+            const ids = prev[msg.taskId] || [];
+            return ids.includes(msg.resourceId) ? prev : { ...prev, [msg.taskId]: [...ids, msg.resourceId] };
+          });
+          break;
+        case "TASK_RESOURCE_DETACHED":
+          setAttachments((prev) => ({
+            ...prev,
+            [msg.taskId]: (prev[msg.taskId] || []).filter((id) => id !== msg.resourceId),
+          }));
+          break;
+        default:
+          break;
+      }
+      return true;
+    }
+
     return unsubscribe;
   }, [group, load]);
 
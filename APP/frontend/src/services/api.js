@@ -5,6 +5,12 @@ export const API_BASE = (import.meta.env.VITE_API_URL || "http://localhost:8080"
 export const WS_BASE = (import.meta.env.VITE_WS_URL || API_BASE.replace(/^http/, "ws")).replace(/\/$/, "");
 const BASE = API_BASE;
 
+// Chat socket URL; the token goes in the query string because browsers cannot set headers on WebSocket
+export function chatSocketUrl() {
+  const token = localStorage.getItem("token");
+  return `${WS_BASE}/ws/chat${token ? `?token=${encodeURIComponent(token)}` : ""}`;
+}
+
 // ==========================
 // GET TOKEN
 // ==========================
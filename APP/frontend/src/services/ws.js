@@ -1,22 +1,73 @@
-import { WS_BASE } from "./api";
-
-const WS_URL = `${WS_BASE}/ws/chat`;
+import { chatSocketUrl } from "./api";
 
 let socket = null;
 let listeners = new Set();
 
+// resume state: server epoch, last seen seq per group, last join frame
+let epoch = null;
+let lastSeq = {};
+let lastJoin = null;
+// events are delivered at least once; a redelivery keeps its eventId
+let seenEvents = new Set();
+
+function alreadySeen(eventId) {
+  if (eventId === undefined) return false;
+  if (seenEvents.has(eventId)) return true;
+  seenEvents.add(eventId);
+  if (seenEvents.size > 500) seenEvents.delete(seenEvents.values().next().value);
+  return false;
+}
+
+function trackSeq(data) {
+  if (data.type === "joined") {
+    if (data.epoch !== epoch) lastSeq = {};
+    epoch = data.epoch;
+    Object.entries(data.seqs || {}).forEach(([g, seq]) => {
+      if (lastSeq[g] === undefined) lastSeq[g] = seq;
+    });
+    return true;
+  }
+  if (data.type === "resync" || data.type === "resumed") {
+    epoch = data.epoch;
+    lastSeq[data.groupId] = data.seq;
+    return true;
+  }
+  if (data.type === "EVENTS") {
+    // a batch of EVENT frames (server-side coalescing window)
+    data.events = (data.events || []).filter((e) => !alreadySeen(e.eventId));
+    if (data.events.length === 0) return false;
+  } else if (alreadySeen(data.eventId)) {
+    return false;
+  }
+  if (data.seq !== undefined && data.groupId !== undefined) {
+    // duplicate from a replay overlapping live traffic
+    if (lastSeq[data.groupId] !== undefined && data.seq <= lastSeq[data.groupId]) return false;
+    lastSeq[data.groupId] = data.seq;
+  }
+  return true;
+}
+
 export function connectWebSocket() {
   if (socket && socket.readyState === WebSocket.OPEN) return socket;
 
-  socket = new WebSocket(WS_URL);
+  socket = new WebSocket(chatSocketUrl());
 
   socket.onopen = () => {
     console.log("[WS] Connected");
+    if (lastJoin) {
+      // rejoin, then ask for what was missed while disconnected
+      const resumeFrom = { ...lastSeq };
+      socket.send(JSON.stringify(lastJoin));
+      if (epoch && Object.keys(resumeFrom).length > 0) {
+        socket.send(JSON.stringify({ type: "resume", epoch, groups: resumeFrom }));
+      }
+    }
   };
 
   socket.onmessage = (event) => {
     try {
       const data = JSON.parse(event.data);
+      if (!trackSeq(data)) return;
       listeners.forEach((fn) => fn(data));
     } catch (e) {
       console.error("[WS] Parse error:", e);
@@ -37,23 +88,28 @@ export function subscribe(fn) {
   return () => listeners.delete(fn);
 }
 
-// отправка сообщения
+// отправка сообщения; chat messages get a clientMsgId so a resend is not stored twice
 export function sendWS(data) {
+  if (data?.type === "message" && !data.clientMsgId) {
+    data = { ...data, clientMsgId: crypto.randomUUID?.() ?? `${Date.now()}-${Math.random().toString(36).slice(2)}` };
+  }
   if (socket && socket.readyState === WebSocket.OPEN) {
     socket.send(JSON.stringify(data));
   }
 }
 
-// Join multiple groups to receive events even when not viewing them
-export function joinGroups(groupIds, user) {
+// Join multiple groups to receive events even when not viewing them;
+// topics limits what the server sends (e.g. ["tasks"]), omitted = everything
+export function joinGroups(groupIds, user, topics) {
   if (!groupIds || groupIds.length === 0 || !user) return;
   connectWebSocket();
+  // identity comes from the token; the server keeps only groups the user belongs to
   const payload = {
     type: "joinMultiple",
-    userId: user.userId,
-    userName: user.name,
     groupIds,
+    ...(topics ? { topics } : {}),
   };
+  lastJoin = payload;
   const trySend = () => {
     if (socket && socket.readyState === WebSocket.OPEN) {
       socket.send(JSON.stringify(payload));
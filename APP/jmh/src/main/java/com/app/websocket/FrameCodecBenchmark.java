@@ -0,0 +1,135 @@
+package com.app.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.BinaryMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound chat path of /ws/chat: a client "message" frame in, the frame the
+ * group receives out. "tree" is the handler before FrameCodec (readTree, then
+ * an ObjectNode built and printed per message); "codec" is FrameCodec.read
+ * into records and FrameCodec.write. Run with -prof gc for the bytes
+ * allocated per message (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FrameCodecBenchmark {
+
+    private static final String PLAIN = """
+        {"type":"message","groupId":12,"text":"Does anyone have the notes from Tuesday's lecture? I missed the second half.",\
+        "timestamp":"2026-10-19T12:34:56.789Z","clientMsgId":"c-5f1b2a7e-0042"}""";
+    private static final String ATTACHED = """
+        {"type":"message","groupId":12,"text":"Uploaded them here, see page 3 for the proof",\
+        "timestamp":"2026-10-19T12:35:10.001Z","resourceId":4821,"resourceTitle":"Lecture 7 - Graph algorithms.pdf",\
+        "taskId":77,"clientMsgId":"c-5f1b2a7e-0043"}""";
+
+    private static final int USER_ID = 1234;
+    private static final String USER_NAME = "Jana Nováková";
+
+    @Param({"plain", "attached"})
+    public String frame;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    private final FrameCodec codec = new FrameCodec();
+
+    private String text;
+    private byte[] smile;
+
+    @Setup
+    public void setup() throws IOException {
+        text = "plain".equals(frame) ? PLAIN : ATTACHED;
+        smile = smileMapper.writeValueAsBytes(mapper.readTree(text));
+        // both paths must publish the same frame, or the comparison means nothing
+        if (!treeJson().equals(codecJson()) || !treeSmile().equals(codecSmile())) {
+            throw new IllegalStateException("tree and codec paths disagree: " + treeJson() + " / " + codecJson());
+        }
+    }
+
+    @Benchmark
+    public String treeJson() throws IOException {
+        return treePath(mapper.readTree(text));
+    }
+
+    @Benchmark
+    public String codecJson() throws IOException {
+        return codecPath(codec.read(text));
+    }
+
+    @Benchmark
+    public String treeSmile() throws IOException {
+        return treePath(smileMapper.readTree(smile));
+    }
+
+    @Benchmark
+    public String codecSmile() throws IOException {
+        // the container hands every frame over as a new BinaryMessage
+        return codecPath(codec.read(new BinaryMessage(ByteBuffer.wrap(smile))));
+    }
+
+    /** What handleFrame did with a "message" node before FrameCodec. */
+    private String treePath(JsonNode node) {
+        String type = node.path("type").asText("");
+        if (!"message".equalsIgnoreCase(type)) return null;
+
+        int groupId = node.path("groupId").asInt();
+        ObjectNode payload = mapper.createObjectNode();
+        payload.put("type", "message");
+        payload.put("groupId", groupId);
+        payload.put("userId", USER_ID);
+        payload.put("userName", USER_NAME);
+        payload.put("text", node.path("text").asText(""));
+        payload.put("timestamp", node.has("timestamp") ? node.path("timestamp").asText() : "");
+        if (node.has("resourceId")) {
+            payload.put("resourceId", node.path("resourceId").asInt());
+            payload.put("resourceTitle", node.path("resourceTitle").asText(""));
+        }
+        if (node.has("taskId")) {
+            payload.put("taskId", node.path("taskId").asInt());
+        }
+        if (node.has("clientMsgId")) {
+            payload.put("clientMsgId", node.path("clientMsgId").asText());
+        }
+        return payload.toString();
+    }
+
+    /** What handleFrame does with an InboundFrame.Message now. */
+    private String codecPath(InboundFrame frame) {
+        if (!(frame instanceof InboundFrame.Message m)) return null;
+
+        ChatMessage message = new ChatMessage(
+                m.groupId(),
+                USER_ID,
+                USER_NAME,
+                m.text(),
+                m.timestamp() != null ? m.timestamp() : "",
+                m.resourceId(),
+                m.resourceTitle(),
+                m.taskId(),
+                m.clientMsgId(),
+                0
+        );
+        return codec.write(message);
+    }
+}
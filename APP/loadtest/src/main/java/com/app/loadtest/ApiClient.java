@@ -0,0 +1,122 @@
+package com.app.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The few REST calls the load test needs: accounts, groups, members, tasks, stats.
+ */
+class ApiClient {
+
+    /** A logged-in test user. */
+    record Account(int userId, String token) {
+    }
+
+    private final String baseUrl;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    ApiClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /** Logs in, registering the user first if it does not exist yet (re-runs reuse accounts). */
+    Account account(String email, String name, String password) throws IOException, InterruptedException {
+        HttpResponse<String> login = post("/api/auth/login", null, Map.of("email", email, "password", password));
+        if (login.statusCode() != 200) {
+            HttpResponse<String> register = post("/api/auth/register", null,
+                    Map.of("name", name, "email", email, "password", password));
+            if (register.statusCode() != 200) {
+                throw new IOException("Cannot register " + email + ": " + register.body());
+            }
+            login = register;
+        }
+        JsonNode body = mapper.readTree(login.body());
+        return new Account(body.path("user").path("userId").asInt(), body.path("token").asText());
+    }
+
+    int createGroup(Account owner, String name) throws IOException, InterruptedException {
+        HttpResponse<String> res = post("/api/groups", owner.token(),
+                Map.of("name", name, "description", "load test"));
+        if (res.statusCode() != 201) {
+            throw new IOException("Cannot create group " + name + ": " + res.body());
+        }
+        return mapper.readTree(res.body()).path("groupId").asInt();
+    }
+
+    /** Adds a member; "already a member" from an earlier run is fine. */
+    void addMember(Account owner, int groupId, int userId) throws IOException, InterruptedException {
+        post("/api/groups/" + groupId + "/members", owner.token(), Map.of("userId", userId));
+    }
+
+    int createTask(Account owner, int groupId, String title) throws IOException, InterruptedException {
+        HttpResponse<String> res = post("/api/tasks", owner.token(),
+                Map.of("groupId", groupId, "title", title, "status", "OPEN"));
+        if (res.statusCode() != 201) {
+            throw new IOException("Cannot create task in group " + groupId + ": " + res.body());
+        }
+        return mapper.readTree(res.body()).path("taskId").asInt();
+    }
+
+    CompletableFuture<Integer> changeTaskStatus(Account owner, int taskId, String status) {
+        return http.sendAsync(postRequest("/api/tasks/" + taskId + "/status", owner.token(), Map.of("status", status)),
+                        HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpResponse::statusCode);
+    }
+
+    /** GET /api/tasks?groupId=, what a client without the changed row has to do after a task event. */
+    CompletableFuture<Integer> listTasks(String token, int groupId) {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + "/api/tasks?groupId=" + groupId))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+        return http.sendAsync(req, HttpResponse.BodyHandlers.discarding()).thenApply(HttpResponse::statusCode);
+    }
+
+    /** GET /api/chat/stats, or null if the server does not answer. */
+    JsonNode stats(Account account) {
+        try {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + "/api/chat/stats"))
+                    .timeout(Duration.ofSeconds(5))
+                    .header("Authorization", "Bearer " + account.token())
+                    .GET()
+                    .build();
+            HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+            return res.statusCode() == 200 ? mapper.readTree(res.body()) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private HttpResponse<String> post(String path, String token, Map<String, Object> body)
+            throws IOException, InterruptedException {
+        return http.send(postRequest(path, token, body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest postRequest(String path, String token, Map<String, Object> body) {
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json");
+        try {
+            req.POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(body)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (token != null) {
+            req.header("Authorization", "Bearer " + token);
+        }
+        return req.build();
+    }
+}
@@ -0,0 +1,242 @@
+package com.app.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One simulated browser tab: a socket joined to a fixed set of groups.
+ *
+ * Chat texts look like "lt|<measured 0/1>|<send nanoTime>", so any client of
+ * this process can compute the fan-out latency of a frame it receives.
+ *
+ * Task EVENT frames are handled like the Tasks page does: applied locally when
+ * they carry "entity" or "patch", otherwise answered with GET /api/tasks.
+ */
+class ChatClient implements WebSocket.Listener {
+
+    static final String MARK = "lt|";
+    private static final int MAX_PENDING_SENDS = 64;
+
+    final int index;
+    final int[] groups;
+    private final boolean smile;
+    private final ObjectMapper json;
+    private final ObjectMapper smileMapper;
+    private final RunMetrics metrics;
+    private final ApiClient api;
+    private final String token;
+
+    private volatile WebSocket ws;
+    private volatile boolean joined;
+    private volatile boolean closed;
+    private CompletableFuture<?> sendChain = CompletableFuture.completedFuture(null);
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final StringBuilder text = new StringBuilder();
+    private final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+    private final Map<Integer, Long> lastSeq = new HashMap<>();
+
+    ChatClient(int index, int[] groups, boolean smile, ObjectMapper json, ObjectMapper smileMapper, RunMetrics metrics,
+               ApiClient api, String token) {
+        this.index = index;
+        this.groups = groups;
+        this.smile = smile;
+        this.json = json;
+        this.smileMapper = smileMapper;
+        this.metrics = metrics;
+        this.api = api;
+        this.token = token;
+    }
+
+    CompletableFuture<WebSocket> connect(HttpClient http, String wsUrl) {
+        WebSocket.Builder builder = http.newWebSocketBuilder().connectTimeout(Duration.ofSeconds(15));
+        if (smile) {
+            builder.subprotocols("chat.smile");
+        }
+        return builder.buildAsync(URI.create(wsUrl + "?token=" + token), this);
+    }
+
+    boolean isJoined() {
+        return joined && !closed;
+    }
+
+    // ---------------------------------------------------------------------
+    // SENDING
+    // ---------------------------------------------------------------------
+
+    void sendMessage(int groupId, boolean measured) {
+        ObjectNode frame = json.createObjectNode();
+        frame.put("type", "message");
+        frame.put("groupId", groupId);
+        frame.put("text", MARK + (measured ? 1 : 0) + "|" + System.nanoTime());
+        if (send(frame)) {
+            metrics.sent.increment();
+        }
+    }
+
+    void sendTyping(int groupId) {
+        ObjectNode frame = json.createObjectNode();
+        frame.put("type", "typing");
+        frame.put("groupId", groupId);
+        if (send(frame)) {
+            metrics.typingSent.increment();
+        }
+    }
+
+    /** java.net.http.WebSocket allows one outstanding send, so sends are chained per client. */
+    private synchronized boolean send(ObjectNode frame) {
+        WebSocket socket = ws;
+        if (socket == null || closed) return false;
+        if (pending.get() >= MAX_PENDING_SENDS) {
+            metrics.sendSkipped.increment();
+            return false;
+        }
+
+        pending.incrementAndGet();
+        sendChain = sendChain
+                .thenCompose(x -> {
+                    try {
+                        return smile
+                                ? socket.sendBinary(ByteBuffer.wrap(smileMapper.writeValueAsBytes(frame)), true)
+                                : socket.sendText(frame.toString(), true);
+                    } catch (Exception e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                })
+                .handle((x, err) -> {
+                    pending.decrementAndGet();
+                    if (err != null) metrics.sendErrors.increment();
+                    return null;
+                });
+        return true;
+    }
+
+    void close() {
+        closed = true;
+        WebSocket socket = ws;
+        if (socket != null) {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "done").exceptionally(e -> null);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // RECEIVING
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        this.ws = webSocket;
+        metrics.connected.increment();
+
+        ObjectNode join = json.createObjectNode();
+        join.put("type", "joinMultiple");
+        var ids = join.putArray("groupIds");
+        for (int g : groups) ids.add(g);
+        send(join);
+
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        text.append(data);
+        if (last) {
+            String frame = text.toString();
+            text.setLength(0);
+            try {
+                handle(json.readTree(frame), frame.getBytes(StandardCharsets.UTF_8).length);
+            } catch (Exception ignored) {
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        byte[] chunk = new byte[data.remaining()];
+        data.get(chunk);
+        binary.writeBytes(chunk);
+        if (last) {
+            byte[] frame = binary.toByteArray();
+            binary.reset();
+            try {
+                handle(smileMapper.readTree(frame), frame.length);
+            } catch (Exception ignored) {
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    private void handle(JsonNode frame, int bytes) {
+        long now = System.nanoTime();
+        String type = frame.path("type").asText("");
+        metrics.frame(type, bytes);
+
+        if ("joined".equals(type)) {
+            frame.path("seqs").properties().forEach(e ->
+                    lastSeq.put(Integer.parseInt(e.getKey()), e.getValue().asLong()));
+            joined = true;
+            return;
+        }
+
+        if (frame.has("seq")) {
+            int groupId = frame.path("groupId").asInt();
+            long seq = frame.path("seq").asLong();
+            Long prev = lastSeq.put(groupId, seq);
+            if (prev != null && seq > prev + 1) {
+                metrics.seqGaps.add(seq - prev - 1);
+            }
+        }
+
+        if ("EVENT".equals(type) && frame.path("event").asText("").startsWith("TASK_")) {
+            metrics.taskEvents.increment();
+            if (frame.has("entity") || frame.has("patch")) {
+                metrics.eventsAppliedLocally.increment();
+            } else {
+                metrics.listRefetches.increment();
+                api.listTasks(token, frame.path("groupId").asInt()).whenComplete((status, err) -> {
+                    if (err != null || status != 200) metrics.listRefetchErrors.increment();
+                });
+            }
+            return;
+        }
+
+        if ("message".equals(type)) {
+            String t = frame.path("text").asText("");
+            if (t.startsWith(MARK + "1|")) {
+                long sentAt = Long.parseLong(t.substring(MARK.length() + 2));
+                metrics.fanOutLatency.record((now - sentAt) / 1000);
+                metrics.delivered.increment();
+            }
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        if (!closed) metrics.disconnects.increment();
+        closed = true;
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        if (!closed) metrics.disconnects.increment();
+        closed = true;
+    }
+}
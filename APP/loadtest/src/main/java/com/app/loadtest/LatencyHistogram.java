@@ -0,0 +1,64 @@
+package com.app.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of microsecond values, ~3% resolution.
+ * Values below 64 get their own bucket; above that each power of two is
+ * split into 32 linear sub-buckets.
+ */
+class LatencyHistogram {
+
+    private static final int LINEAR = 64;
+    private static final int SUB = 32;
+    private static final int BUCKETS = LINEAR + 58 * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        long v = Math.max(0, micros);
+        counts.incrementAndGet(index(v));
+        total.incrementAndGet();
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /** Upper bound of the bucket holding the given quantile (0..1), in microseconds. */
+    long percentile(double q) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int index(long v) {
+        if (v < LINEAR) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - 5; // v >> shift is in [32, 63]
+        int idx = LINEAR + (shift - 1) * SUB + (int) ((v >> shift) - SUB);
+        return Math.min(idx, BUCKETS - 1);
+    }
+
+    private static long upperBound(int idx) {
+        if (idx < LINEAR) return idx;
+        int shift = (idx - LINEAR) / SUB + 1;
+        long mantissa = (idx - LINEAR) % SUB + SUB;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
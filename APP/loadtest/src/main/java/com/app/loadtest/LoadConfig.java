@@ -0,0 +1,109 @@
+package com.app.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options, all as --name=value. Defaults target a local backend.
+ */
+public class LoadConfig {
+
+    final String baseUrl;
+    final String wsUrl;
+    final int clients;
+    final int groups;
+    final int groupsPerClient;
+    /** Zipf exponent of group popularity; 0 = uniform, 1 = a few hot groups. */
+    final double zipf;
+    final int connectRate;
+    final double messageRate;
+    final double typingRate;
+    /** Task status edits per second (one task per group); 0 = no task traffic. */
+    final double editRate;
+    final int warmupSec;
+    final int durationSec;
+    final int drainSec;
+    /** "json" or "smile" (chat.smile subprotocol). */
+    final String protocol;
+    final String report;
+    final String userPrefix;
+    final String password;
+    final long seed;
+    final int setupThreads;
+    /** "chat" (random messages and typing at the given rates) or "typing" (replayed keystroke trace). */
+    final String scenario;
+    /** Concurrent typists of the typing scenario. */
+    final int typists;
+
+    private LoadConfig(Map<String, String> a) {
+        this.baseUrl = a.getOrDefault("baseUrl", "http://localhost:8080").replaceAll("/$", "");
+        this.wsUrl = a.getOrDefault("wsUrl", baseUrl.replaceFirst("^http", "ws")) + "/ws/chat";
+        this.clients = Integer.parseInt(a.getOrDefault("clients", "1000"));
+        this.groups = Integer.parseInt(a.getOrDefault("groups", "100"));
+        this.groupsPerClient = Math.min(groups, Integer.parseInt(a.getOrDefault("groupsPerClient", "1")));
+        this.zipf = Double.parseDouble(a.getOrDefault("zipf", "1.0"));
+        this.connectRate = Integer.parseInt(a.getOrDefault("connectRate", "200"));
+        this.messageRate = Double.parseDouble(a.getOrDefault("messageRate", "50"));
+        this.typingRate = Double.parseDouble(a.getOrDefault("typingRate", "100"));
+        this.editRate = Double.parseDouble(a.getOrDefault("editRate", "0"));
+        this.warmupSec = Integer.parseInt(a.getOrDefault("warmupSec", "10"));
+        this.durationSec = Integer.parseInt(a.getOrDefault("durationSec", "60"));
+        this.drainSec = Integer.parseInt(a.getOrDefault("drainSec", "5"));
+        this.protocol = a.getOrDefault("protocol", "json").toLowerCase();
+        this.report = a.getOrDefault("report", "loadtest-report.json");
+        this.userPrefix = a.getOrDefault("userPrefix", "lt");
+        this.password = a.getOrDefault("password", "loadtest-pass");
+        this.seed = Long.parseLong(a.getOrDefault("seed", "42"));
+        this.setupThreads = Integer.parseInt(a.getOrDefault("setupThreads", "16"));
+        this.scenario = a.getOrDefault("scenario", "chat").toLowerCase();
+        this.typists = Integer.parseInt(a.getOrDefault("typists", "50"));
+
+        if (!protocol.equals("json") && !protocol.equals("smile")) {
+            throw new IllegalArgumentException("--protocol must be json or smile");
+        }
+        if (!scenario.equals("chat") && !scenario.equals("typing")) {
+            throw new IllegalArgumentException("--scenario must be chat or typing");
+        }
+    }
+
+    static LoadConfig parse(String[] args) {
+        Map<String, String> a = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            a.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return new LoadConfig(a);
+    }
+
+    boolean smile() {
+        return protocol.equals("smile");
+    }
+
+    boolean typingReplay() {
+        return scenario.equals("typing");
+    }
+
+    Map<String, Object> asMap() {
+        Map<String, Object> m = new HashMap<>();
+        m.put("baseUrl", baseUrl);
+        m.put("clients", clients);
+        m.put("groups", groups);
+        m.put("groupsPerClient", groupsPerClient);
+        m.put("zipf", zipf);
+        m.put("connectRate", connectRate);
+        m.put("messageRate", messageRate);
+        m.put("typingRate", typingRate);
+        m.put("editRate", editRate);
+        m.put("warmupSec", warmupSec);
+        m.put("durationSec", durationSec);
+        m.put("drainSec", drainSec);
+        m.put("protocol", protocol);
+        m.put("seed", seed);
+        m.put("scenario", scenario);
+        if (typingReplay()) m.put("typists", typists);
+        return m;
+    }
+}
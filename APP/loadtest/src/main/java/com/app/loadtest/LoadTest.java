@@ -0,0 +1,376 @@
+package com.app.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.File;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator for /ws/chat.
+ *
+ *   java -jar target/chat-loadtest-1.0.0.jar --clients=5000 --groups=200 --messageRate=200
+ *
+ * Phases: accounts and groups over REST (reused between runs), ramped socket
+ * connects, warm-up, measured phase, drain. Writes a JSON report with fan-out
+ * latency percentiles, drops, and the server's heap/GC/frame-size numbers.
+ *
+ * With --editRate the group owner also changes task statuses; comparing the
+ * "events" section of runs against app.events.payload=ids and =snapshot shows
+ * how many list refetches the event payload saves.
+ *
+ * With --scenario=typing the random traffic is replaced by a seeded keystroke
+ * trace (TypingReplay); the "typing" section compares the typing frames sent
+ * with the typing frames received, against what re-broadcasting every
+ * keystroke to the group would have sent.
+ */
+public class LoadTest {
+
+    private static final long TICK_MS = 10;
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig cfg = LoadConfig.parse(args);
+        new LoadTest(cfg).run();
+    }
+
+    private final LoadConfig cfg;
+    private final ApiClient api;
+    private final RunMetrics metrics = new RunMetrics();
+    private final ObjectMapper json = new ObjectMapper();
+    private final ObjectMapper smile = new ObjectMapper(new SmileFactory());
+    private final Random random;
+
+    private volatile boolean measuring;
+
+    LoadTest(LoadConfig cfg) {
+        this.cfg = cfg;
+        this.api = new ApiClient(cfg.baseUrl);
+        this.random = new Random(cfg.seed);
+    }
+
+    void run() throws Exception {
+        long setupStart = System.currentTimeMillis();
+
+        // ------------------------------------------------------------------
+        // 1) accounts, groups, memberships
+        // ------------------------------------------------------------------
+        log("setup: %d users, %d groups", cfg.clients, cfg.groups);
+        ApiClient.Account owner = api.account(cfg.userPrefix + "-owner@loadtest.local", "LT owner", cfg.password);
+
+        ExecutorService setup = Executors.newFixedThreadPool(cfg.setupThreads);
+        List<Future<ApiClient.Account>> accountFutures = new ArrayList<>();
+        for (int i = 0; i < cfg.clients; i++) {
+            int n = i;
+            accountFutures.add(setup.submit(() ->
+                    api.account(cfg.userPrefix + "-" + n + "@loadtest.local", "LT " + n, cfg.password)));
+        }
+        ApiClient.Account[] accounts = new ApiClient.Account[cfg.clients];
+        for (int i = 0; i < cfg.clients; i++) {
+            accounts[i] = accountFutures.get(i).get();
+        }
+
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        int[] groupIds = new int[cfg.groups];
+        Map<Integer, Integer> groupIndex = new HashMap<>();
+        for (int i = 0; i < cfg.groups; i++) {
+            groupIds[i] = api.createGroup(owner, "lt-" + run + "-" + i);
+            groupIndex.put(groupIds[i], i);
+        }
+
+        double[] cumulative = zipfCumulative(cfg.groups, cfg.zipf);
+        int[][] assignment = new int[cfg.clients][];
+        int[] subscribers = new int[cfg.groups];
+        List<Future<?>> memberFutures = new ArrayList<>();
+        for (int i = 0; i < cfg.clients; i++) {
+            int[] picked = pickGroups(cumulative, cfg.groupsPerClient);
+            assignment[i] = new int[picked.length];
+            for (int k = 0; k < picked.length; k++) {
+                int groupIdx = picked[k];
+                assignment[i][k] = groupIds[groupIdx];
+                int userId = accounts[i].userId();
+                memberFutures.add(setup.submit(() -> {
+                    api.addMember(owner, groupIds[groupIdx], userId);
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> f : memberFutures) {
+            f.get();
+        }
+        setup.shutdown();
+
+        int[] taskIds = new int[cfg.editRate > 0 ? cfg.groups : 0];
+        for (int i = 0; i < taskIds.length; i++) {
+            taskIds[i] = api.createTask(owner, groupIds[i], "lt-" + run + "-task-" + i);
+        }
+        long setupMs = System.currentTimeMillis() - setupStart;
+
+        // ------------------------------------------------------------------
+        // 2) sockets, ramped at connectRate
+        // ------------------------------------------------------------------
+        log("connecting %d sockets at %d/s (%s)", cfg.clients, cfg.connectRate, cfg.protocol);
+        ServerSampler sampler = new ServerSampler(api, owner);
+        if (api.stats(owner) == null) {
+            log("no server stats: /api/chat/stats is admin-only, grant %s role ADMIN to include them",
+                    cfg.userPrefix + "-owner@loadtest.local");
+        }
+        ScheduledExecutorService timers = Executors.newScheduledThreadPool(2);
+        timers.scheduleAtFixedRate(sampler::sample, 0, 1, TimeUnit.SECONDS);
+
+        // one selector thread per HttpClient; spread sockets over a few of them
+        HttpClient[] https = new HttpClient[cfg.clients / 1000 + 1];
+        for (int i = 0; i < https.length; i++) {
+            https[i] = HttpClient.newHttpClient();
+        }
+
+        long connectStart = System.currentTimeMillis();
+        ChatClient[] clients = new ChatClient[cfg.clients];
+        List<CompletableFuture<?>> connects = new ArrayList<>();
+        for (int i = 0; i < cfg.clients; i++) {
+            clients[i] = new ChatClient(i, assignment[i], cfg.smile(), json, smile, metrics, api, accounts[i].token());
+            connects.add(clients[i].connect(https[i % https.length], cfg.wsUrl)
+                    .exceptionally(e -> {
+                        metrics.connectFailures.increment();
+                        return null;
+                    }));
+            if ((i + 1) % Math.max(1, cfg.connectRate / 10) == 0) {
+                Thread.sleep(100);
+            }
+        }
+        CompletableFuture.allOf(connects.toArray(new CompletableFuture<?>[0])).join();
+
+        long joinDeadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < joinDeadline && joinedCount(clients) < metrics.connected.sum()) {
+            Thread.sleep(100);
+        }
+        long connectMs = System.currentTimeMillis() - connectStart;
+
+        List<ChatClient> active = new ArrayList<>();
+        for (int i = 0; i < cfg.clients; i++) {
+            if (clients[i].isJoined()) {
+                active.add(clients[i]);
+                for (int k = 0; k < assignment[i].length; k++) {
+                    subscribers[groupIndex.get(assignment[i][k])]++;
+                }
+            }
+        }
+        log("%d/%d sockets joined in %d ms", active.size(), cfg.clients, connectMs);
+        if (active.isEmpty()) {
+            throw new IllegalStateException("No socket joined; is the backend running at " + cfg.baseUrl + "?");
+        }
+
+        // ------------------------------------------------------------------
+        // 3) traffic: warm-up, measured phase, drain
+        // ------------------------------------------------------------------
+        ChatClient[] senders = active.toArray(new ChatClient[0]);
+        String[] statuses = {"OPEN", "IN_PROGRESS", "DONE"};
+        double[] budget = new double[3];
+        TypingReplay replay = cfg.typingReplay()
+                ? TypingReplay.generate(senders, cfg.typists, (cfg.warmupSec + cfg.durationSec) * 1000L, random)
+                : null;
+        if (replay != null) {
+            log("typing replay: %d typists, %d steps", cfg.typists, replay.size());
+        }
+        long trafficStart = System.currentTimeMillis();
+        timers.scheduleAtFixedRate(() -> {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            boolean measured = measuring;
+            if (replay != null) {
+                for (TypingReplay.Step step : replay.due(System.currentTimeMillis() - trafficStart)) {
+                    int subs = subscribers[groupIndex.get(step.groupId())];
+                    if (step.message()) {
+                        if (measured) metrics.expected.add(subs);
+                        step.client().sendMessage(step.groupId(), measured);
+                    } else {
+                        step.client().sendTyping(step.groupId());
+                        if (measured) {
+                            metrics.typingMeasured.increment();
+                            metrics.typingNaiveOut.add(subs);
+                        }
+                    }
+                }
+                return;
+            }
+            budget[0] += cfg.messageRate * TICK_MS / 1000.0;
+            budget[1] += cfg.typingRate * TICK_MS / 1000.0;
+            budget[2] += cfg.editRate * TICK_MS / 1000.0;
+            for (; budget[0] >= 1; budget[0]--) {
+                ChatClient c = senders[r.nextInt(senders.length)];
+                int groupId = c.groups[r.nextInt(c.groups.length)];
+                if (measured) {
+                    metrics.expected.add(subscribers[groupIndex.get(groupId)]);
+                }
+                c.sendMessage(groupId, measured);
+            }
+            for (; budget[1] >= 1; budget[1]--) {
+                ChatClient c = senders[r.nextInt(senders.length)];
+                int groupId = c.groups[r.nextInt(c.groups.length)];
+                c.sendTyping(groupId);
+                if (measured) {
+                    metrics.typingMeasured.increment();
+                    metrics.typingNaiveOut.add(subscribers[groupIndex.get(groupId)]);
+                }
+            }
+            for (; budget[2] >= 1 && taskIds.length > 0; budget[2]--) {
+                // popular groups get edited more, like their chat
+                ChatClient c = senders[r.nextInt(senders.length)];
+                int groupId = c.groups[r.nextInt(c.groups.length)];
+                metrics.edits.increment();
+                api.changeTaskStatus(owner, taskIds[groupIndex.get(groupId)], statuses[r.nextInt(statuses.length)])
+                        .whenComplete((status, err) -> {
+                            if (err != null || status != 200) metrics.editErrors.increment();
+                        });
+            }
+        }, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+
+        log("warm-up %d s", cfg.warmupSec);
+        Thread.sleep(cfg.warmupSec * 1000L);
+
+        sampler.markMeasureStart();
+        long sentBefore = metrics.sent.sum();
+        long typingOutBefore = metrics.framesOfType("typing");
+        measuring = true;
+        log("measuring %d s", cfg.durationSec);
+        Thread.sleep(cfg.durationSec * 1000L);
+        measuring = false;
+        long measuredSent = metrics.sent.sum() - sentBefore;
+
+        log("draining %d s", cfg.drainSec);
+        Thread.sleep(cfg.drainSec * 1000L);
+        sampler.markMeasureEnd();
+        timers.shutdownNow();
+        // incl. the drain: the server sends the last typing state of the measured phase up to a tick later
+        long typingOut = metrics.framesOfType("typing") - typingOutBefore;
+
+        for (ChatClient c : clients) {
+            c.close();
+        }
+
+        // ------------------------------------------------------------------
+        // 4) report
+        // ------------------------------------------------------------------
+        ObjectNode report = json.createObjectNode();
+        report.set("config", json.valueToTree(cfg.asMap()));
+
+        ObjectNode phases = report.putObject("phases");
+        phases.put("setupMs", setupMs);
+        phases.put("connectMs", connectMs);
+
+        ObjectNode sockets = report.putObject("sockets");
+        sockets.put("connected", metrics.connected.sum());
+        sockets.put("joined", active.size());
+        sockets.put("connectFailures", metrics.connectFailures.sum());
+        sockets.put("disconnects", metrics.disconnects.sum());
+
+        long expected = metrics.expected.sum();
+        long delivered = metrics.delivered.sum();
+        ObjectNode delivery = report.putObject("delivery");
+        delivery.put("messagesSent", measuredSent);
+        delivery.put("messagesPerSecond", (double) measuredSent / cfg.durationSec);
+        delivery.put("framesExpected", expected);
+        delivery.put("framesDelivered", delivered);
+        delivery.put("framesDropped", Math.max(0, expected - delivered));
+        delivery.put("dropRate", expected == 0 ? 0 : (double) Math.max(0, expected - delivered) / expected);
+        delivery.put("seqGaps", metrics.seqGaps.sum());
+        delivery.put("sendErrors", metrics.sendErrors.sum());
+        delivery.put("sendSkipped", metrics.sendSkipped.sum());
+        delivery.put("typingSent", metrics.typingSent.sum());
+        delivery.put("bytesIn", metrics.bytesIn.get());
+        delivery.set("framesByType", json.valueToTree(metrics.framesByType()));
+
+        long typingIn = metrics.typingMeasured.sum();
+        long typingNaive = metrics.typingNaiveOut.sum();
+        ObjectNode typing = report.putObject("typing");
+        typing.put("framesIn", typingIn);
+        typing.put("framesOut", typingOut);
+        typing.put("framesOutPerKeystroke", typingIn == 0 ? 0 : (double) typingOut / typingIn);
+        typing.put("naiveFramesOut", typingNaive);
+        typing.put("reduction", typingOut == 0 ? 0 : (double) typingNaive / typingOut);
+
+        LatencyHistogram h = metrics.fanOutLatency;
+        ObjectNode latency = report.putObject("fanOutLatencyMs");
+        latency.put("count", h.count());
+        latency.put("p50", h.percentile(0.50) / 1000.0);
+        latency.put("p90", h.percentile(0.90) / 1000.0);
+        latency.put("p99", h.percentile(0.99) / 1000.0);
+        latency.put("p999", h.percentile(0.999) / 1000.0);
+        latency.put("max", h.max() / 1000.0);
+
+        if (cfg.editRate > 0) {
+            // whole run incl. warm-up and drain: the counters are not split by phase
+            double seconds = cfg.warmupSec + cfg.durationSec + cfg.drainSec;
+            ObjectNode events = report.putObject("events");
+            events.put("edits", metrics.edits.sum());
+            events.put("editErrors", metrics.editErrors.sum());
+            events.put("taskEvents", metrics.taskEvents.sum());
+            events.put("appliedLocally", metrics.eventsAppliedLocally.sum());
+            events.put("listRefetches", metrics.listRefetches.sum());
+            events.put("listRefetchErrors", metrics.listRefetchErrors.sum());
+            events.put("listQps", metrics.listRefetches.sum() / seconds);
+        }
+
+        report.set("server", sampler.report(active.size()));
+
+        File out = new File(cfg.report);
+        json.writer(SerializationFeature.INDENT_OUTPUT).writeValue(out, report);
+        log("p50=%.1f ms p99=%.1f ms p999=%.1f ms, dropped %d of %d, report: %s",
+                latency.path("p50").asDouble(), latency.path("p99").asDouble(), latency.path("p999").asDouble(),
+                Math.max(0, expected - delivered), expected, out.getAbsolutePath());
+        if (cfg.typingReplay()) {
+            log("typing: %d frames in, %d out (%d with per-keystroke broadcast, %.1fx fewer)",
+                    typingIn, typingOut, typingNaive, typing.path("reduction").asDouble());
+        }
+        System.exit(0);
+    }
+
+    private static long joinedCount(ChatClient[] clients) {
+        return Arrays.stream(clients).filter(ChatClient::isJoined).count();
+    }
+
+    /** Cumulative Zipf(s) weights over n groups; s = 0 is uniform. */
+    private static double[] zipfCumulative(int n, double s) {
+        double[] c = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, s);
+            c[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            c[i] /= sum;
+        }
+        return c;
+    }
+
+    private int[] pickGroups(double[] cumulative, int k) {
+        Set<Integer> picked = new LinkedHashSet<>();
+        for (int attempt = 0; picked.size() < k && attempt < k * 20; attempt++) {
+            int idx = Arrays.binarySearch(cumulative, random.nextDouble());
+            picked.add(idx >= 0 ? idx : Math.min(-idx - 1, cumulative.length - 1));
+        }
+        for (int i = 0; picked.size() < k; i++) {
+            picked.add(i); // heavy skew: fill up with the most popular groups
+        }
+        return picked.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.printf("[loadtest] " + format + "%n", args);
+    }
+}
@@ -0,0 +1,63 @@
+package com.app.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side counters shared by all simulated clients.
+ *
+ * Only messages sent during the measured phase count towards latency and
+ * drops: expected = sum over sent messages of the group's joined clients,
+ * dropped = expected - delivered.
+ */
+class RunMetrics {
+
+    final LatencyHistogram fanOutLatency = new LatencyHistogram();
+
+    final LongAdder connected = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder expected = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder typingSent = new LongAdder();
+    /** Typing frames sent in the measured phase, and the frames re-broadcasting each keystroke to the whole group would fan out. */
+    final LongAdder typingMeasured = new LongAdder();
+    final LongAdder typingNaiveOut = new LongAdder();
+    final LongAdder sendErrors = new LongAdder();
+    /** Sends skipped because the client's socket was not draining (client-side backpressure). */
+    final LongAdder sendSkipped = new LongAdder();
+    /** Frames missing according to the server's per-group seq numbers. */
+    final LongAdder seqGaps = new LongAdder();
+
+    final LongAdder edits = new LongAdder();
+    final LongAdder editErrors = new LongAdder();
+    /** Task EVENT frames received, and how they were handled. */
+    final LongAdder taskEvents = new LongAdder();
+    final LongAdder eventsAppliedLocally = new LongAdder();
+    final LongAdder listRefetches = new LongAdder();
+    final LongAdder listRefetchErrors = new LongAdder();
+
+    final AtomicLong bytesIn = new AtomicLong();
+    private final Map<String, LongAdder> framesByType = new ConcurrentHashMap<>();
+
+    void frame(String type, int bytes) {
+        framesByType.computeIfAbsent(type, k -> new LongAdder()).increment();
+        bytesIn.addAndGet(bytes);
+    }
+
+    long framesOfType(String type) {
+        LongAdder n = framesByType.get(type);
+        return n == null ? 0 : n.sum();
+    }
+
+    Map<String, Long> framesByType() {
+        Map<String, Long> out = new TreeMap<>();
+        framesByType.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+}
@@ -0,0 +1,101 @@
+package com.app.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polls /api/chat/stats once a second: heap, GC and socket counters of the
+ * instance under test.
+ */
+class ServerSampler {
+
+    private final ApiClient api;
+    private final ApiClient.Account account;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<JsonNode> samples = new ArrayList<>();
+    private final long startedAt = System.currentTimeMillis();
+
+    private JsonNode measureStart;
+    private JsonNode measureEnd;
+
+    ServerSampler(ApiClient api, ApiClient.Account account) {
+        this.api = api;
+        this.account = account;
+    }
+
+    synchronized void sample() {
+        JsonNode s = api.stats(account);
+        if (s == null) return;
+        ObjectNode row = mapper.createObjectNode();
+        row.put("t", (System.currentTimeMillis() - startedAt) / 1000.0);
+        row.set("heapUsed", s.path("jvm").path("heapUsed"));
+        row.set("sessions", s.path("chat").path("sessions"));
+        row.set("gcCount", s.path("jvm").path("gcCount"));
+        samples.add(row);
+    }
+
+    synchronized void markMeasureStart() {
+        measureStart = api.stats(account);
+    }
+
+    synchronized void markMeasureEnd() {
+        measureEnd = api.stats(account);
+    }
+
+    /** Peak heap, GC during the measured phase, and bytes/encode cost per outbound frame. */
+    synchronized ObjectNode report(long connectedClients) {
+        ObjectNode out = mapper.createObjectNode();
+        if (samples.isEmpty()) {
+            out.put("available", false);
+            return out;
+        }
+        out.put("available", true);
+
+        long peakHeap = 0;
+        long minHeap = Long.MAX_VALUE;
+        for (JsonNode s : samples) {
+            peakHeap = Math.max(peakHeap, s.path("heapUsed").asLong());
+            minHeap = Math.min(minHeap, s.path("heapUsed").asLong());
+        }
+        out.put("heapUsedPeakBytes", peakHeap);
+        out.put("heapUsedMinBytes", minHeap);
+        if (connectedClients > 0) {
+            // rough: includes everything else the JVM holds, use deltas between runs
+            out.put("heapPeakPerSessionBytes", peakHeap / connectedClients);
+        }
+
+        if (measureStart != null && measureEnd != null) {
+            JsonNode a = measureStart.path("jvm");
+            JsonNode b = measureEnd.path("jvm");
+            out.put("gcCount", b.path("gcCount").asLong() - a.path("gcCount").asLong());
+            out.put("gcTimeMs", b.path("gcTimeMs").asLong() - a.path("gcTimeMs").asLong());
+
+            JsonNode ca = measureStart.path("chat").path("codec");
+            JsonNode cb = measureEnd.path("chat").path("codec");
+            ObjectNode codec = out.putObject("outbound");
+            perFrame(codec, "textBytesPerFrame", ca, cb, "textBytes", "textFrames");
+            perFrame(codec, "binaryBytesPerFrame", ca, cb, "binaryBytes", "binaryFrames");
+            long encodes = cb.path("smileEncodes").asLong() - ca.path("smileEncodes").asLong();
+            if (encodes > 0) {
+                long nanos = cb.path("smileEncodeNanos").asLong() - ca.path("smileEncodeNanos").asLong();
+                codec.put("smileEncodeMicrosPerFrame", nanos / 1000.0 / encodes);
+            }
+        }
+
+        ArrayNode timeline = out.putArray("samples");
+        samples.forEach(timeline::add);
+        return out;
+    }
+
+    private static void perFrame(ObjectNode out, String name, JsonNode a, JsonNode b, String bytes, String frames) {
+        long f = b.path(frames).asLong() - a.path(frames).asLong();
+        if (f > 0) {
+            out.put(name, (double) (b.path(bytes).asLong() - a.path(bytes).asLong()) / f);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.app.loadtest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A keystroke trace for --scenario=typing, replayed in real time.
+ *
+ * Each typist types in bursts, like a person writing a chat line: 5-40
+ * keystrokes 60-250 ms apart, usually ended by sending the message, then a
+ * 1-5 s pause. Every keystroke is one "typing" frame, as the chat page sends
+ * them. The trace only depends on --seed, so runs against different server
+ * builds replay the same input and their "typing" sections compare directly.
+ */
+final class TypingReplay {
+
+    record Step(long atMs, ChatClient client, int groupId, boolean message) {
+    }
+
+    private final List<Step> steps;
+    private int next;
+
+    private TypingReplay(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    static TypingReplay generate(ChatClient[] senders, int typists, long durationMs, Random random) {
+        List<Step> steps = new ArrayList<>();
+        for (int t = 0; t < typists; t++) {
+            ChatClient c = senders[random.nextInt(senders.length)];
+            long at = random.nextInt(3000); // typists do not all start on the same tick
+            while (at < durationMs) {
+                int groupId = c.groups[random.nextInt(c.groups.length)];
+                int keystrokes = 5 + random.nextInt(36);
+                for (int k = 0; k < keystrokes && at < durationMs; k++) {
+                    steps.add(new Step(at, c, groupId, false));
+                    at += 60 + random.nextInt(191);
+                }
+                if (random.nextInt(10) < 8) {
+                    steps.add(new Step(at, c, groupId, true));
+                }
+                at += 1000 + random.nextInt(4001);
+            }
+        }
+        steps.sort(Comparator.comparingLong(Step::atMs));
+        return new TypingReplay(steps);
+    }
+
+    /** Steps due at elapsedMs since the replay started, each returned once; called from one thread. */
+    List<Step> due(long elapsedMs) {
+        int from = next;
+        while (next < steps.size() && steps.get(next).atMs() <= elapsedMs) {
+            next++;
+        }
+        return steps.subList(from, next);
+    }
+
+    int size() {
+        return steps.size();
+    }
+}